@@ -0,0 +1,59 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import tracker.CostOfLiving;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of inflation over the whole index by width of the window in months
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class InflationBenchmark {
+
+    private static final int HISTORY_MONTHS = 240;
+    private static final int QUERIES = 64;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public long records;
+
+    @Param({"1", "12", "120"})
+    public int windowMonths;
+
+    private CostOfLiving costOfLiving;
+
+    //first month of every window as year * 12 + month - 1
+    private int[] windowStarts;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void loadHistory() throws IOException {
+        costOfLiving = SyntheticHistory.withDepth(records, 4, 100, HISTORY_MONTHS).load(42, records);
+
+        Random random = new Random(42);
+        int firstMonth = SyntheticHistory.FIRST_DAY.getYear() * 12 + SyntheticHistory.FIRST_DAY.getMonthValue() - 1;
+        windowStarts = new int[QUERIES];
+        for(int i = 0; i < QUERIES; i++) {
+            windowStarts[i] = firstMonth + random.nextInt(HISTORY_MONTHS - windowMonths + 1);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Float> inflation(Cursor cursor) {
+        int start = windowStarts[cursor.next++ & (QUERIES - 1)];
+        int end = start + windowMonths - 1;
+        return costOfLiving.inflation(start / 12, start % 12 + 1, end / 12, end % 12 + 1);
+    }
+}
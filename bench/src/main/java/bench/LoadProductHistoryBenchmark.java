@@ -0,0 +1,64 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import tracker.CostOfLiving;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of loading a whole history file into an empty CostOfLiving, reported as loads and rows per second
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class LoadProductHistoryBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public long records;
+
+    //records per size of a product
+    @Param({"10", "1000"})
+    public int depth;
+
+    private Path file;
+
+    //rows loaded, reported by JMH as rows per second next to loads per second
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Rows {
+        public long rows;
+    }
+
+    @Setup(Level.Trial)
+    public void writeHistory() throws IOException {
+        file = SyntheticHistory.withDepth(records, 4, depth, 120).write(42, records);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteHistory() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int reader(Rows rows) throws IOException {
+        try(BufferedReader reader = Files.newBufferedReader(file)) {
+            int loaded = new CostOfLiving(0).loadProductHistory(reader);
+            rows.rows += records;
+            return loaded;
+        }
+    }
+
+    @Benchmark
+    public int mapped(Rows rows) {
+        int loaded = new CostOfLiving(0).loadProductHistory(file);
+        rows.rows += records;
+        return loaded;
+    }
+}
@@ -0,0 +1,70 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import tracker.CostOfLiving;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of inflation and priceInversion over the whole index with number of threads of the pool
+ * parallelism 0 runs the sequential methods, anything else runs the pool variants on a pool of that many threads,
+ * so the ratio of each row to the row with parallelism 0 is the scaling curve. Products are split into about
+ * 8 tasks per thread, work of one product grows with its sizes and depth of its history.
+ * Only meaningful on a machine with at least as many cores as the largest parallelism, rows with more threads
+ * than cores measure the overhead of the pool and nothing else.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class ParallelQueryBenchmark {
+
+    private static final int HISTORY_MONTHS = 120;
+
+    //100000 products with 4 sizes and 25 records per size
+    @Param({"10000000"})
+    public long records;
+
+    @Param({"0", "1", "2", "4", "8", "16"})
+    public int parallelism;
+
+    private CostOfLiving costOfLiving;
+    private ForkJoinPool pool;
+
+    //first and last month of the history as year * 12 + month - 1
+    private int firstMonth;
+    private int lastMonth;
+
+    @Setup(Level.Trial)
+    public void loadHistory() throws IOException {
+        costOfLiving = SyntheticHistory.withDepth(records, 4, 25, HISTORY_MONTHS).load(42, records);
+        if(parallelism > 0) pool = new ForkJoinPool(parallelism);
+
+        firstMonth = SyntheticHistory.FIRST_DAY.getYear() * 12 + SyntheticHistory.FIRST_DAY.getMonthValue() - 1;
+        lastMonth = firstMonth + HISTORY_MONTHS - 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownPool() {
+        if(pool != null) pool.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, Float> inflation() {
+        if(pool == null) return costOfLiving.inflation(firstMonth / 12, firstMonth % 12 + 1, lastMonth / 12, lastMonth % 12 + 1);
+        return costOfLiving.inflation(firstMonth / 12, firstMonth % 12 + 1, lastMonth / 12, lastMonth % 12 + 1, pool);
+    }
+
+    @Benchmark
+    public List<String> priceInversion() {
+        int month = (firstMonth + lastMonth) / 2;
+        if(pool == null) return costOfLiving.priceInversion(month / 12, month % 12 + 1, 5);
+        return costOfLiving.priceInversion(month / 12, month % 12 + 1, 5, pool);
+    }
+}
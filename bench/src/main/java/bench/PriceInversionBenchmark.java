@@ -0,0 +1,61 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import tracker.CostOfLiving;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of priceInversion over the whole index by number of sizes of every product
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class PriceInversionBenchmark {
+
+    private static final int HISTORY_MONTHS = 120;
+    private static final int QUERIES = 64;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public long records;
+
+    @Param({"2", "10", "100"})
+    public int sizesPerProduct;
+
+    @Param({"5"})
+    public int tolerance;
+
+    private CostOfLiving costOfLiving;
+
+    //month of every query as year * 12 + month - 1
+    private int[] months;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void loadHistory() throws IOException {
+        costOfLiving = SyntheticHistory.withDepth(records, sizesPerProduct, 100, HISTORY_MONTHS).load(42, records);
+
+        Random random = new Random(42);
+        int firstMonth = SyntheticHistory.FIRST_DAY.getYear() * 12 + SyntheticHistory.FIRST_DAY.getMonthValue() - 1;
+        months = new int[QUERIES];
+        for(int i = 0; i < QUERIES; i++) {
+            months[i] = firstMonth + random.nextInt(HISTORY_MONTHS + 1);
+        }
+    }
+
+    @Benchmark
+    public List<String> priceInversion(Cursor cursor) {
+        int month = months[cursor.next++ & (QUERIES - 1)];
+        return costOfLiving.priceInversion(month / 12, month % 12 + 1, tolerance);
+    }
+}
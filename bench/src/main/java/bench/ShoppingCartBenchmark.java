@@ -0,0 +1,91 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import tracker.CostOfLiving;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of creating a cart and of pricing it, by cart size and number of records per size of every product
+ * pricing runs with cart cost cache disabled so every call does the full calculation
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class ShoppingCartBenchmark {
+
+    private static final int CARTS = 64;
+    private static final int QUERIES = 1024;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public long records;
+
+    //records per size of a product
+    @Param({"10", "1000"})
+    public int depth;
+
+    @Param({"1", "10", "100"})
+    public int cartSize;
+
+    private CostOfLiving costOfLiving;
+    private String[] carts;
+    private int[] cartIds;
+
+    //month of every query as year * 12 + month - 1
+    private int[] months;
+
+    //object receiving carts created by loadShoppingCart, replaced every iteration so carts do not pile up
+    private CostOfLiving cartTarget;
+
+    //position in carts and months of the thread running the benchmark
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void loadHistory() throws IOException {
+        SyntheticHistory history = SyntheticHistory.withDepth(records, 4, depth, 120);
+        costOfLiving = history.load(42, records);
+
+        Random random = new Random(42);
+        carts = new String[CARTS];
+        cartIds = new int[CARTS];
+        for(int i = 0; i < CARTS; i++) {
+            carts[i] = history.cart(random, cartSize);
+            cartIds[i] = costOfLiving.loadShoppingCart(new BufferedReader(new StringReader(carts[i])));
+        }
+
+        int firstMonth = SyntheticHistory.FIRST_DAY.getYear() * 12 + SyntheticHistory.FIRST_DAY.getMonthValue() - 1;
+        months = new int[QUERIES];
+        for(int i = 0; i < QUERIES; i++) {
+            months[i] = firstMonth + random.nextInt(history.getMonths() + 1);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void newCartTarget() {
+        cartTarget = new CostOfLiving(0);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int loadShoppingCart(Cursor cursor) {
+        return cartTarget.loadShoppingCart(new BufferedReader(new StringReader(carts[cursor.next++ & (CARTS - 1)])));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public float shoppingCartCost(Cursor cursor) {
+        int query = cursor.next++;
+        int month = months[query & (QUERIES - 1)];
+        return costOfLiving.shoppingCartCost(cartIds[query & (CARTS - 1)], month / 12, month % 12 + 1);
+    }
+}
@@ -0,0 +1,156 @@
+package bench;
+
+import tracker.CostOfLiving;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded synthetic product history in the TSV format of CostOfLiving.loadProductHistory
+ * i.e. "2003/04/17	product12	1.5 kg	7.25", same seed and shape always give the same file.
+ * Every product has sizesPerProduct sizes, weight for even products and volume for odd ones, and its price
+ * per unit rises slowly over the months with some noise. About 1 in 100 records is a discontinuation (cost 0).
+ */
+public final class SyntheticHistory {
+
+    //first day of every history, records are spread evenly over months after it
+    public static final LocalDate FIRST_DAY = LocalDate.of(2000, 1, 1);
+
+    //base and large unit of weight and volume products, every 4th size is written in the large unit
+    private static final String[][] UNITS = {{"g", "kg"}, {"ml", "l"}};
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+
+    private final int products;
+    private final int sizesPerProduct;
+    private final int months;
+
+    /**
+     * @param products number of different product names
+     * @param sizesPerProduct number of different sizes of every product
+     * @param months number of months covered by the history
+     */
+    public SyntheticHistory(int products, int sizesPerProduct, int months) {
+        this.products = Math.max(1, products);
+        this.sizesPerProduct = Math.max(1, sizesPerProduct);
+        this.months = Math.max(1, months);
+    }
+
+    /**
+     * Shape of a history with given number of records where every size of a product has about depth records
+     * @param records
+     * @param sizesPerProduct
+     * @param depth records per size of a product
+     * @param months
+     * @return history shape
+     */
+    public static SyntheticHistory withDepth(long records, int sizesPerProduct, int depth, int months) {
+        return new SyntheticHistory((int) Math.max(1, records / ((long) sizesPerProduct * depth)), sizesPerProduct, months);
+    }
+
+    //name of given product
+    public static String name(int product) {
+        return "product" + product;
+    }
+
+    //size text of given size of given product, base unit value is (size + 1) * 125
+    public String size(int product, int size) {
+        String[] units = UNITS[product & 1];
+        int value = (size + 1) * 125;
+        return size % 4 == 3 ? (value / 1000.0f) + " " + units[1] : value + " " + units[0];
+    }
+
+    //getter for number of different product names
+    public int getProducts() {
+        return products;
+    }
+
+    //getter for number of months covered by the history
+    public int getMonths() {
+        return months;
+    }
+
+    /**
+     * Function to write history with given number of records into a temporary file
+     * @param seed
+     * @param records
+     * @return path of written file, caller deletes it
+     * @throws IOException
+     */
+    public Path write(long seed, long records) throws IOException {
+        Path file = Files.createTempFile("history", ".tsv");
+        SplittableRandom random = new SplittableRandom(seed);
+        int days = (int) (FIRST_DAY.plusMonths(months).toEpochDay() - FIRST_DAY.toEpochDay());
+
+        //dates repeat a lot, formatting each one once
+        String[] dates = new String[days];
+        for(int day = 0; day < days; day++) {
+            dates[day] = FIRST_DAY.plusDays(day).format(DATE_FORMAT);
+        }
+
+        try(BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for(long record = 0; record < records; record++) {
+                int product = random.nextInt(products);
+                int size = random.nextInt(sizesPerProduct);
+                int day = random.nextInt(days);
+
+                //price per unit of product between 0.5 and 2.5 cents rising up to 50% over the whole history
+                double perUnit = 0.005 + (product % 97) * 0.0002;
+                double cost = perUnit * (size + 1) * 125 * (1 + 0.5 * day / days) * (0.9 + 0.2 * random.nextDouble());
+                if(random.nextInt(100) == 0) cost = 0;
+
+                writer.write(dates[day]);
+                writer.write('\t');
+                writer.write(name(product));
+                writer.write('\t');
+                writer.write(size(product, size));
+                writer.write('\t');
+                writer.write(Double.toString(Math.round(cost * 100) / 100.0));
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Function to create CostOfLiving with this history loaded, cart cost cache is disabled
+     * @param seed
+     * @param records
+     * @return loaded CostOfLiving
+     * @throws IOException
+     */
+    public CostOfLiving load(long seed, long records) throws IOException {
+        Path file = write(seed, records);
+        try {
+            CostOfLiving costOfLiving = new CostOfLiving(0);
+            if(costOfLiving.loadProductHistory(file) == -1) throw new IllegalStateException("Synthetic history was rejected");
+            return costOfLiving;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * @param random
+     * @param items number of items, at most number of products
+     * @return cart in the format of CostOfLiving.loadShoppingCart with different products as items
+     */
+    public String cart(Random random, int items) {
+        StringBuilder cart = new StringBuilder();
+        int count = Math.min(items, products);
+
+        //consecutive products starting at a random one, so items never repeat
+        int first = random.nextInt(products);
+        for(int i = 0; i < count; i++) {
+            int product = (first + i) % products;
+            cart.append(name(product)).append('\t').append(size(product, random.nextInt(sizesPerProduct))).append('\n');
+        }
+        return cart.toString();
+    }
+}
@@ -0,0 +1,139 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Prices many carts at once, same result as pricing every cart with shoppingCartCost but every product is looked
+ * up once per date instead of once per cart i.e. repricing 10000 carts with milk as of 2024-01 finds the price of
+ * every milk size on 2024-01-01 once, and an item of 1 l milk is priced once no matter how many carts have it.
+ * Requests are grouped by month, prices resolved for a month are dropped before the next month is priced.
+ */
+class CartBatchPricer {
+
+    //no size of product has a price on the date, or the product was never loaded
+    private static final float[] NO_PRICES = new float[0];
+
+    private final Map<String, Map<Float, PriceSeries>> productList;
+    private final CartStore carts;
+    private final MonthlyPriceTable monthlyPriceTable;
+
+    /**
+     * @param productList
+     * @param carts
+     * @param monthlyPriceTable null if prices are looked up in series
+     */
+    CartBatchPricer(Map<String, Map<Float, PriceSeries>> productList, CartStore carts, MonthlyPriceTable monthlyPriceTable) {
+        this.productList = productList;
+        this.carts = carts;
+        this.monthlyPriceTable = monthlyPriceTable;
+    }
+
+    /**
+     * Function to price given requests, every request has to be for an existing cart, year not before 0 and month 1 to 12
+     * @param cartNumbers
+     * @param years
+     * @param months
+     * @param requests indexes of requests to price
+     * @param requestCount number of indexes used
+     * @param costs cost of every priced request is written at its index, -1 if cart can not be bought
+     */
+    void price(int[] cartNumbers, int[] years, int[] months, int[] requests, int requestCount, float[] costs) {
+        //requests of the same month next to each other
+        Integer[] requestsByMonth = new Integer[requestCount];
+        for(int i = 0; i < requestCount; i++) {
+            requestsByMonth[i] = requests[i];
+        }
+        Arrays.sort(requestsByMonth, Comparator.<Integer>comparingInt(request -> years[request]).thenComparingInt(request -> months[request]));
+
+        for(int first = 0; first < requestCount; ) {
+            int year = years[requestsByMonth[first]];
+            int monthOfYear = months[requestsByMonth[first]];
+            int end = first;
+            while(end < requestCount && years[requestsByMonth[end]] == year && months[requestsByMonth[end]] == monthOfYear) end++;
+
+            //prices of every product and cost of every item resolved for this month, shared by all its carts
+            Map<Integer, float[]> pricesOfName = new HashMap<>();
+            Map<Long, Float> costOfItem = new HashMap<>();
+
+            LocalDate firstDay = LocalDate.of(year, monthOfYear, 1);
+            int month = MonthlyPriceTable.monthOrdinal(year, monthOfYear);
+            for(int i = first; i < end; i++) {
+                int request = requestsByMonth[i];
+                costs[request] = cartCost(cartNumbers[request], firstDay, month, pricesOfName, costOfItem);
+            }
+            first = end;
+        }
+    }
+
+    //cost of one cart, items are added in cart order same as shoppingCartCost so the sum is the same
+    private float cartCost(int cartNumber, LocalDate firstDay, int month, Map<Integer, float[]> pricesOfName, Map<Long, Float> costOfItem) {
+        float totalCartCost = 0;
+
+        for(int item = carts.firstItem(cartNumber), end = carts.endItem(cartNumber); item < end; item++) {
+            int nameId = carts.itemNameId(item);
+            long key = (long) nameId << 32 | carts.itemSizeId(item);
+
+            Float cost = costOfItem.get(key);
+            if(cost == null) {
+                float[] prices = pricesOfName.get(nameId);
+                if(prices == null) {
+                    prices = resolvePrices(carts.itemName(item), firstDay, month);
+                    pricesOfName.put(nameId, prices);
+                }
+                cost = cheapestCost(prices, carts.itemSizeInBaseUnit(item));
+                costOfItem.put(key, cost);
+            }
+
+            if(cost == Float.MAX_VALUE) return -1f;
+            totalCartCost += cost;
+        }
+        return totalCartCost;
+    }
+
+    /**
+     * Function to find price of every size of a product on the 1st of a month
+     * @param name
+     * @param firstDay
+     * @param month ordinal of the same month, see MonthlyPriceTable.monthOrdinal
+     * @return size in base unit and cost of every size which can be bought, one after the other
+     */
+    private float[] resolvePrices(String name, LocalDate firstDay, int month) {
+        Map<Float, PriceSeries> productWithDifferentSize = productList.getOrDefault(name, Collections.emptyMap());
+        float[] prices = new float[2 * productWithDifferentSize.size()];
+        int priced = 0;
+
+        for(PriceSeries series: productWithDifferentSize.values()) {
+            MonthlyPriceTable.Row monthlyPrices = monthlyPriceTable == null ? null : series.getMonthlyPrices();
+            float cost;
+            float sizeInBaseUnit;
+            if(monthlyPrices != null) {
+                cost = monthlyPrices.costOnFirstOfMonth(month);
+                sizeInBaseUnit = monthlyPrices.getSizeInBaseUnit();
+            } else {
+                Product product = series.latestOnOrBefore(firstDay);
+                cost = product == null ? -1f : product.getCost();
+                sizeInBaseUnit = product == null ? 0 : product.getSizeInBaseUnit();
+            }
+
+            //discontinued sizes and sizes not introduced yet can not be bought
+            if(cost > 0) {
+                prices[priced++] = sizeInBaseUnit;
+                prices[priced++] = cost;
+            }
+        }
+        return priced == 0 ? NO_PRICES : Arrays.copyOf(prices, priced);
+    }
+
+    //most efficient cost of buying required size from given prices, same calculation as shoppingCartCost
+    private static float cheapestCost(float[] prices, float requiredSizeInBaseUnit) {
+        float cheapest = Float.MAX_VALUE;
+        for(int i = 0; i < prices.length; i += 2) {
+            int requiredQuantity = (int) Math.ceil(requiredSizeInBaseUnit/prices[i]);
+            cheapest = Math.min(cheapest, requiredQuantity*prices[i + 1]);
+        }
+        return cheapest;
+    }
+}
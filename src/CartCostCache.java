@@ -0,0 +1,233 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of cart costs with cartId and month as key, least recently used costs are evicted once it is full
+ * every cost remembers names of products it was calculated from, so loading new history for a product only
+ * removes costs of carts containing that product i.e. loading milk records keeps cost of a cart with only oreo.
+ * Lookups and puts never lock, so any number of queries use the cache of a version at once. Eviction is approximate:
+ * every cost keeps the time it was last used and once the cache is over capacity one thread removes the oldest
+ * costs in one go, until it is back under capacity with room for EVICTION_SHARE more costs.
+ * invalidate is only called on a version no query reads yet, see CostOfLiving.copyForUpdate
+ */
+public class CartCostCache {
+
+    //eviction removes this share of capacity more than needed, so it scans the cache once every few puts and not on every put
+    private static final int EVICTION_SHARE = 8;
+
+    //cost along with names of products it depends on, same object is shared by copies of the cache
+    private static class Entry {
+        final float cost;
+        final String[] names;
+
+        //System.nanoTime of the last lookup or put, written by every query without locking so it is only roughly right
+        volatile long lastUsed;
+
+        Entry(float cost, String[] names) {
+            this.cost = cost;
+            this.names = names;
+            this.lastUsed = System.nanoTime();
+        }
+    }
+
+    private final int capacity;
+
+    private final ConcurrentHashMap<Long, Entry> costs = new ConcurrentHashMap<>();
+
+    //keys of cached costs groupBy product name they depend on i.e. {milk -> [key1, key2]}
+    //sets are only changed inside compute of their name, so a set being emptied never loses a key added at the same time
+    private final ConcurrentHashMap<String, Set<Long>> keysOfName = new ConcurrentHashMap<>();
+
+    //true while a thread is evicting, other threads keep putting meanwhile instead of evicting as well
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    //counters are shared with copies, so they count for every version of the cache
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LongAdder invalidations;
+
+    /**
+     * Constructor to create empty cache
+     * @param capacity maximum number of costs kept, 0 to disable caching
+     */
+    public CartCostCache(int capacity) {
+        if(capacity < 0) throw new IllegalArgumentException("Invalid cache capacity");
+
+        this.capacity = capacity;
+        hits = new LongAdder();
+        misses = new LongAdder();
+        evictions = new LongAdder();
+        invalidations = new LongAdder();
+    }
+
+    /**
+     * Copy constructor, the copy can be changed without affecting given cache, counters are shared
+     * given cache keeps answering queries while it is copied, costs it gets meanwhile may or may not be copied
+     * @param cache
+     */
+    public CartCostCache(CartCostCache cache) {
+        capacity = cache.capacity;
+        hits = cache.hits;
+        misses = cache.misses;
+        evictions = cache.evictions;
+        invalidations = cache.invalidations;
+
+        //names are taken from the copied costs themselves, so every copied cost can be invalidated in the copy
+        cache.costs.forEach((key, entry) -> {
+            costs.put(key, entry);
+            link(key, entry);
+        });
+    }
+
+    //latest year whose months still fit the lower 32 bits of a key, costs of later years are never cached
+    static final int MAX_CACHED_YEAR = (int) ((1L << 32) / 12 - 1);
+
+    //key made of cartId and month count since year 0, only valid months are cached
+    private static long key(int cartId, int year, int month) {
+        return ((long) cartId << 32) | (year * 12L + month - 1);
+    }
+
+    //true if a key of given month belongs to that month alone, i.e. does not run into the bits of cartId
+    private static boolean isCacheable(int year, int month) {
+        return year >= 0 && year <= MAX_CACHED_YEAR && month >= 1 && month <= 12;
+    }
+
+    /**
+     * @param cartId
+     * @param year
+     * @param month
+     * @return cached cost of cart for given month, null if it is not cached or month is outside the cacheable range
+     */
+    public Float get(int cartId, int year, int month) {
+        Entry entry = isCacheable(year, month) ? costs.get(key(cartId, year, month)) : null;
+
+        if(entry == null) {
+            misses.increment();
+            return null;
+        }
+        entry.lastUsed = System.nanoTime();
+        hits.increment();
+        return entry.cost;
+    }
+
+    /**
+     * Function to cache cost of cart for given month, months after MAX_CACHED_YEAR are not cached
+     * @param cartId
+     * @param year
+     * @param month
+     * @param cost
+     * @param names names of products the cost was calculated from, same for every cost of a cart
+     */
+    public void put(int cartId, int year, int month, float cost, String[] names) {
+        if(capacity == 0 || !isCacheable(year, month)) return;
+
+        long key = key(cartId, year, month);
+        Entry entry = new Entry(cost, names);
+        costs.put(key, entry);
+        link(key, entry);
+
+        if(costs.size() > capacity) evict();
+    }
+
+    /**
+     * Function to remove every cached cost depending on any of given products
+     * @param names names of products which received new records
+     */
+    public void invalidate(Collection<String> names) {
+        for(String name: names) {
+            Set<Long> keys = keysOfName.remove(name);
+            if(keys == null) continue;
+
+            for(Long key: keys) {
+                Entry entry = costs.remove(key);
+                if(entry == null) continue;
+
+                unlink(key, entry);
+                invalidations.increment();
+            }
+        }
+    }
+
+    //function to remove least recently used costs until there is room for capacity / EVICTION_SHARE more
+    private void evict() {
+        if(!evicting.compareAndSet(false, true)) return;
+
+        try {
+            int target = capacity - capacity / EVICTION_SHARE;
+            int excess = costs.size() - target;
+            if(excess <= 0) return;
+
+            List<Map.Entry<Long, Entry>> oldestFirst = new ArrayList<>(costs.entrySet());
+            oldestFirst.sort(Comparator.comparingLong(cost -> cost.getValue().lastUsed));
+
+            for(int i = 0; i < excess && i < oldestFirst.size(); i++) {
+                Long key = oldestFirst.get(i).getKey();
+                Entry entry = oldestFirst.get(i).getValue();
+
+                //a cost put again meanwhile is a new entry and stays
+                if(costs.remove(key, entry)) {
+                    unlink(key, entry);
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    //adding key to names of products given entry depends on
+    private void link(Long key, Entry entry) {
+        for(String name: entry.names) {
+            keysOfName.compute(name, (k, keys) -> {
+                if(keys == null) keys = new HashSet<>();
+                keys.add(key);
+                return keys;
+            });
+        }
+    }
+
+    //removing key from names of products given entry depends on, unless the same key got cached again meanwhile
+    private void unlink(Long key, Entry entry) {
+        if(costs.containsKey(key)) return;
+
+        for(String name: entry.names) {
+            keysOfName.computeIfPresent(name, (k, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    //number of costs cached right now, may be a little over capacity while other threads are putting
+    public int size() {
+        return costs.size();
+    }
+
+    //getter for maximum number of costs kept
+    public int getCapacity() {
+        return capacity;
+    }
+
+    //getter for number of lookups which found a cached cost
+    public long getHits() {
+        return hits.sum();
+    }
+
+    //getter for number of lookups which did not find a cached cost
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    //getter for number of costs removed to make space for new ones
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    //getter for number of costs removed because their products received new records
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+}
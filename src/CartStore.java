@@ -0,0 +1,200 @@
+import java.util.*;
+
+/**
+ * Compact storage for shopping carts, cart id is the position of the cart so ids are dense and never collide
+ * i.e. items of every cart are stored one after another in primitive arrays {name id, required size in base unit, size id}
+ * and firstItem[cartId] .. firstItem[cartId + 1] is the range of items of a cart.
+ * Names and sizes are stored once in dictionaries. Carts are only ever appended, so readers on other threads can
+ * iterate any cart they know the id of without locking while new carts are being added.
+ */
+public class CartStore {
+
+    //everything readers need, replaced as a whole after every new cart so readers always see complete carts
+    private static class State {
+        final int cartCount;
+        final int[] firstItem;
+        final int[] itemNameIds;
+        final float[] itemSizesInBaseUnit;
+        final int[] itemSizeIds;
+        final String[] names;
+        final ProductSize[] sizes;
+
+        State(int cartCount, int[] firstItem, int[] itemNameIds, float[] itemSizesInBaseUnit, int[] itemSizeIds, String[] names, ProductSize[] sizes) {
+            this.cartCount = cartCount;
+            this.firstItem = firstItem;
+            this.itemNameIds = itemNameIds;
+            this.itemSizesInBaseUnit = itemSizesInBaseUnit;
+            this.itemSizeIds = itemSizeIds;
+            this.names = names;
+            this.sizes = sizes;
+        }
+    }
+
+    private volatile State state = new State(0, new int[]{0}, new int[16], new float[16], new int[16], new String[16], new ProductSize[16]);
+
+    //dictionaries used while adding carts, only touched by the thread holding the lock
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final Map<String, Integer> sizeIds = new HashMap<>();
+
+    //constructor for an empty store
+    public CartStore() {
+    }
+
+    /**
+     * Constructor to restore a store from its arrays, i.e. read from a snapshot, cart arrays are used as they are
+     * @param cartCount
+     * @param firstItem index of first item of every cart followed by total number of items
+     * @param itemNameIds
+     * @param itemSizesInBaseUnit
+     * @param itemSizeIds
+     * @param names dictionary of names, every name present once
+     * @param sizes dictionary of sizes, every size present once
+     */
+    CartStore(int cartCount, int[] firstItem, int[] itemNameIds, float[] itemSizesInBaseUnit, int[] itemSizeIds, String[] names, ProductSize[] sizes) {
+        for(int i = 0; i < names.length; i++) {
+            nameIds.put(names[i], i);
+        }
+        for(int i = 0; i < sizes.length; i++) {
+            sizeIds.put(sizes[i].getValue()+" "+sizes[i].getUnit(), i);
+        }
+
+        //dictionaries are copied with room to grow, an empty one could not grow by doubling its length
+        state = new State(cartCount, firstItem, itemNameIds, itemSizesInBaseUnit, itemSizeIds,
+                Arrays.copyOf(names, Math.max(16, names.length * 2)), Arrays.copyOf(sizes, Math.max(16, sizes.length * 2)));
+    }
+
+    /**
+     * Function to add a cart
+     * @param names name of every item
+     * @param sizes size of every item
+     * @param itemCount number of items, first itemCount entries of names and sizes are used
+     * @return cartId of added cart
+     */
+    public synchronized int add(String[] names, ProductSize[] sizes, int itemCount) {
+        State current = state;
+        int cartId = current.cartCount;
+        int firstItem = current.firstItem[cartId];
+
+        int[] firstItemOfCart = grow(current.firstItem, cartId + 2);
+        int[] itemNameIds = grow(current.itemNameIds, firstItem + itemCount);
+        float[] itemSizesInBaseUnit = grow(current.itemSizesInBaseUnit, firstItem + itemCount);
+        int[] itemSizeIds = grow(current.itemSizeIds, firstItem + itemCount);
+        String[] dictionaryNames = current.names;
+        ProductSize[] dictionarySizes = current.sizes;
+
+        for(int i = 0; i < itemCount; i++) {
+            Integer nameId = nameIds.get(names[i]);
+            if(nameId == null) {
+                nameId = nameIds.size();
+                if(nameId == dictionaryNames.length) dictionaryNames = Arrays.copyOf(dictionaryNames, nameId * 2);
+                dictionaryNames[nameId] = names[i];
+                nameIds.put(names[i], nameId);
+            }
+
+            String originalSize = sizes[i].getValue()+" "+sizes[i].getUnit();
+            Integer sizeId = sizeIds.get(originalSize);
+            if(sizeId == null) {
+                sizeId = sizeIds.size();
+                if(sizeId == dictionarySizes.length) dictionarySizes = Arrays.copyOf(dictionarySizes, sizeId * 2);
+                dictionarySizes[sizeId] = sizes[i];
+                sizeIds.put(originalSize, sizeId);
+            }
+
+            itemNameIds[firstItem + i] = nameId;
+            itemSizesInBaseUnit[firstItem + i] = sizes[i].toBaseUnit();
+            itemSizeIds[firstItem + i] = sizeId;
+        }
+        firstItemOfCart[cartId + 1] = firstItem + itemCount;
+
+        //publishing cart, readers holding older state never look past their own cart count
+        state = new State(cartId + 1, firstItemOfCart, itemNameIds, itemSizesInBaseUnit, itemSizeIds, dictionaryNames, dictionarySizes);
+        return cartId;
+    }
+
+    //same array if it is large enough, otherwise copy of it with at least double the size
+    private static int[] grow(int[] array, int required) {
+        return array.length >= required ? array : Arrays.copyOf(array, Math.max(2 * array.length, required));
+    }
+
+    //same as above for float arrays
+    private static float[] grow(float[] array, int required) {
+        return array.length >= required ? array : Arrays.copyOf(array, Math.max(2 * array.length, required));
+    }
+
+    //true if a cart with given id was added
+    public boolean contains(int cartId) {
+        return cartId >= 0 && cartId < state.cartCount;
+    }
+
+    //number of carts added till now
+    public int size() {
+        return state.cartCount;
+    }
+
+    //index of first item of given cart
+    public int firstItem(int cartId) {
+        return state.firstItem[cartId];
+    }
+
+    //index after last item of given cart
+    public int endItem(int cartId) {
+        return state.firstItem[cartId + 1];
+    }
+
+    //getter for name of item at given index
+    public String itemName(int item) {
+        State current = state;
+        return current.names[current.itemNameIds[item]];
+    }
+
+    //getter for id of name of item at given index, items with the same name have the same id
+    public int itemNameId(int item) {
+        return state.itemNameIds[item];
+    }
+
+    //getter for id of required size of item at given index, items with the same size as loaded have the same id
+    public int itemSizeId(int item) {
+        return state.itemSizeIds[item];
+    }
+
+    //getter for required size in base unit of item at given index
+    public float itemSizeInBaseUnit(int item) {
+        return state.itemSizesInBaseUnit[item];
+    }
+
+    //getter for required size of item at given index
+    public ProductSize itemSize(int item) {
+        State current = state;
+        return current.sizes[current.itemSizeIds[item]];
+    }
+
+    /**
+     * @param cartId
+     * @return names of all items of given cart
+     */
+    public String[] itemNames(int cartId) {
+        State current = state;
+        int first = current.firstItem[cartId];
+        String[] names = new String[current.firstItem[cartId + 1] - first];
+        for(int i = 0; i < names.length; i++) {
+            names[i] = current.names[current.itemNameIds[first + i]];
+        }
+        return names;
+    }
+
+    /**
+     * Function to build a Cart object for given cart, objects are only created here
+     * @param cartId
+     * @return cart with its items, null if there is no such cart
+     */
+    public Cart getCart(int cartId) {
+        if(!contains(cartId)) return null;
+
+        Set<Product> items = new LinkedHashSet<>();
+        for(int item = firstItem(cartId); item < endItem(cartId); item++) {
+            ProductSize size = itemSize(item);
+            items.add(new Product(itemName(item), size.getValue()+" "+size.getUnit()));
+        }
+        return new Cart(cartId, items);
+    }
+}
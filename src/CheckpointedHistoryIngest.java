@@ -0,0 +1,267 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/**
+ * Lenient load of a large product history file which commits batch by batch and can be resumed after a crash
+ * i.e. an invalid line is written to a reject file with its offset and RejectReason and every other line is loaded,
+ * instead of discarding the whole file as loadProductHistory does (which stays available as the strict mode).
+ * File is memory mapped batchBytes at a time, every batch is committed on its own. Once checkpointBytes of input
+ * were committed, a checkpoint is written into the checkpoint directory: a snapshot of the product index
+ * (see CostOfLivingSnapshot) along with the input offset and length of the reject file it belongs to.
+ * Running again with the same directory continues from the last checkpoint, the reject file is cut back to its
+ * length at that checkpoint, so nothing is loaded or rejected twice.
+ *
+ * Checkpoint directory holds checkpoint.properties, snapshot-N.bin of the latest checkpoint and rejects.tsv
+ * with lines "offset	reason	line".
+ */
+public class CheckpointedHistoryIngest {
+
+    private static final String CHECKPOINT_FILE = "checkpoint.properties";
+    private static final String REJECT_FILE = "rejects.tsv";
+
+    //a batch is mapped in one go so it has to fit in a MappedByteBuffer
+    private static final int MAX_BATCH_BYTES = 1 << 30;
+
+    //bytes of a line longer than a batch written to the reject file, rest of it is left out
+    private static final int MAX_REJECTED_LINE_BYTES = 4096;
+
+    //bytes read at a time while looking for the end of a line longer than a batch
+    private static final int LINE_SCAN_SIZE = 1 << 16;
+
+    private final Path productFile;
+    private final Path checkpointDirectory;
+
+    private int batchBytes = 64 << 20;
+    private long checkpointBytes = 1L << 30;
+
+    //progress of the input, including whatever was done before the checkpoint run continued from
+    private long offset;
+    private long rowsRejected;
+    private long checkpoint;
+
+    //length of the reject file at the last checkpoint
+    private long rejectedBytes;
+
+    /**
+     * @param productFile product history file, lines appended whole after a run are loaded by the next run
+     * @param checkpointDirectory directory for checkpoints and rejects, created if missing, one per input file
+     */
+    public CheckpointedHistoryIngest(Path productFile, Path checkpointDirectory) {
+        if(productFile == null || checkpointDirectory == null) throw new IllegalArgumentException("Invalid product file or checkpoint directory");
+
+        this.productFile = productFile;
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    //setter for largest part of the file committed as one batch, lines are never split between batches
+    public void setBatchBytes(int batchBytes) {
+        if(batchBytes <= 0 || batchBytes > MAX_BATCH_BYTES) throw new IllegalArgumentException("Invalid batch size");
+        this.batchBytes = batchBytes;
+    }
+
+    //setter for bytes of input committed between two checkpoints, every checkpoint writes a whole snapshot
+    public void setCheckpointBytes(long checkpointBytes) {
+        if(checkpointBytes <= 0) throw new IllegalArgumentException("Invalid checkpoint interval");
+        this.checkpointBytes = checkpointBytes;
+    }
+
+    /**
+     * Function to load the whole file, continuing from the last checkpoint if there is one
+     * @return loaded object, null if input, checkpoint or reject file could not be read or written
+     */
+    public CostOfLiving run() {
+        try {
+            Files.createDirectories(checkpointDirectory);
+
+            CostOfLiving costOfLiving = resume();
+            if(costOfLiving == null) return null;
+
+            Path rejectFile = checkpointDirectory.resolve(REJECT_FILE);
+            try(FileChannel input = FileChannel.open(productFile, StandardOpenOption.READ);
+                FileChannel rejects = FileChannel.open(rejectFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+                long fileSize = input.size();
+                if(fileSize < offset) return null;
+
+                //rejects written after the checkpoint belong to batches which are loaded again
+                rejects.truncate(rejectedBytes);
+                rejects.position(rejectedBytes);
+                Writer rejectWriter = new BufferedWriter(Channels.newWriter(rejects, StandardCharsets.UTF_8.newEncoder(), -1));
+
+                long checkpointOffset = offset;
+                while(offset < fileSize) {
+                    loadBatch(costOfLiving, input, fileSize, rejectWriter);
+
+                    if(offset - checkpointOffset >= checkpointBytes) {
+                        writeCheckpoint(costOfLiving, rejectWriter, rejects);
+                        checkpointOffset = offset;
+                    }
+                }
+
+                //end of input is always a checkpoint, so running again only loads what gets appended later
+                if(offset != checkpointOffset || checkpoint == 0) writeCheckpoint(costOfLiving, rejectWriter, rejects);
+            }
+            return costOfLiving;
+        } catch (IOException | UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Function to restore progress and product index of the last checkpoint
+     * @return product index of the checkpoint, empty one if there is none, null if checkpoint is of another file
+     * @throws IOException
+     */
+    private CostOfLiving resume() throws IOException {
+        Path checkpointFile = checkpointDirectory.resolve(CHECKPOINT_FILE);
+        offset = 0;
+        rowsRejected = 0;
+        rejectedBytes = 0;
+        checkpoint = 0;
+
+        if(!Files.exists(checkpointFile)) return new CostOfLiving();
+
+        Properties properties = new Properties();
+        try(InputStream in = Files.newInputStream(checkpointFile)) {
+            properties.load(in);
+        }
+
+        if(!productFile.toAbsolutePath().toString().equals(properties.getProperty("productFile"))) return null;
+
+        try {
+            offset = Long.parseLong(properties.getProperty("offset"));
+            rowsRejected = Long.parseLong(properties.getProperty("rowsRejected"));
+            rejectedBytes = Long.parseLong(properties.getProperty("rejectedBytes"));
+            checkpoint = Long.parseLong(properties.getProperty("checkpoint"));
+        } catch (NumberFormatException e) {
+            throw new IOException("Damaged checkpoint", e);
+        }
+        return CostOfLiving.openSnapshot(checkpointDirectory.resolve(snapshotName(checkpoint)));
+    }
+
+    /**
+     * Function to load lines of the next batch starting at offset, invalid lines go to the reject file
+     * @param costOfLiving
+     * @param input
+     * @param fileSize
+     * @param rejectWriter
+     * @throws IOException
+     */
+    private void loadBatch(CostOfLiving costOfLiving, FileChannel input, long fileSize, Writer rejectWriter) throws IOException {
+        int length = (int) Math.min(batchBytes, fileSize - offset);
+        MappedByteBuffer buffer = input.map(FileChannel.MapMode.READ_ONLY, offset, length);
+
+        //last batch takes everything, other batches stop after their last complete line
+        int end = offset + length == fileSize ? length : ProductHistoryParser.lineAlignedEnd(buffer, length);
+
+        if(end == 0) {
+            //a single line longer than a batch can not be parsed, only its beginning is kept in the reject file
+            byte[] start = new byte[Math.min(length, MAX_REJECTED_LINE_BYTES)];
+            buffer.get(0, start);
+            reject(rejectWriter, offset, new String(start, StandardCharsets.UTF_8), RejectReason.LINE_TOO_LONG);
+            costOfLiving.getMetrics().rowsSkipped(1);
+
+            offset = nextLineStart(input, offset + length, fileSize);
+            return;
+        }
+
+        long batchOffset = offset;
+        costOfLiving.loadProductHistoryLenient(buffer, 0, end, (lineOffset, line, reason) -> {
+            try {
+                reject(rejectWriter, batchOffset + lineOffset, line, reason);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        offset += end;
+    }
+
+    private void reject(Writer rejectWriter, long lineOffset, String line, RejectReason reason) throws IOException {
+        rejectWriter.write(lineOffset + "\t" + reason + "\t" + line + "\n");
+        rowsRejected++;
+    }
+
+    //offset right after the first \n at or after position, or the file size if there is none
+    private static long nextLineStart(FileChannel input, long position, long fileSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LINE_SCAN_SIZE);
+
+        for(long start = position; start < fileSize; start += LINE_SCAN_SIZE) {
+            buffer.clear();
+            int read = input.read(buffer, start);
+            for(int i = 0; i < read; i++) {
+                if(buffer.get(i) == '\n') return start + i + 1;
+            }
+        }
+        return fileSize;
+    }
+
+    /**
+     * Function to make everything committed so far survive a crash, rejects and snapshot are on disk before the
+     * checkpoint file points at them, checkpoint file is replaced in one move so it is never half written
+     * @param costOfLiving
+     * @param rejectWriter
+     * @param rejects
+     * @throws IOException
+     */
+    private void writeCheckpoint(CostOfLiving costOfLiving, Writer rejectWriter, FileChannel rejects) throws IOException {
+        rejectWriter.flush();
+        rejects.force(false);
+
+        long next = checkpoint + 1;
+        Path snapshot = checkpointDirectory.resolve(snapshotName(next));
+        if(costOfLiving.saveSnapshot(snapshot) == -1) throw new IOException("Snapshot could not be written");
+
+        Properties properties = new Properties();
+        properties.setProperty("productFile", productFile.toAbsolutePath().toString());
+        properties.setProperty("offset", Long.toString(offset));
+        properties.setProperty("rowsRejected", Long.toString(rowsRejected));
+        properties.setProperty("rejectedBytes", Long.toString(rejects.size()));
+        properties.setProperty("checkpoint", Long.toString(next));
+
+        Path temporary = checkpointDirectory.resolve(CHECKPOINT_FILE + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            OutputStream out = Channels.newOutputStream(channel)) {
+            properties.store(out, "progress of " + productFile.getFileName());
+            channel.force(true);
+        }
+        Files.move(temporary, checkpointDirectory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        //snapshot of the previous checkpoint is not needed anymore
+        Files.deleteIfExists(checkpointDirectory.resolve(snapshotName(checkpoint)));
+        rejectedBytes = rejects.size();
+        checkpoint = next;
+    }
+
+    private static String snapshotName(long checkpoint) {
+        return "snapshot-" + checkpoint + ".bin";
+    }
+
+    //getter for offset of input loaded till now, including runs before the one continued from
+    public long getOffset() {
+        return offset;
+    }
+
+    //getter for number of lines written to the reject file till now, including runs before
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    //getter for path of the reject file
+    public Path getRejectFile() {
+        return checkpointDirectory.resolve(REJECT_FILE);
+    }
+}
@@ -0,0 +1,569 @@
+import java.io.BufferedReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Storage engine with the same API as CostOfLiving which keeps price records in primitive arrays instead of Product objects
+ * i.e. every (name, base size) series is a struct of arrays {epoch days, costs, size ids} sorted by date,
+ * names and sizes as written in history are stored once in dictionaries and referred to by int id.
+ * A record costs 12 bytes here against well over 100 bytes as Product in CostOfLiving, queries read the arrays
+ * directly and Strings are only built for the results they return.
+ * It is a class of its own next to CostOfLiving rather than a storage option inside it, the features built on the
+ * Product index of CostOfLiving (versions, snapshots, monthly price table, metrics) are not available here.
+ */
+public class ColumnarCostOfLiving {
+
+    //to keep count of number of products introduced
+    int productCount = 0;
+
+    //more distinct size objects than this are looked up by their text instead of growing sizeIdOfObject
+    private static final int MAX_SIZE_OBJECTS = 10000;
+
+    //carts stored in primitive arrays with cartId as index, see CartStore
+    final CartStore carts = new CartStore();
+
+    //dictionary of product names (lower case), id of a name is its index in names
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    //series of every name by name id, one series per base unit size
+    private final List<List<Series>> seriesOfName = new ArrayList<>();
+
+    //dictionary of sizes as written in history i.e. "500.0 g" and "0.5 kg" get different ids with same base size
+    private final Map<String, Integer> sizeIds = new HashMap<>();
+    private final List<ProductSize> sizes = new ArrayList<>();
+
+    //parser shares one ProductSize object per distinct size, so most lookups are answered by identity
+    private final Map<ProductSize, Integer> sizeIdOfObject = new IdentityHashMap<>();
+
+    /**
+     * Function to load product using BufferReader, same validation and result as CostOfLiving
+     * @param productStream
+     * @return total number of products introduced till now
+     */
+    public int loadProductHistory( BufferedReader productStream ) {
+
+        if(productStream == null) return -1;
+
+        String line;
+        ProductHistoryParser parser = new ProductHistoryParser();
+        Batch batch = new Batch();
+
+        try {
+            while((line = productStream.readLine()) != null) {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+
+                if(!parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length, batch)) return -1;
+            }
+
+            return commit(batch);
+        } catch (Exception e) {
+            return -1;
+        } finally {
+            batch.discard();
+        }
+    }
+
+    /**
+     * Function to load product history straight from a memory mapped file
+     * @param productFile
+     * @return total number of products introduced till now, -1 in case of invalid input
+     */
+    public int loadProductHistory( Path productFile ) {
+
+        if(productFile == null) return -1;
+
+        Batch batch = new Batch();
+
+        try(FileChannel channel = FileChannel.open(productFile, StandardOpenOption.READ)) {
+            if(!new ProductHistoryParser().parse(channel, batch)) return -1;
+
+            return commit(batch);
+        } catch (Exception e) {
+            return -1;
+        } finally {
+            batch.discard();
+        }
+    }
+
+    /**
+     * Function to create and load cart with products and return created cartId
+     * @param cartStream
+     * @return cartId of newly created cart object
+     */
+    public int loadShoppingCart( BufferedReader cartStream ) {
+
+        if(cartStream == null) return -1;
+
+        try {
+            Set<Product> cartItems = CostOfLiving.readCartItems(cartStream);
+
+            if(cartItems == null) return -1;
+
+            String[] names = new String[cartItems.size()];
+            ProductSize[] sizes = new ProductSize[cartItems.size()];
+            int itemCount = 0;
+            for(Product item: cartItems) {
+                names[itemCount] = item.getName();
+                sizes[itemCount++] = item.getSize();
+            }
+
+            //cartId is the next free position in cart store
+            return carts.add(names, sizes, itemCount);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Function will return cost of given cartId on the first date of the given month and year
+     * @param cartNumber
+     * @param year
+     * @param month
+     * @return the most efficient cost of cart on 1st date of given month and year
+     */
+    public float shoppingCartCost( int cartNumber, int year, int month ) {
+        try {
+            if(!carts.contains(cartNumber) || year < 0) return -1f;
+
+            float totalCartCost = 0;
+            int lastDay = (int) LocalDate.of(year, month, 1).toEpochDay();
+
+            for(int item = carts.firstItem(cartNumber), end = carts.endItem(cartNumber); item < end; item++) {
+                Integer nameId = nameIds.get(carts.itemName(item));
+
+                if(nameId == null) return -1f;
+
+                float costOfItem = Float.MAX_VALUE;
+
+                //looping over different sizes to see which is most cost-efficient
+                for(Series series: seriesOfName.get(nameId)) {
+                    int index = series.floorIndex(lastDay);
+
+                    if(index >= 0 && series.costs[index] > 0) {
+                        int requiredQuantity = (int) Math.ceil(carts.itemSizeInBaseUnit(item)/series.sizeInBaseUnit);
+                        costOfItem = Math.min(costOfItem, requiredQuantity*series.costs[index]);
+                    }
+                }
+
+                if(costOfItem == Float.MAX_VALUE) return -1f;
+
+                totalCartCost += costOfItem;
+            }
+
+            return totalCartCost == Float.MAX_VALUE ? -1f : totalCartCost;
+        } catch (Exception e) {
+            return -1f;
+        }
+    }
+
+    /**
+     * Same result as CostOfLiving.inflation, computed from the arrays of every series
+     * @param startYear
+     * @param startMonth
+     * @param endYear
+     * @param endMonth
+     * @return Map with key as productName and latest size separated by space and value as inflation or shrinkflation value
+     */
+    public Map<String, Float> inflation( int startYear, int startMonth, int endYear, int endMonth ) {
+        try {
+            LocalDate startDate = LocalDate.of(startYear, startMonth, 1);
+            LocalDate endDate = LocalDate.of(endYear, endMonth, 1);
+
+            if(startDate.isAfter(endDate)) return null;
+
+            int startDay = (int) startDate.toEpochDay();
+            int endDay = (int) endDate.toEpochDay();
+            Map<String, Float> productExhibitingInflationOrShrinkflation = new HashMap<>();
+
+            for(int nameId = 0; nameId < names.size(); nameId++) {
+                Map<String, Float> shrinkflation = new HashMap<>();
+
+                for(Series series: seriesOfName.get(nameId)) {
+                    int first = series.ceilingIndex(startDay);
+                    int last = series.floorIndex(endDay);
+
+                    //no record of this size in given time period
+                    if(first > last) continue;
+
+                    float startCost = series.costs[first];
+                    float endCost = series.costs[last];
+
+                    if(startCost == 0) continue;
+
+                    if(endCost != 0) {
+                        //for inflation end cost > start cost
+                        float inflation = (endCost - startCost)/startCost;
+
+                        if(startCost < endCost && inflation != 0) {
+                            productExhibitingInflationOrShrinkflation.put(names.get(nameId) + " " + originalSize(series.sizeIds[last]), inflation);
+                        }
+                    } else {
+                        //discontinued, looking for a smaller size introduced in the same month
+                        addShrinkflation(nameId, series, last, startCost/series.sizeInBaseUnit, endDay, shrinkflation);
+                    }
+                }
+
+                //shrinkflation of a product is applied after its inflation same as CostOfLiving
+                productExhibitingInflationOrShrinkflation.putAll(shrinkflation);
+            }
+            return productExhibitingInflationOrShrinkflation;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Function to find the smaller size with largest shrinkflation introduced in the month given series got discontinued
+     * @param nameId
+     * @param discontinued series whose last record in the time period has cost 0
+     * @param last index of that record
+     * @param perUnitCostOfStartProduct
+     * @param endDay last day of the time period
+     * @param shrinkflation map receiving the result
+     */
+    private void addShrinkflation(int nameId, Series discontinued, int last, float perUnitCostOfStartProduct, int endDay, Map<String, Float> shrinkflation) {
+        LocalDate discontinuedOn = LocalDate.ofEpochDay(discontinued.epochDays[last]);
+        int fromDay = discontinued.epochDays[last];
+        int toDay = (int) Math.min(endDay, discontinuedOn.withDayOfMonth(discontinuedOn.lengthOfMonth()).toEpochDay());
+
+        Series bestSeries = null;
+        int bestIndex = -1;
+        float bestShrinkflation = 0;
+
+        for(Series series: seriesOfName.get(nameId)) {
+            if(series.sizeInBaseUnit >= discontinued.sizeInBaseUnit) continue;
+
+            for(int i = series.ceilingIndex(fromDay); i < series.count && series.epochDays[i] <= toDay; i++) {
+                float shrinkflationOfRecord = (series.costs[i]/series.sizeInBaseUnit - perUnitCostOfStartProduct)/perUnitCostOfStartProduct;
+
+                if(bestSeries == null || !(bestShrinkflation > shrinkflationOfRecord)) {
+                    bestSeries = series;
+                    bestIndex = i;
+                    bestShrinkflation = shrinkflationOfRecord;
+                }
+            }
+        }
+
+        if(bestSeries != null && bestShrinkflation > 0) {
+            shrinkflation.put(names.get(nameId) + " " + originalSize(bestSeries.sizeIds[bestIndex]), bestShrinkflation);
+        }
+    }
+
+    /**
+     * Same result as CostOfLiving.priceInversion, computed from the arrays of every series
+     * @param year
+     * @param month
+     * @param tolerance
+     * @return List of string which will be product name separated by larger size + " " + smaller size which has gone price inversion
+     */
+    public List<String> priceInversion( int year, int month, int tolerance ) {
+        try {
+            if(year < 0 || tolerance >= 100 || tolerance < 0) return null;
+
+            int startDay = (int) LocalDate.of(year, month, 1).toEpochDay();
+            List<String> productsUnderGoingPriceInversion = new ArrayList<>();
+
+            PriceInversionFinder inversionFinder = new PriceInversionFinder();
+            int[] sizeIdOfRecord = new int[16];
+
+            for(int nameId = 0; nameId < names.size(); nameId++) {
+                inversionFinder.clear();
+
+                //every priced record on or before given date, finder index i has size id sizeIdOfRecord[i]
+                for(Series series: seriesOfName.get(nameId)) {
+                    int last = series.floorIndex(startDay);
+
+                    for(int i = 0; i <= last; i++) {
+                        if(series.costs[i] == 0) continue;
+
+                        int index = inversionFinder.add(series.sizeInBaseUnit, series.costs[i]);
+                        if(index == sizeIdOfRecord.length) sizeIdOfRecord = Arrays.copyOf(sizeIdOfRecord, index * 2);
+                        sizeIdOfRecord[index] = series.sizeIds[i];
+                    }
+                }
+
+                String productName = names.get(nameId);
+                int[] sizeIdOf = sizeIdOfRecord;
+                inversionFinder.find(tolerance, (larger, smaller) -> productsUnderGoingPriceInversion.add(productName + "\t"
+                        + originalSize(sizeIdOf[larger]) + "\t" + originalSize(sizeIdOf[smaller])));
+            }
+            return productsUnderGoingPriceInversion;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    //size as written in history, same format as Product.getOriginalSize
+    private String originalSize(int sizeId) {
+        ProductSize size = sizes.get(sizeId);
+        return size.getValue()+" "+size.getUnit();
+    }
+
+    /**
+     * Function to move a fully parsed batch into the series, duplicates of already loaded records and
+     * repeated records within the batch are dropped keeping their first occurrence
+     * @param batch
+     * @return total number of products introduced till now
+     */
+    private int commit(Batch batch) {
+        //names and sizes first seen in the batch are registered only now that it is valid, in the order of their ids
+        for(String name: batch.newNames) {
+            nameIds.put(name, names.size());
+            names.add(name);
+            seriesOfName.add(new ArrayList<>());
+        }
+        for(ProductSize size: batch.newSizes) {
+            sizeIds.put(size.getValue()+" "+size.getUnit(), sizes.size());
+            sizes.add(size);
+        }
+        batch.newSizeIdOfObject.forEach((size, sizeId) -> {
+            if(sizeIdOfObject.size() < MAX_SIZE_OBJECTS) sizeIdOfObject.put(size, sizeId);
+        });
+
+        for(Series series: batch.touchedSeries) {
+            productCount += series.merge(batch);
+
+            //series seen for the first time get registered only now that the batch is valid
+            if(series.isNew) {
+                series.isNew = false;
+                seriesOfName.get(series.nameId).add(series);
+            }
+        }
+        return productCount;
+    }
+
+    /**
+     * Records parsed from one input, kept in its own arrays until the whole input is known to be valid
+     */
+    private class Batch implements ProductHistoryParser.RecordHandler {
+        int count = 0;
+        int[] epochDays = new int[1024];
+        float[] costs = new float[1024];
+        int[] sizeIds = new int[1024];
+
+        //series receiving at least one record of this batch
+        final List<Series> touchedSeries = new ArrayList<>();
+
+        //series created by this batch keyed by name id and base size bits
+        private final Map<Long, Series> newSeries = new HashMap<>();
+
+        //names and sizes not in the dictionaries yet, their ids follow the ids of the dictionaries in order of first use
+        final List<String> newNames = new ArrayList<>();
+        final List<ProductSize> newSizes = new ArrayList<>();
+        private final Map<String, Integer> newNameIds = new HashMap<>();
+        private final Map<String, Integer> newSizeIds = new HashMap<>();
+        final Map<ProductSize, Integer> newSizeIdOfObject = new IdentityHashMap<>();
+
+        //name and size seen on previous record, consecutive records of same product skip dictionary lookups
+        private String lastName;
+        private ProductSize lastSize;
+        private int lastSizeId;
+        private Series lastSeries;
+
+        @Override
+        public void accept(int epochDay, String name, ProductSize size, float cost) {
+            if(count == epochDays.length) {
+                epochDays = Arrays.copyOf(epochDays, count * 2);
+                costs = Arrays.copyOf(costs, count * 2);
+                sizeIds = Arrays.copyOf(sizeIds, count * 2);
+            }
+
+            if(size != lastSize) {
+                lastSize = size;
+                lastSizeId = sizeId(size);
+            }
+
+            Series series = lastSeries;
+            if(!name.equals(lastName) || series.sizeInBaseUnit != size.toBaseUnit()) {
+                series = findSeries(nameId(name), size.toBaseUnit());
+                lastName = name;
+                lastSeries = series;
+            }
+
+            epochDays[count] = epochDay;
+            costs[count] = cost;
+            sizeIds[count] = lastSizeId;
+            series.addPending(epochDay, count);
+            count++;
+        }
+
+        private int nameId(String name) {
+            Integer nameId = nameIds.get(name);
+
+            if(nameId == null) {
+                nameId = newNameIds.get(name);
+                if(nameId == null) {
+                    nameId = names.size() + newNames.size();
+                    newNameIds.put(name, nameId);
+                    newNames.add(name);
+                }
+            }
+            return nameId;
+        }
+
+        private int sizeId(ProductSize size) {
+            Integer sizeId = sizeIdOfObject.get(size);
+            if(sizeId == null) sizeId = newSizeIdOfObject.get(size);
+
+            if(sizeId == null) {
+                String originalSize = size.getValue()+" "+size.getUnit();
+                sizeId = ColumnarCostOfLiving.this.sizeIds.get(originalSize);
+                if(sizeId == null) sizeId = newSizeIds.get(originalSize);
+
+                if(sizeId == null) {
+                    sizeId = sizes.size() + newSizes.size();
+                    newSizeIds.put(originalSize, sizeId);
+                    newSizes.add(size);
+                }
+                if(sizeIdOfObject.size() + newSizeIdOfObject.size() < MAX_SIZE_OBJECTS) newSizeIdOfObject.put(size, sizeId);
+            }
+            return sizeId;
+        }
+
+        private Series findSeries(int nameId, float sizeInBaseUnit) {
+            //names new to this batch have no series yet
+            if(nameId < names.size()) {
+                for(Series series: seriesOfName.get(nameId)) {
+                    if(Float.compare(series.sizeInBaseUnit, sizeInBaseUnit) == 0) return touch(series);
+                }
+            }
+
+            return newSeries.computeIfAbsent(((long) nameId << 32) | Float.floatToIntBits(sizeInBaseUnit), k -> {
+                Series series = new Series(nameId, sizeInBaseUnit);
+                series.isNew = true;
+                return touch(series);
+            });
+        }
+
+        private Series touch(Series series) {
+            if(series.pendingCount == 0) touchedSeries.add(series);
+            return series;
+        }
+
+        //dropping records not merged into their series, called once batch is committed or found invalid
+        void discard() {
+            for(Series series: touchedSeries) {
+                series.pending = new long[4];
+                series.pendingCount = 0;
+            }
+            touchedSeries.clear();
+        }
+    }
+
+    /**
+     * Records of one product in one base unit size as parallel arrays sorted by date,
+     * records on the same date keep the order in which they were loaded
+     */
+    private static class Series {
+        final int nameId;
+        final float sizeInBaseUnit;
+        boolean isNew;
+
+        int count = 0;
+        int[] epochDays = new int[0];
+        float[] costs = new float[0];
+        int[] sizeIds = new int[0];
+
+        //records of the batch being loaded as (epoch day << 32 | index in batch), sorting them orders by date then by position in input
+        long[] pending = new long[4];
+        int pendingCount = 0;
+
+        Series(int nameId, float sizeInBaseUnit) {
+            this.nameId = nameId;
+            this.sizeInBaseUnit = sizeInBaseUnit;
+        }
+
+        void addPending(int epochDay, int batchIndex) {
+            if(pendingCount == pending.length) pending = Arrays.copyOf(pending, pendingCount * 2);
+            pending[pendingCount++] = ((long) epochDay << 32) | batchIndex;
+        }
+
+        /**
+         * Function to merge pending records of the batch into the arrays keeping them sorted by date
+         * @param batch
+         * @return number of records added, duplicates are not counted
+         */
+        int merge(Batch batch) {
+            Arrays.sort(pending, 0, pendingCount);
+
+            int[] newEpochDays = new int[count + pendingCount];
+            float[] newCosts = new float[count + pendingCount];
+            int[] newSizeIds = new int[count + pendingCount];
+
+            int merged = 0;
+            int existing = 0;
+            int added = 0;
+
+            for(int p = 0; p < pendingCount; p++) {
+                int epochDay = (int) (pending[p] >> 32);
+                int batchIndex = (int) pending[p];
+                float cost = batch.costs[batchIndex];
+
+                //copying existing records up to and including the same date
+                while(existing < count && epochDays[existing] <= epochDay) {
+                    newEpochDays[merged] = epochDays[existing];
+                    newCosts[merged] = costs[existing];
+                    newSizeIds[merged] = sizeIds[existing];
+                    merged++;
+                    existing++;
+                }
+
+                //record of same date and same cost already present, either loaded before or earlier in this batch
+                boolean duplicate = false;
+                for(int i = merged - 1; i >= 0 && newEpochDays[i] == epochDay && !duplicate; i--) {
+                    duplicate = Float.compare(newCosts[i], cost) == 0;
+                }
+                if(duplicate) continue;
+
+                newEpochDays[merged] = epochDay;
+                newCosts[merged] = cost;
+                newSizeIds[merged] = batch.sizeIds[batchIndex];
+                merged++;
+                added++;
+            }
+
+            while(existing < count) {
+                newEpochDays[merged] = epochDays[existing];
+                newCosts[merged] = costs[existing];
+                newSizeIds[merged] = sizeIds[existing];
+                merged++;
+                existing++;
+            }
+
+            epochDays = Arrays.copyOf(newEpochDays, merged);
+            costs = Arrays.copyOf(newCosts, merged);
+            sizeIds = Arrays.copyOf(newSizeIds, merged);
+            count = merged;
+
+            pending = new long[4];
+            pendingCount = 0;
+            return added;
+        }
+
+        //index of latest record on or before given day, -1 if there is none
+        int floorIndex(int epochDay) {
+            return ceilingIndex(epochDay + 1) - 1;
+        }
+
+        //index of earliest record on or after given day, count if there is none
+        int ceilingIndex(int epochDay) {
+            int low = 0;
+            int high = count;
+            while(low < high) {
+                int mid = (low + high) >>> 1;
+                if(epochDays[mid] < epochDay) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+import java.io.BufferedReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Thread safe variant of CostOfLiving where queries keep running at full speed while history is being loaded
+ * i.e. every load builds the next version of the product index next to the current one (sharing all series it
+ * does not touch) and publishes it in one volatile write. A query reads the current version once and works on
+ * that snapshot until it returns, so it never sees half of a batch and never waits for a load.
+ * Loads are serialized among themselves, carts are kept in one append only cart store shared by all versions.
+ */
+public class ConcurrentCostOfLiving {
+
+    //latest published version, never changed after being published
+    private volatile CostOfLiving current;
+
+    //constructor to initialize empty product index, cart store is already safe to use from many threads
+    public ConcurrentCostOfLiving() {
+        current = new CostOfLiving();
+    }
+
+    //constructor to continue from an existing product index, i.e. one opened from a snapshot
+    private ConcurrentCostOfLiving(CostOfLiving costOfLiving) {
+        current = costOfLiving;
+    }
+
+    /**
+     * Function to open a snapshot written by saveSnapshot, see CostOfLiving.openSnapshot
+     * @param snapshotFile
+     * @return thread safe object with the saved product index and carts, null if file is not a valid snapshot
+     */
+    public static ConcurrentCostOfLiving openSnapshot( Path snapshotFile ) {
+        CostOfLiving costOfLiving = CostOfLiving.openSnapshot(snapshotFile);
+        return costOfLiving == null ? null : new ConcurrentCostOfLiving(costOfLiving);
+    }
+
+    /**
+     * Function to save current version into a snapshot, loads keep going meanwhile as published versions never change
+     * @param snapshotFile
+     * @return total number of products saved, -1 if snapshot could not be written
+     */
+    public int saveSnapshot( Path snapshotFile ) {
+        return current.saveSnapshot(snapshotFile);
+    }
+
+    /**
+     * Function to load product using BufferReader, queries see either none or all products of it
+     * @param productStream
+     * @return total number of products introduced till now, -1 in case of invalid input
+     */
+    public int loadProductHistory( BufferedReader productStream ) {
+        return update(nextVersion -> nextVersion.loadProductHistory(productStream));
+    }
+
+    /**
+     * Function to load product history straight from a memory mapped file
+     * @param productFile
+     * @return total number of products introduced till now, -1 in case of invalid input
+     */
+    public int loadProductHistory( Path productFile ) {
+        return update(nextVersion -> nextVersion.loadProductHistory(productFile));
+    }
+
+    /**
+     * Function to load product history from a file using all threads of given pool
+     * @param productFile
+     * @param pool
+     * @return total number of products introduced till now, -1 in case of invalid input
+     */
+    public int loadProductHistory( Path productFile, ForkJoinPool pool ) {
+        return update(nextVersion -> nextVersion.loadProductHistory(productFile, pool));
+    }
+
+    /**
+     * Function to load valid lines between given offsets of a buffer, see CostOfLiving.loadProductHistoryLenient
+     * @param buffer
+     * @param from
+     * @param to
+     * @param rejectHandler
+     * @return total number of products introduced till now
+     */
+    int loadProductHistoryLenient( ByteBuffer buffer, int from, int to, ProductHistoryParser.RejectHandler rejectHandler ) {
+        return update(nextVersion -> nextVersion.loadProductHistoryLenient(buffer, from, to, rejectHandler));
+    }
+
+    /**
+     * Function to turn on the table of prices on the 1st of every month, see CostOfLiving.enableMonthlyPriceTable
+     * rows are built on a new version, queries keep using the current one until it is published
+     * @param maxBytes
+     * @return number of series with a row, -1 in case of invalid input
+     */
+    public int enableMonthlyPriceTable( long maxBytes ) {
+        return update(nextVersion -> nextVersion.enableMonthlyPriceTable(maxBytes));
+    }
+
+    //function to turn off the table of prices on the 1st of every month in a new version
+    public void disableMonthlyPriceTable() {
+        update(nextVersion -> {
+            nextVersion.disableMonthlyPriceTable();
+            return 0;
+        });
+    }
+
+    /**
+     * Function to run a load on a new version and publish it if load succeeded
+     * @param load
+     * @return result of the load
+     */
+    private synchronized int update(ToIntFunction<CostOfLiving> load) {
+        CostOfLiving nextVersion = current.copyForUpdate();
+        int result = load.applyAsInt(nextVersion);
+
+        //failed loads leave nothing behind, current version stays as it is
+        if(result != -1) {
+            nextVersion.finishUpdate();
+            current = nextVersion;
+        }
+        return result;
+    }
+
+    /**
+     * Function to create and load cart with products and return created cartId
+     * @param cartStream
+     * @return cartId of newly created cart object
+     */
+    public int loadShoppingCart( BufferedReader cartStream ) {
+        //cart store is shared by every version and safe to change from any thread
+        return current.loadShoppingCart(cartStream);
+    }
+
+    /**
+     * Function to load many carts from one stream, see CostOfLiving.loadShoppingCarts
+     * @param cartStream
+     * @return cartId of every cart in the stream, -1 for invalid carts
+     */
+    public int[] loadShoppingCarts( BufferedReader cartStream ) {
+        return current.loadShoppingCarts(cartStream);
+    }
+
+    /**
+     * @param cartNumber
+     * @param year
+     * @param month
+     * @return the most efficient cost of cart on 1st date of given month and year, see CostOfLiving.shoppingCartCost
+     */
+    public float shoppingCartCost( int cartNumber, int year, int month ) {
+        return current.shoppingCartCost(cartNumber, year, month);
+    }
+
+    /**
+     * @param cartNumbers
+     * @param years
+     * @param months
+     * @return cost of every request, see CostOfLiving.shoppingCartCosts
+     */
+    public float[] shoppingCartCosts( int[] cartNumbers, int[] years, int[] months ) {
+        return current.shoppingCartCosts(cartNumbers, years, months);
+    }
+
+    /**
+     * @param cartNumber
+     * @param startYear
+     * @param startMonth
+     * @param endYear
+     * @param endMonth
+     * @return cost of cart for every month in the range, see CostOfLiving.shoppingCartCostByMonth
+     */
+    public Map<YearMonth, Float> shoppingCartCostByMonth( int cartNumber, int startYear, int startMonth, int endYear, int endMonth ) {
+        return current.shoppingCartCostByMonth(cartNumber, startYear, startMonth, endYear, endMonth);
+    }
+
+    /**
+     * @param startYear
+     * @param startMonth
+     * @param endYear
+     * @param endMonth
+     * @return products exhibiting inflation or shrinkflation, see CostOfLiving.inflation
+     */
+    public Map<String, Float> inflation( int startYear, int startMonth, int endYear, int endMonth ) {
+        return current.inflation(startYear, startMonth, endYear, endMonth);
+    }
+
+    /**
+     * @param startYear
+     * @param startMonth
+     * @param endYear
+     * @param endMonth
+     * @param pool
+     * @return products exhibiting inflation or shrinkflation evaluated on given pool, see CostOfLiving.inflation
+     */
+    public Map<String, Float> inflation( int startYear, int startMonth, int endYear, int endMonth, ForkJoinPool pool ) {
+        return current.inflation(startYear, startMonth, endYear, endMonth, pool);
+    }
+
+    /**
+     * @param startYear
+     * @param startMonth
+     * @param endYear
+     * @param endMonth
+     * @param consumer
+     * @return number of records handed over to consumer, see CostOfLiving.inflationRecords
+     */
+    public int inflationRecords( int startYear, int startMonth, int endYear, int endMonth, Consumer<InflationRecord> consumer ) {
+        return current.inflationRecords(startYear, startMonth, endYear, endMonth, consumer);
+    }
+
+    /**
+     * @param startYear
+     * @param startMonth
+     * @param endYear
+     * @param endMonth
+     * @param top
+     * @return product sizes with the largest inflation or shrinkflation, see CostOfLiving.topInflation
+     */
+    public List<InflationRecord> topInflation( int startYear, int startMonth, int endYear, int endMonth, int top ) {
+        return current.topInflation(startYear, startMonth, endYear, endMonth, top);
+    }
+
+    /**
+     * @param year
+     * @param month
+     * @param tolerance
+     * @return products going through price inversion, see CostOfLiving.priceInversion
+     */
+    public List<String> priceInversion( int year, int month, int tolerance ) {
+        return current.priceInversion(year, month, tolerance);
+    }
+
+    /**
+     * @param year
+     * @param month
+     * @param tolerance
+     * @param pool
+     * @return products going through price inversion evaluated on given pool, see CostOfLiving.priceInversion
+     */
+    public List<String> priceInversion( int year, int month, int tolerance, ForkJoinPool pool ) {
+        return current.priceInversion(year, month, tolerance, pool);
+    }
+
+    //getter for table of prices on the 1st of every month of the latest version, null if it is turned off
+    public MonthlyPriceTable getMonthlyPriceTable() {
+        return current.getMonthlyPriceTable();
+    }
+
+    //getter for cart cost cache of the latest version, counters are shared by all versions
+    public CartCostCache getCartCostCache() {
+        return current.getCartCostCache();
+    }
+
+    //getter for counters and latencies shared by all versions, see CostOfLivingMetrics.register to expose them over JMX
+    public CostOfLivingMetrics getMetrics() {
+        return current.getMetrics();
+    }
+
+    //getter for number of products introduced till now in the latest version
+    public int getProductCount() {
+        return current.productCount;
+    }
+}
@@ -1,7 +1,19 @@
 import java.io.BufferedReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+import java.util.function.UnaryOperator;
 
 
 public class CostOfLiving {
@@ -11,20 +23,107 @@ public class CostOfLiving {
     //number of fields in cart input
     static final int TOTAL_FIELDS_IN_CART_LINE = 2;
 
+    //number of cart costs cached by default
+    static final int DEFAULT_CART_COST_CACHE_CAPACITY = 10000;
+
+    //initial capacity of the heap of topInflation, it grows past this only as records are added
+    private static final int MAX_INITIAL_TOP_CAPACITY = 1024;
+
+    //more product tasks than threads of the pool so that products with long histories do not keep other threads idle
+    private static final int TASKS_PER_THREAD = 8;
+
+    //fewer products are evaluated by one task, a task per product costs more than a short history takes to evaluate
+    private static final int MIN_PRODUCTS_PER_TASK = 16;
+
     //to keep count of number of products introduced
     int productCount = 0;
 
-    //Map to store the cart Object with cartId as key and cart as value
-    Map<Integer , Cart> cartMap;
+    //carts stored in primitive arrays with cartId as index, see CartStore
+    CartStore carts;
+
+    //costs of carts already calculated with cartId and month as key, see CartCostCache
+    CartCostCache cartCostCache;
+
+    //counters and latencies of loads and queries, shared by every version created by copyForUpdate
+    CostOfLivingMetrics metrics;
+
+    //number of different sizes of all products i.e. milk 500 ml and milk 1 l are two sizes
+    int sizeCount = 0;
 
     //Map to store the productList groupBy productName and with in that groupBy product baseUnit size
-    //i.e. {Milk -> { 1000 ml - [Product1, Product 2] , 500 ml - [Product 3, Product 4] }}
-    Map<String, Map<Float, Set<Product>>> productList;
+    //every size holds its records sorted by date i.e. {Milk -> { 1000 ml - [Product1, Product 2] , 500 ml - [Product 3, Product 4] }}
+    PartitionedMap<String, Map<Float, PriceSeries>> productList;
+
+    //Map to store sizes groupBy productName and with in that groupBy month they have records in, in the order they first got one
+    //used by shrinkflation to find sizes introduced in the month a size got discontinued, records are then read from
+    //their series in productList i.e. {Cookies -> { 2023-11 - [250.0, 200.0] }}, arrays are replaced and never changed
+    PartitionedMap<String, Map<YearMonth, float[]>> sizesByMonth;
+
+    //prices of every series on the 1st of every month, null unless turned on with enableMonthlyPriceTable
+    MonthlyPriceTable monthlyPriceTable;
 
-    //constructor to initialize cartMap and productList
+    //inner maps, lists and series this object is allowed to change when it shares the rest with an older version
+    //null for a regular object which owns everything, see copyForUpdate
+    private Set<Object> ownedForUpdate;
+
+    //constructor to initialize carts and productList
     public CostOfLiving() {
-        cartMap = new HashMap<>();
-        productList = new HashMap<>();
+        this(DEFAULT_CART_COST_CACHE_CAPACITY);
+    }
+
+    /**
+     * Constructor to initialize carts and productList with given size of cart cost cache
+     * @param cartCostCacheCapacity maximum number of cart costs cached, 0 to disable caching
+     */
+    public CostOfLiving(int cartCostCacheCapacity) {
+        carts = new CartStore();
+        cartCostCache = new CartCostCache(cartCostCacheCapacity);
+        metrics = new CostOfLivingMetrics(carts::size);
+        productList = new PartitionedMap<>();
+        sizesByMonth = new PartitionedMap<>();
+    }
+
+    //constructor for copyForUpdate, shares or copies everything of given version and allocates nothing of its own
+    private CostOfLiving(CostOfLiving version) {
+        carts = version.carts;
+        cartCostCache = new CartCostCache(version.cartCostCache);
+        metrics = version.metrics;
+        sizeCount = version.sizeCount;
+        productCount = version.productCount;
+        productList = new PartitionedMap<>(version.productList);
+        sizesByMonth = new PartitionedMap<>(version.sizesByMonth);
+        monthlyPriceTable = version.monthlyPriceTable == null ? null : new MonthlyPriceTable(version.monthlyPriceTable);
+        ownedForUpdate = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Function to create next version of this object for a load, while this one keeps serving queries unchanged
+     * outer maps share their parts, parts, inner maps and series are only copied once a load needs to change them
+     * carts are shared between both versions, cached cart costs are copied so the load only invalidates its own copy
+     * @return new version with same content
+     */
+    CostOfLiving copyForUpdate() {
+        return new CostOfLiving(this);
+    }
+
+    //function to mark the end of updates, after this the object is not changed anymore and is safe to read from many threads
+    void finishUpdate() {
+        ownedForUpdate = null;
+    }
+
+    //returns given object if this version is allowed to change it, otherwise its copy which then belongs to this version
+    private <T> T forUpdate(T current, UnaryOperator<T> copy) {
+        if(ownedForUpdate == null || ownedForUpdate.contains(current)) return current;
+
+        T copied = copy.apply(current);
+        ownedForUpdate.add(copied);
+        return copied;
+    }
+
+    //function to record that given newly created object belongs to this version
+    private <T> T owned(T created) {
+        if(ownedForUpdate != null) ownedForUpdate.add(created);
+        return created;
     }
 
     /**
@@ -36,9 +135,11 @@ public class CostOfLiving {
 
         if(productStream == null) return -1;
 
-        String line;
+        String line = null;
         DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy/MM/dd");   // to covert date in LocalDate format
-        Set<Product> productsToBeAdded = new HashSet<>();
+        Set<Product> productsToBeAdded = new LinkedHashSet<>();   //in input order, so records on the same date are added in the order they were given
+        long started = metrics.startTimer();
+        long rowsParsed = 0;
 
         try {
             //looping through every line present in bufferReader
@@ -50,6 +151,7 @@ public class CostOfLiving {
 
                 //handling the case for less or more fields than required
                 if(productDetails.length != TOTAL_FIELDS_IN_PRODUCT_LINE) {
+                    metrics.batchRejected(RejectReason.WRONG_FIELD_COUNT, rowsParsed, started);
                     return -1;
                 }
 
@@ -62,38 +164,275 @@ public class CostOfLiving {
                 //create object of product class
                 Product product =  new Product(date, name, size, cost);
 
-                // Get the product map for the current product name
-                Map<Float, Set<Product>> sizemap = productList.get(product.getName());
+                //if product is already present no need to add it again
+                if(!isInProductList(product)) {
+                    productsToBeAdded.add(product);
+                }
+                rowsParsed++;
+            }
 
-                //checking if map already contains the same product
-                if(sizemap != null) {
-                    Set<Product> products = sizemap.get(product.getSizeInBaseUnit());
+            return commit(productsToBeAdded, rowsParsed, started);
+        } catch (Exception e) {
+            //invalid field is looked up again only now, so the loop above does not pay for it
+            RejectReason reason = line == null ? null : RejectReason.of(line);
+            metrics.batchRejected(reason == null ? RejectReason.IO_ERROR : reason, rowsParsed, started);
 
-                    if(products != null && products.contains(product)) {
-                        continue;
-                    }
-                }
+            // throwing -1 in case of any error or invalid input
+            return -1;
+        }
+    }
 
-                //if yes continue no need to increment productCount
-                if(!productsToBeAdded.add(product)) {
-                    continue;
+    /**
+     * Function to load product history straight from a file, file is memory mapped and parsed byte by byte
+     * same validation as loadProductHistory(BufferedReader), any invalid line discards the whole file
+     * @param productFile
+     * @return total number of products introduced till now, -1 in case of invalid input
+     */
+    public int loadProductHistory( Path productFile ) {
+
+        if(productFile == null) return -1;
+
+        Set<Product> productsToBeAdded = new LinkedHashSet<>();
+        ProductHistoryParser parser = new ProductHistoryParser();
+        long started = metrics.startTimer();
+
+        try(FileChannel channel = FileChannel.open(productFile, StandardOpenOption.READ)) {
+            boolean valid = parser.parse(channel, (epochDay, name, size, cost) -> {
+                Product product = new Product(LocalDate.ofEpochDay(epochDay), name, size, cost);
+
+                if(!isInProductList(product)) {
+                    productsToBeAdded.add(product);
                 }
+            });
 
-                //maintaining number of product count for CostOfLiving object
-                productCount++;
+            if(!valid) {
+                metrics.batchRejected(parser.getRejectReason(), parser.getRowsParsed(), started);
+                return -1;
             }
 
-            productsToBeAdded.forEach(product ->  {
-                productList.computeIfAbsent(product.getName().toLowerCase(), k -> new HashMap<>()).computeIfAbsent(product.getSizeInBaseUnit(), k -> new HashSet<>()).add(product);
-            });
+            return commit(productsToBeAdded, parser.getRowsParsed(), started);
+        } catch (Exception e) {
+            metrics.batchRejected(RejectReason.IO_ERROR, parser.getRowsParsed(), started);
+            return -1;
+        }
+    }
 
-            return productCount;
+    /**
+     * Function to load product history from a file using all threads of given pool
+     * file is parsed in newline aligned chunks in parallel, result and productCount are same as loadProductHistory(Path)
+     * @param productFile
+     * @param pool
+     * @return total number of products introduced till now, -1 in case of invalid input
+     */
+    public int loadProductHistory( Path productFile, ForkJoinPool pool ) {
+
+        if(productFile == null || pool == null) return -1;
+
+        long started = metrics.startTimer();
+
+        try(FileChannel channel = FileChannel.open(productFile, StandardOpenOption.READ)) {
+            //productList is only read while chunks are parsed, it is updated after all of them are done
+            ParallelHistoryLoader loader = new ParallelHistoryLoader(channel, this::isInProductList);
+            List<Set<Product>> chunks = loader.load(pool);
+
+            if(chunks == null) {
+                metrics.batchRejected(loader.getRejectReason(), loader.getRowsParsed(), started);
+                return -1;
+            }
+
+            return commit(chunks, loader.getRowsParsed(), started);
         } catch (Exception e) {
-            // throwing -1 in case of any error or invalid input
+            metrics.batchRejected(RejectReason.IO_ERROR, 0, started);
             return -1;
         }
     }
 
+    /**
+     * Function to load lines between given offsets of a buffer, invalid lines are handed over to rejectHandler and
+     * every valid line is loaded, see CheckpointedHistoryIngest
+     * @param buffer
+     * @param from offset of first byte of the first line
+     * @param to offset after last byte of the last line
+     * @param rejectHandler
+     * @return total number of products introduced till now
+     */
+    int loadProductHistoryLenient( ByteBuffer buffer, int from, int to, ProductHistoryParser.RejectHandler rejectHandler ) {
+        Set<Product> productsToBeAdded = new LinkedHashSet<>();
+        ProductHistoryParser parser = new ProductHistoryParser();
+        long started = metrics.startTimer();
+
+        parser.parseLenient(buffer, from, to, (epochDay, name, size, cost) -> {
+            Product product = new Product(LocalDate.ofEpochDay(epochDay), name, size, cost);
+
+            if(!isInProductList(product)) {
+                productsToBeAdded.add(product);
+            }
+        }, rejectHandler);
+
+        metrics.rowsSkipped(parser.getRowsRejected());
+        return commit(productsToBeAdded, parser.getRowsParsed(), started);
+    }
+
+    /**
+     * Function to add a fully valid batch to productList, only called once every line of the batch is valid
+     * @param productsToBeAdded records which are not present in productList yet
+     * @param rowsParsed number of valid rows of the batch including duplicates
+     * @param started value of metrics.startTimer when load started
+     * @return total number of products introduced till now
+     */
+    private int commit(Collection<Product> productsToBeAdded, long rowsParsed, long started) {
+        return commit(List.of(productsToBeAdded), rowsParsed, started);
+    }
+
+    /**
+     * Function to add a fully valid batch parsed in chunks, see commit
+     * @param chunks records of every chunk in file order, a record also present in an earlier chunk is left out
+     * @param rowsParsed
+     * @param started
+     * @return total number of products introduced till now
+     */
+    private int commit(List<? extends Collection<Product>> chunks, long rowsParsed, long started) {
+        //maintaining number of product count for CostOfLiving object, only once whole batch is valid
+        int added = addToProductList(chunks);
+        productCount += added;
+
+        metrics.batchLoaded(rowsParsed, added, started);
+        metrics.setIndexSize(productList.size(), sizeCount, productCount);
+        updateMonthlyPriceTableSize();
+        return productCount;
+    }
+
+    /**
+     * @param product
+     * @return true if the same record is already present in productList
+     */
+    private boolean isInProductList(Product product) {
+        // Get the product map for the current product name
+        Map<Float, PriceSeries> sizemap = productList.get(product.getName());
+
+        //checking if map already contains the same product
+        if(sizemap == null) return false;
+
+        PriceSeries products = sizemap.get(product.getSizeInBaseUnit());
+        return products != null && products.contains(product);
+    }
+
+    /**
+     * Function to add new records into their date ordered series, every series is sorted once per batch
+     * @param chunks records which are not present in productList yet, distinct within a chunk, in file order
+     * @return number of records added, a record already added from an earlier chunk is not added again
+     */
+    private int addToProductList(List<? extends Collection<Product>> chunks) {
+        Map<PriceSeries, Collection<Product>> recordsPerSeries = new HashMap<>();
+        Set<String> namesWithNewRecords = new HashSet<>();
+
+        //duplicates across chunks can only be in the same series, so records of a series are kept in a set to find them
+        boolean singleChunk = chunks.size() == 1;
+        int added = 0;
+
+        //maps, lists and series shared with an older version are copied before changing them, see copyForUpdate
+        for(Collection<Product> chunk: chunks) {
+            for(Product product: chunk) {
+                Map<Float, PriceSeries> sizes = productList.compute(product.getName().toLowerCase(), (k, current) -> current == null ? owned(new HashMap<>()) : forUpdate(current, HashMap::new));
+                PriceSeries series = sizes.compute(product.getSizeInBaseUnit(), (k, current) -> current == null ? newSeries() : forUpdate(current, PriceSeries::new));
+                if(!recordsPerSeries.computeIfAbsent(series, k -> singleChunk ? new ArrayList<>() : new LinkedHashSet<>()).add(product)) continue;
+
+                added++;
+                namesWithNewRecords.add(product.getName().toLowerCase());
+
+                addToSizesByMonth(product);
+            }
+        }
+
+        recordsPerSeries.forEach(PriceSeries::addAll);
+
+        //rows of changed series are rebuilt from the month of their earliest new record on
+        if(monthlyPriceTable != null) {
+            recordsPerSeries.forEach((series, records) -> monthlyPriceTable.update(series,
+                    records.stream().map(Product::getDate).min(Comparator.naturalOrder()).orElse(null)));
+        }
+
+        //cached costs of carts with any of these products are not valid anymore
+        cartCostCache.invalidate(namesWithNewRecords);
+        return added;
+    }
+
+    //function to note size of given record in its month, maps shared with an older version are only copied for a new size
+    private void addToSizesByMonth(Product product) {
+        String name = product.getName().toLowerCase();
+        YearMonth month = YearMonth.from(product.getDate());
+        float size = product.getSizeInBaseUnit();
+
+        Map<YearMonth, float[]> months = sizesByMonth.get(name);
+        float[] sizes = months == null ? null : months.get(month);
+        if(sizes != null) {
+            for(float sizeInMonth: sizes) {
+                if(Float.compare(sizeInMonth, size) == 0) return;
+            }
+        }
+
+        //a month has a few sizes, so the array is copied with the new one instead of being grown in place
+        float[] withSize = sizes == null ? new float[1] : Arrays.copyOf(sizes, sizes.length + 1);
+        withSize[withSize.length - 1] = size;
+        months = sizesByMonth.compute(name, (k, current) -> current == null ? owned(new HashMap<>()) : forUpdate(current, HashMap::new));
+        months.put(month, withSize);
+    }
+
+    //function to create series for a size seen for the first time
+    private PriceSeries newSeries() {
+        sizeCount++;
+        return owned(new PriceSeries());
+    }
+
+    /**
+     * Function to turn on the table of prices on the 1st of every month, see MonthlyPriceTable
+     * rows of every series are built right away and kept up to date by every load after it, records of an opened
+     * snapshot are read for it, calling it again rebuilds all rows with the new budget
+     * @param maxBytes most memory rows may use together, series beyond it keep using binary search
+     * @return number of series with a row, -1 in case of invalid input
+     */
+    public int enableMonthlyPriceTable( long maxBytes ) {
+        if(maxBytes < 0) return -1;
+
+        disableMonthlyPriceTable();
+        monthlyPriceTable = new MonthlyPriceTable(maxBytes);
+
+        //rows are derived from records only, so series shared with an older version get the same row either way
+        for(Map<Float, PriceSeries> sizes: productList.values()) {
+            for(PriceSeries series: sizes.values()) {
+                monthlyPriceTable.update(series, null);
+            }
+        }
+        updateMonthlyPriceTableSize();
+        return (int) monthlyPriceTable.getRows();
+    }
+
+    //function to turn off the table of prices on the 1st of every month, memory of its rows is released
+    public void disableMonthlyPriceTable() {
+        if(monthlyPriceTable == null) return;
+
+        for(Map<Float, PriceSeries> sizes: productList.values()) {
+            for(PriceSeries series: sizes.values()) {
+                monthlyPriceTable.remove(series);
+            }
+        }
+        monthlyPriceTable = null;
+        updateMonthlyPriceTableSize();
+    }
+
+    //getter for table of prices on the 1st of every month along with its memory, null if it is turned off
+    public MonthlyPriceTable getMonthlyPriceTable() {
+        return monthlyPriceTable;
+    }
+
+    private void updateMonthlyPriceTableSize() {
+        if(monthlyPriceTable == null) {
+            metrics.setMonthlyPriceTableSize(0, 0);
+        } else {
+            metrics.setMonthlyPriceTableSize(monthlyPriceTable.getRows(), monthlyPriceTable.getBytes());
+        }
+    }
+
     /**
      * Function to create and load cart with products and return created cartId
      * @param cartStream
@@ -104,71 +443,295 @@ public class CostOfLiving {
         //handle in case of NULL
         if(cartStream == null) return -1;
 
-        String line;
-        Set<Product> cartItems = new HashSet<>();
-
         try{
-            //looping over each line in cart stream
-            while((line = cartStream.readLine()) != null) {
+            Set<Product> cartItems = readCartItems(cartStream);
 
-                if(line.isBlank()) continue;
+            if(cartItems == null) return -1;
+
+            String[] names = new String[cartItems.size()];
+            ProductSize[] sizes = new ProductSize[cartItems.size()];
+            int itemCount = 0;
+            for(Product item: cartItems) {
+                names[itemCount] = item.getName();
+                sizes[itemCount++] = item.getSize();
+            }
+
+            //cartId is the next free position in cart store
+            return carts.add(names, sizes, itemCount);
+
+        } catch(Exception e) {
+            //return -1 as output in case of error or invalid input
+            return -1;
+        }
+    }
+
+    /**
+     * Function to load many carts from one stream, carts are separated by one or more blank lines
+     * and every line of a cart is name and size separated by tab same as loadShoppingCart
+     * @param cartStream
+     * @return cartId of every cart in the order they appear in the stream, -1 for a cart with invalid line or same item repeated, null in case of error reading stream
+     */
+    public int[] loadShoppingCarts( BufferedReader cartStream ) {
+
+        if(cartStream == null) return null;
+
+        try {
+            int[] cartIds = new int[16];
+            int cartCount = 0;
+
+            //items of the cart being read, reused for every cart
+            String[] names = new String[16];
+            ProductSize[] sizes = new ProductSize[16];
+            float[] sizesInBaseUnit = new float[16];
+            int itemCount = 0;
+            boolean valid = true;
+
+            String line;
+            do {
+                line = cartStream.readLine();
+
+                //end of a cart
+                if(line == null || line.isBlank()) {
+                    if(itemCount > 0 || !valid) {
+                        if(cartCount == cartIds.length) cartIds = Arrays.copyOf(cartIds, cartCount * 2);
+                        cartIds[cartCount++] = valid ? carts.add(names, sizes, itemCount) : -1;
+                    }
+                    itemCount = 0;
+                    valid = true;
+                    continue;
+                }
+
+                //rest of an invalid cart is skipped
+                if(!valid) continue;
 
                 String[] productDetails = line.split("\t");
 
-                //handling the case for less or more fields than required
-                if(productDetails.length != TOTAL_FIELDS_IN_CART_LINE) {
-                    return -1;
+                //same checks as creating Product object from name and size
+                if(productDetails.length != TOTAL_FIELDS_IN_CART_LINE || productDetails[0].isBlank() || productDetails[1].isBlank()) {
+                    valid = false;
+                    continue;
                 }
 
-                String name = productDetails[0];
-                String size = productDetails[1];
+                //same size text is parsed only once, see ProductSize.of
+                ProductSize size;
+                try {
+                    size = ProductSize.of(productDetails[1]);
+                } catch(Exception e) {
+                    valid = false;
+                    continue;
+                }
+                float sizeInBaseUnit = size.toBaseUnit();
+
+                //same item repeated in a cart makes the cart invalid, carts are small so a scan is enough
+                for(int i = 0; i < itemCount && valid; i++) {
+                    if(Float.compare(sizesInBaseUnit[i], sizeInBaseUnit) == 0 && names[i].equals(productDetails[0])) valid = false;
+                }
+                if(!valid) continue;
+
+                if(itemCount == names.length) {
+                    names = Arrays.copyOf(names, itemCount * 2);
+                    sizes = Arrays.copyOf(sizes, itemCount * 2);
+                    sizesInBaseUnit = Arrays.copyOf(sizesInBaseUnit, itemCount * 2);
+                }
+                names[itemCount] = productDetails[0];
+                sizes[itemCount] = size;
+                sizesInBaseUnit[itemCount++] = sizeInBaseUnit;
+            } while(line != null);
+
+            return Arrays.copyOf(cartIds, cartCount);
+        } catch(Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Function to get a loaded cart along with its items
+     * @param cartId
+     * @return cart object, null if there is no cart with given id
+     */
+    public Cart getCart( int cartId ) {
+        return carts.getCart(cartId);
+    }
+
+    /**
+     * Function to read items of one cart, one name and size separated by tab per line
+     * @param cartStream
+     * @return items of the cart in input order, null in case of invalid line or same item repeated
+     * @throws Exception
+     */
+    static Set<Product> readCartItems( BufferedReader cartStream ) throws Exception {
+        String line;
+        Set<Product> cartItems = new LinkedHashSet<>();
+
+        //looping over each line in cart stream
+        while((line = cartStream.readLine()) != null) {
 
-                //creating product Object
-                Product product = new Product(name, size);
+            if(line.isBlank()) continue;
 
-                if(cartItems.contains(product)) return -1;
+            String[] productDetails = line.split("\t");
 
-                cartItems.add(product);
+            //handling the case for less or more fields than required
+            if(productDetails.length != TOTAL_FIELDS_IN_CART_LINE) {
+                return null;
             }
 
-            //generating random Integer value for cartId
-            int cartId = Math.abs(new Random().nextInt());
-            Cart cart = new Cart(cartId, cartItems);
+            String name = productDetails[0];
+            String size = productDetails[1];
 
-            //put created cart along with its product in cartMap
-            cartMap.put(cartId, cart);
+            //creating product Object
+            Product product = new Product(name, size);
 
-            return cartId;
+            if(cartItems.contains(product)) return null;
 
-        } catch(Exception e) {
-            //return -1 as output in case of error or invalid input
-            return -1;
+            cartItems.add(product);
         }
+        return cartItems;
     }
 
     /**
      * Function will return cost of given cartId on the first date of the given month and year
+     * cost is cached until history of any product in the cart gets new records, see CartCostCache
      * @param cartNumber
      * @param year
      * @param month
      * @return the most efficient cost of cart on 1st date of given month and year
      */
     public float shoppingCartCost( int cartNumber, int year, int month ) {
+        long started = metrics.startTimer();
+        float cost = cachedShoppingCartCost(cartNumber, year, month);
+        metrics.stopTimer(CostOfLivingMetrics.Query.SHOPPING_CART_COST, started);
+        return cost;
+    }
+
+    //cost of cart from cache, calculated and cached if it is not there
+    private float cachedShoppingCartCost( int cartNumber, int year, int month ) {
+        //only valid cart and month are cached, anything else is not worth remembering
+        if(!carts.contains(cartNumber) || year < 0 || month < 1 || month > 12) return calculateShoppingCartCost(cartNumber, year, month);
+
+        Float cachedCost = cartCostCache.get(cartNumber, year, month);
+        if(cachedCost != null) return cachedCost;
+
+        float cost = calculateShoppingCartCost(cartNumber, year, month);
+        cartCostCache.put(cartNumber, year, month, cost, carts.itemNames(cartNumber));
+        return cost;
+    }
+
+    /**
+     * Function to price many carts at once, i.e. repricing every cart as of the 1st of a month
+     * requests are grouped by month and every product is looked up once per month, not once per cart, so the work
+     * grows with number of different products and items rather than with number of carts
+     * cached costs are used and new costs are cached the same as shoppingCartCost
+     * @param cartNumbers cartId of every request
+     * @param years year of every request
+     * @param months month of every request
+     * @return cost of every request at its index same as shoppingCartCost would return, null if arrays are missing or of different length
+     */
+    public float[] shoppingCartCosts( int[] cartNumbers, int[] years, int[] months ) {
+        if(cartNumbers == null || years == null || months == null || cartNumbers.length != years.length || cartNumbers.length != months.length) return null;
+
+        long started = metrics.startTimer();
+        float[] costs = new float[cartNumbers.length];
+
+        //indexes of requests not answered from cache, priced together afterwards
+        int[] requests = new int[cartNumbers.length];
+        int requestCount = 0;
+
+        for(int i = 0; i < cartNumbers.length; i++) {
+            int cartNumber = cartNumbers[i];
+            if(!carts.contains(cartNumber) || years[i] < 0 || months[i] < 1 || months[i] > 12) {
+                costs[i] = -1f;
+                continue;
+            }
+
+            Float cachedCost = cartCostCache.get(cartNumber, years[i], months[i]);
+            if(cachedCost != null) {
+                costs[i] = cachedCost;
+            } else {
+                requests[requestCount++] = i;
+            }
+        }
+
         try {
-            // get the cart from cartId
-            Cart cart = (Cart) cartMap.get(cartNumber);
+            new CartBatchPricer(productList, carts, monthlyPriceTable).price(cartNumbers, years, months, requests, requestCount, costs);
+        } catch (Exception e) {
+            //same as shoppingCartCost, a cart which can not be priced costs -1
+            for(int i = 0; i < requestCount; i++) {
+                costs[requests[i]] = -1f;
+            }
+            requestCount = 0;
+        }
+
+        for(int i = 0; i < requestCount; i++) {
+            int request = requests[i];
+            cartCostCache.put(cartNumbers[request], years[request], months[request], costs[request], carts.itemNames(cartNumbers[request]));
+        }
+
+        metrics.stopTimer(CostOfLivingMetrics.Query.SHOPPING_CART_COSTS, started);
+        return costs;
+    }
+
+    //getter for cache of cart costs along with its hit, miss and eviction counters
+    public CartCostCache getCartCostCache() {
+        return cartCostCache;
+    }
+
+    //getter for counters and latencies of loads and queries, see CostOfLivingMetrics.register to expose them over JMX
+    public CostOfLivingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Function to save product index and carts into a binary snapshot, see CostOfLivingSnapshot
+     * @param snapshotFile replaced if it exists
+     * @return total number of products saved, -1 if snapshot could not be written
+     */
+    public int saveSnapshot( Path snapshotFile ) {
+        if(snapshotFile == null) return -1;
 
+        try {
+            CostOfLivingSnapshot.save(this, snapshotFile);
+            return productCount;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Function to open a snapshot written by saveSnapshot, records are only read once a query or load needs them
+     * @param snapshotFile
+     * @return object answering every query the same as the saved one, null if file is not a valid snapshot
+     */
+    public static CostOfLiving openSnapshot( Path snapshotFile ) {
+        if(snapshotFile == null) return null;
+
+        try {
+            return CostOfLivingSnapshot.open(snapshotFile);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Function calculating cost of cart from productList without looking into cache
+     * @param cartNumber
+     * @param year
+     * @param month
+     * @return the most efficient cost of cart on 1st date of given month and year
+     */
+    private float calculateShoppingCartCost( int cartNumber, int year, int month ) {
+        try {
             //handling boundary cases
-            if(cart == null || year< 0) return -1f;
+            if(!carts.contains(cartNumber) || year< 0) return -1f;
 
             float totalCartCost = 0;
             LocalDate lastDate = LocalDate.of(year, month, 1);
+            int monthOrdinal = MonthlyPriceTable.monthOrdinal(year, month);
 
-            //looping over every product in cart
-            for(Product item: cart.getCartItems()) {
+            //looping over every item in cart, straight from cart store arrays
+            for(int item = carts.firstItem(cartNumber), end = carts.endItem(cartNumber); item < end; item++) {
 
                 //get different size for current looping product
-                Map<Float, Set<Product>> filteredProductWithDifferentSize = productList.get(item.getName());
+                Map<Float, PriceSeries> filteredProductWithDifferentSize = productList.get(carts.itemName(item));
 
                 //It will store most efficient one
                 float costOfItem = Float.MAX_VALUE;
@@ -176,22 +739,30 @@ public class CostOfLiving {
                 if(filteredProductWithDifferentSize == null) return -1f;
 
                 //looping over different sizes to see which is most cost-efficient
-                for(Float size: filteredProductWithDifferentSize.keySet()) {
-
-                    //get the closest product available near given date
-                    Optional<Product> closestProductForGivenDate = filteredProductWithDifferentSize.get(size).stream()
-                            .filter(product -> product.getDate().isBefore(lastDate) || product.getDate().isEqual(lastDate))
-                            .reduce((product1, product2) -> product1.getDate().isAfter(product2.getDate()) ? product1 : product2 );
+                for(PriceSeries series: filteredProductWithDifferentSize.values()) {
+                    float cost;
+                    float sizeInBaseUnit;
+
+                    //price on 1st of the month is an array read when series has a row, otherwise a binary search
+                    MonthlyPriceTable.Row monthlyPrices = monthlyPriceTable == null ? null : series.getMonthlyPrices();
+                    if(monthlyPrices != null) {
+                        cost = monthlyPrices.costOnFirstOfMonth(monthOrdinal);
+                        sizeInBaseUnit = monthlyPrices.getSizeInBaseUnit();
+                    } else {
+                        //get the closest product available near given date with binary search over date ordered series
+                        Product product = series.latestOnOrBefore(lastDate);
+                        cost = product == null ? -1f : product.getCost();
+                        sizeInBaseUnit = product == null ? 0 : product.getSizeInBaseUnit();
+                    }
 
                     //if it exists calculate how much it cost and how much quantity
-                    if(closestProductForGivenDate.isPresent() && closestProductForGivenDate.get().getCost() > 0) {
-                        Product product = closestProductForGivenDate.get();
+                    if(cost > 0) {
 
                         //covert required size to base unit divide by available size in base unit
-                        int requiredQuantity = (int) Math.ceil(item.getSizeInBaseUnit()/product.getSizeInBaseUnit());
+                        int requiredQuantity = (int) Math.ceil(carts.itemSizeInBaseUnit(item)/sizeInBaseUnit);
 
                         //taking minimum from all available sizes
-                        costOfItem = (float) Math.min(costOfItem, requiredQuantity*product.getCost());
+                        costOfItem = Math.min(costOfItem, requiredQuantity*cost);
                     }
                 }
 
@@ -210,6 +781,97 @@ public class CostOfLiving {
 
     }
 
+    /**
+     * Function will return cost of given cartId on the first date of every month between given months, both included
+     * every size series of every item is walked once in date order carrying latest price forward month by month
+     * @param cartNumber
+     * @param startYear
+     * @param startMonth
+     * @param endYear
+     * @param endMonth
+     * @return Map with month as key in increasing order and cost of cart as value, -1 for months cart can not be bought, null in case of invalid input
+     */
+    public Map<YearMonth, Float> shoppingCartCostByMonth( int cartNumber, int startYear, int startMonth, int endYear, int endMonth ) {
+        long started = metrics.startTimer();
+        Map<YearMonth, Float> result = calculateShoppingCartCostByMonth(cartNumber, startYear, startMonth, endYear, endMonth);
+        metrics.stopTimer(CostOfLivingMetrics.Query.SHOPPING_CART_COST_BY_MONTH, started);
+        return result;
+    }
+
+    //cost of cart for every month calculated from productList, timed by shoppingCartCostByMonth
+    private Map<YearMonth, Float> calculateShoppingCartCostByMonth( int cartNumber, int startYear, int startMonth, int endYear, int endMonth ) {
+        try {
+            if(!carts.contains(cartNumber) || startYear < 0) return null;
+
+            YearMonth firstMonth = YearMonth.of(startYear, startMonth);
+            YearMonth lastMonth = YearMonth.of(endYear, endMonth);
+
+            if(firstMonth.isAfter(lastMonth)) return null;
+
+            int months = (int) firstMonth.until(lastMonth, ChronoUnit.MONTHS) + 1;
+            float[] totalCartCost = new float[months];
+
+            //first date of every month in the range
+            LocalDate[] firstDates = new LocalDate[months];
+            for(int month = 0; month < months; month++) {
+                firstDates[month] = firstMonth.plusMonths(month).atDay(1);
+            }
+
+            //looping over every product in cart, each one is priced for all months at once
+            for(int item = carts.firstItem(cartNumber), end = carts.endItem(cartNumber); item < end; item++) {
+                float requiredSizeInBaseUnit = carts.itemSizeInBaseUnit(item);
+                float[] costOfItem = new float[months];
+                Arrays.fill(costOfItem, Float.MAX_VALUE);
+
+                Map<Float, PriceSeries> filteredProductWithDifferentSize = productList.getOrDefault(carts.itemName(item), Collections.emptyMap());
+
+                for(PriceSeries series: filteredProductWithDifferentSize.values()) {
+                    //every month is an array read when series has a row
+                    MonthlyPriceTable.Row monthlyPrices = monthlyPriceTable == null ? null : series.getMonthlyPrices();
+                    if(monthlyPrices != null) {
+                        int firstMonthOrdinal = MonthlyPriceTable.monthOrdinal(startYear, startMonth);
+                        for(int month = 0; month < months; month++) {
+                            float cost = monthlyPrices.costOnFirstOfMonth(firstMonthOrdinal + month);
+                            if(cost > 0) {
+                                int requiredQuantity = (int) Math.ceil(requiredSizeInBaseUnit/monthlyPrices.getSizeInBaseUnit());
+                                costOfItem[month] = Math.min(costOfItem[month], requiredQuantity*cost);
+                            }
+                        }
+                        continue;
+                    }
+
+                    //latest record on or before first month, then moving forward as months go by
+                    int latest = series.floorIndex(firstDates[0]);
+
+                    for(int month = 0; month < months; month++) {
+                        while(latest + 1 < series.size() && !series.get(latest + 1).getDate().isAfter(firstDates[month])) latest++;
+
+                        Product product = latest < 0 ? null : series.get(latest);
+
+                        //same calculation as shoppingCartCost for a single month
+                        if(product != null && product.getCost() > 0) {
+                            int requiredQuantity = (int) Math.ceil(requiredSizeInBaseUnit/product.getSizeInBaseUnit());
+                            costOfItem[month] = Math.min(costOfItem[month], requiredQuantity*product.getCost());
+                        }
+                    }
+                }
+
+                //a month where any item is not available can not be priced at all
+                for(int month = 0; month < months; month++) {
+                    totalCartCost[month] = costOfItem[month] == Float.MAX_VALUE || totalCartCost[month] == -1f ? -1f : totalCartCost[month] + costOfItem[month];
+                }
+            }
+
+            Map<YearMonth, Float> cartCostByMonth = new LinkedHashMap<>();
+            for(int month = 0; month < months; month++) {
+                cartCostByMonth.put(YearMonth.from(firstDates[month]), totalCartCost[month] == Float.MAX_VALUE ? -1f : totalCartCost[month]);
+            }
+            return cartCostByMonth;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     /**
      *
      * @param startYear
@@ -219,6 +881,33 @@ public class CostOfLiving {
      * @return Map with key as productName and latest size separated by space and value as inflation or shrinkflation value
      */
     public Map<String, Float> inflation( int startYear, int startMonth, int endYear, int endMonth ) {
+        long started = metrics.startTimer();
+        Map<String, Float> result = calculateInflation(startYear, startMonth, endYear, endMonth, null);
+        metrics.stopTimer(CostOfLivingMetrics.Query.INFLATION, started);
+        return result;
+    }
+
+    /**
+     * Function to calculate inflation with every product evaluated as a task of its own on given pool
+     * parallelism of the pool limits number of threads used, result is the same as inflation
+     * @param startYear
+     * @param startMonth
+     * @param endYear
+     * @param endMonth
+     * @param pool
+     * @return Map with key as productName and latest size separated by space and value as inflation or shrinkflation value
+     */
+    public Map<String, Float> inflation( int startYear, int startMonth, int endYear, int endMonth, ForkJoinPool pool ) {
+        if(pool == null) return null;
+
+        long started = metrics.startTimer();
+        Map<String, Float> result = calculateInflation(startYear, startMonth, endYear, endMonth, pool);
+        metrics.stopTimer(CostOfLivingMetrics.Query.INFLATION, started);
+        return result;
+    }
+
+    //products exhibiting inflation or shrinkflation calculated from productList, on given pool unless it is null
+    private Map<String, Float> calculateInflation( int startYear, int startMonth, int endYear, int endMonth, ForkJoinPool pool ) {
         try{
             Map<String, Float> productExhibitingInflationOrShrinkflation = new HashMap<>();
 
@@ -227,38 +916,157 @@ public class CostOfLiving {
 
             if(startDate.isAfter(endDate)) return null;
 
-            //List to store products available between given time period to use in shrinkflation calculation if required
-            List<Product> productsBetweenGivenTime = new ArrayList<>();
-            PriceVariationCalculator inflationCalculator;
-            PriceVariationCalculator shrinkflationCalculator;
+            //pipeline keeps no state besides its calculators, so all tasks share it
+            PriceVariationPipeline pipeline = inflationPipeline();
 
-            for(String productName: productList.keySet()) {
-                Map<Float, Set<Product>> productWithSpecificSize = productList.get(productName);
+            if(pool == null) {
+                for(String productName: productList.keySet()) {
+                    addInflationOfProduct(productName, pipeline, startDate, endDate, productExhibitingInflationOrShrinkflation);
+                }
+                return productExhibitingInflationOrShrinkflation;
+            }
 
-                //looping over different sizes of same product
-                for(Float size: productWithSpecificSize.keySet()) {
+            //every task writes into a map of its own, maps are merged in the order the loop above adds them
+            String[] productNames = productList.keySet().toArray(new String[0]);
+            List<Map<String, Float>> inflationOfProducts = forEachProduct(pool, productNames, productName -> {
+                Map<String, Float> inflationOfProduct = new HashMap<>();
+                addInflationOfProduct(productName, pipeline, startDate, endDate, inflationOfProduct);
+                return inflationOfProduct;
+            });
 
-                    //querying product between start time and end time , including start and last date
-                    List<Product> productsBeforeStartDate = productWithSpecificSize.get(size).stream().filter(product -> product.isProductIntroducedInBetweenGivenDates(startDate, endDate)).toList();
-                    productsBetweenGivenTime.addAll(productsBeforeStartDate);
-                }
+            inflationOfProducts.forEach(productExhibitingInflationOrShrinkflation::putAll);
+            return productExhibitingInflationOrShrinkflation;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Function to create the pipeline inflation is calculated with, inflation comes first and shrinkflation second
+     * so shrinkflation of a size replaces its inflation, indexes of calculators are the ordinals of InflationRecord.Kind
+     * shrinkflation looks up replacement sizes in sizesByMonth instead of needing every record of the time period
+     * @return pipeline with inflation and shrinkflation calculators registered
+     */
+    private PriceVariationPipeline inflationPipeline() {
+        return new PriceVariationPipeline(sizesByMonth)
+                .register(new Inflation())
+                .register(new Shrinkflation(sizesByMonth));
+    }
+
+    //function to add inflation and shrinkflation of all sizes of one product into given map
+    private void addInflationOfProduct( String productName, PriceVariationPipeline pipeline,
+                                        LocalDate startDate, LocalDate endDate, Map<String, Float> productExhibitingInflationOrShrinkflation ) {
+        //getting map of individual product
+        Map<Float, PriceSeries> filteredProductWithDifferentSize = productList.get(productName);
+
+        //every size is summarized once for both calculators, later entries of a size replace earlier ones
+        pipeline.calculatePriceIncrease(filteredProductWithDifferentSize, startDate, endDate, (calculator, product, priceIncrease) ->
+                productExhibitingInflationOrShrinkflation.put(product.getName() + " " + product.getOriginalSize(), priceIncrease));
+    }
+
+    /**
+     * Function to hand over every product size exhibiting inflation or shrinkflation as a record, no map or key is built
+     * same entries as inflation, records of one product are handed over one after another in productList order
+     * @param startYear
+     * @param startMonth
+     * @param endYear
+     * @param endMonth
+     * @param consumer
+     * @return number of records handed over, -1 in case of invalid input
+     */
+    public int inflationRecords( int startYear, int startMonth, int endYear, int endMonth, Consumer<InflationRecord> consumer ) {
+        if(consumer == null) return -1;
+
+        long started = metrics.startTimer();
+        int result = calculateInflationRecords(startYear, startMonth, endYear, endMonth, consumer);
+        metrics.stopTimer(CostOfLivingMetrics.Query.INFLATION, started);
+        return result;
+    }
 
+    /**
+     * Function to find product sizes with the largest inflation or shrinkflation, only that many records are ever kept
+     * @param startYear
+     * @param startMonth
+     * @param endYear
+     * @param endMonth
+     * @param top number of records wanted
+     * @return at most top records ordered by InflationRecord.LARGEST_FIRST, null in case of invalid input
+     */
+    public List<InflationRecord> topInflation( int startYear, int startMonth, int endYear, int endMonth, int top ) {
+        if(top < 0) return null;
+        if(top == 0) return isValidRange(startYear, startMonth, endYear, endMonth) ? new ArrayList<>() : null;
+
+        long started = metrics.startTimer();
+
+        //head of the heap is the smallest record kept, it makes room whenever a larger one shows up
+        //top comes from callers such as the server, the heap only grows that large if there are that many records
+        PriorityQueue<InflationRecord> largest = new PriorityQueue<>(Math.min(top, MAX_INITIAL_TOP_CAPACITY) + 1, InflationRecord.LARGEST_FIRST.reversed());
+        int result = calculateInflationRecords(startYear, startMonth, endYear, endMonth, record -> {
+            if(largest.size() < top) {
+                largest.add(record);
+            } else if(InflationRecord.LARGEST_FIRST.compare(record, largest.peek()) < 0) {
+                largest.poll();
+                largest.add(record);
             }
+        });
+        metrics.stopTimer(CostOfLivingMetrics.Query.INFLATION, started);
+
+        if(result == -1) return null;
+
+        List<InflationRecord> topRecords = new ArrayList<>(largest);
+        topRecords.sort(InflationRecord.LARGEST_FIRST);
+        return topRecords;
+    }
+
+    //true if both months exist and start is not after end, same check as calculateInflationRecords
+    private static boolean isValidRange( int startYear, int startMonth, int endYear, int endMonth ) {
+        try{
+            return !LocalDate.of(startYear, startMonth, 1).isAfter(LocalDate.of(endYear, endMonth, 1));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    //records of products exhibiting inflation or shrinkflation calculated from productList, timed by its callers
+    private int calculateInflationRecords( int startYear, int startMonth, int endYear, int endMonth, Consumer<InflationRecord> consumer ) {
+        try{
+            LocalDate startDate = LocalDate.of(startYear, startMonth, 1);
+            LocalDate endDate = LocalDate.of(endYear, endMonth, 1);
+
+            if(startDate.isAfter(endDate)) return -1;
+
+            PriceVariationPipeline pipeline = inflationPipeline();
+            InflationRecord.Kind[] kindOfCalculator = InflationRecord.Kind.values();
 
-            inflationCalculator = new Inflation();
-            shrinkflationCalculator = new Shrinkflation(productsBetweenGivenTime);
+            //records of the product being evaluated, a product has a few sizes so replacing by scanning is enough
+            List<InflationRecord> recordsOfProduct = new ArrayList<>();
+            int records = 0;
 
-            for(String productName: productList.keySet()) {
-                //getting map of individual product
-                Map<Float, Set<Product>> filteredProductWithDifferentSize = productList.get(productName);
+            for(Map<Float, PriceSeries> productWithDifferentSize: productList.values()) {
+                recordsOfProduct.clear();
 
-                productExhibitingInflationOrShrinkflation.putAll(inflationCalculator.calculatePriceIncrease(filteredProductWithDifferentSize, startDate, endDate));
-                productExhibitingInflationOrShrinkflation.putAll(shrinkflationCalculator.calculatePriceIncrease(filteredProductWithDifferentSize, startDate, endDate));
+                //shrinkflation comes second and replaces inflation of the same size, same as putting both into one map
+                pipeline.calculatePriceIncrease(productWithDifferentSize, startDate, endDate, (calculator, product, priceIncrease) ->
+                        addRecord(recordsOfProduct, new InflationRecord(product, kindOfCalculator[calculator], priceIncrease)));
+
+                recordsOfProduct.forEach(consumer);
+                records += recordsOfProduct.size();
             }
-            return productExhibitingInflationOrShrinkflation;
+            return records;
         } catch (Exception e) {
-            return null;
+            return -1;
+        }
+    }
+
+    //function to add a record to records of one product, replacing the one with the same key
+    private static void addRecord( List<InflationRecord> recordsOfProduct, InflationRecord record ) {
+        for(int i = 0; i < recordsOfProduct.size(); i++) {
+            if(recordsOfProduct.get(i).hasSameKey(record)) {
+                recordsOfProduct.set(i, record);
+                return;
+            }
         }
+        recordsOfProduct.add(record);
     }
 
     /**
@@ -269,6 +1077,32 @@ public class CostOfLiving {
      * @return List of string which will be product name separated by larger size + " " + smaller size which has gone price inversion
      */
     public List<String> priceInversion( int year, int month, int tolerance ) {
+        long started = metrics.startTimer();
+        List<String> result = calculatePriceInversion(year, month, tolerance, null);
+        metrics.stopTimer(CostOfLivingMetrics.Query.PRICE_INVERSION, started);
+        return result;
+    }
+
+    /**
+     * Function to find price inversions with every product evaluated as a task of its own on given pool
+     * parallelism of the pool limits number of threads used, result is the same as priceInversion, in the same order
+     * @param year
+     * @param month
+     * @param tolerance
+     * @param pool
+     * @return List of string which will be product name separated by larger size + " " + smaller size which has gone price inversion
+     */
+    public List<String> priceInversion( int year, int month, int tolerance, ForkJoinPool pool ) {
+        if(pool == null) return null;
+
+        long started = metrics.startTimer();
+        List<String> result = calculatePriceInversion(year, month, tolerance, pool);
+        metrics.stopTimer(CostOfLivingMetrics.Query.PRICE_INVERSION, started);
+        return result;
+    }
+
+    //products going through price inversion calculated from productList, on given pool unless it is null
+    private List<String> calculatePriceInversion( int year, int month, int tolerance, ForkJoinPool pool ) {
         try{
             if(year < 0 || tolerance >= 100 || tolerance < 0) return null;
 
@@ -276,59 +1110,110 @@ public class CostOfLiving {
             LocalDate startDate = LocalDate.of(year, month, 1);
             List<String> productsUnderGoingPriceInversion = new ArrayList<>();
 
-            //looping through all products in product history
-            for(String productName: productList.keySet()) {
+            if(pool == null) {
+                //finder is reused for every product
+                PriceInversionFinder inversionFinder = new PriceInversionFinder();
 
-                //getting different size of products
-                Map<Float, Set<Product>> productWithSpecificSize = productList.get(productName);
-                List<Product> productBeforeStartDateWithSpecificSize = new ArrayList<>();
+                //looping through all products in product history
+                for(String productName: productList.keySet()) {
+                    addPriceInversionOfProduct(productName, startDate, tolerance, inversionFinder, productsUnderGoingPriceInversion);
+                }
+                return productsUnderGoingPriceInversion;
+            }
 
-                //looping through all products and pushing filtered product in separate List for later use
-                for(Float size: productWithSpecificSize.keySet()) {
+            //finder is not thread safe so every task has its own, lists are joined in product order same as the loop above
+            String[] productNames = productList.keySet().toArray(new String[0]);
+            List<List<String>> inversionOfProducts = forEachProduct(pool, productNames, productName -> {
+                List<String> inversionOfProduct = new ArrayList<>();
+                addPriceInversionOfProduct(productName, startDate, tolerance, new PriceInversionFinder(), inversionOfProduct);
+                return inversionOfProduct;
+            });
 
-                    //filtering products with non-zero cost and between given time period
-                    List<Product> productsBeforeStartDate = productWithSpecificSize.get(size).stream().
-                                    filter(product -> product.getCost() !=0 &&
-                                    product.isProductIntroducedBeforeOrEqualGiveDate(startDate)).toList();
+            inversionOfProducts.forEach(productsUnderGoingPriceInversion::addAll);
+            return productsUnderGoingPriceInversion;
+        } catch(Exception e) {
+            return null;
+        }
+    }
 
-                    //appending into the List
-                    productBeforeStartDateWithSpecificSize.addAll(productsBeforeStartDate);
+    //function to add price inversions between sizes of one product into given list
+    private void addPriceInversionOfProduct( String productName, LocalDate startDate, int tolerance, PriceInversionFinder inversionFinder, List<String> productsUnderGoingPriceInversion ) {
+        //getting different size of products
+        Map<Float, PriceSeries> productWithSpecificSize = productList.get(productName);
+        List<Product> productBeforeStartDateWithSpecificSize = new ArrayList<>();
+        inversionFinder.clear();
+
+        //looping through all sizes and adding records on or before given date with non-zero cost to the finder
+        for(PriceSeries series: productWithSpecificSize.values()) {
+            for(Product product: series.onOrBefore(startDate)) {
+                if(product.getCost() != 0) {
+                    //index given by finder is the position of product in the list
+                    inversionFinder.add(product.getSizeInBaseUnit(), product.getCost());
+                    productBeforeStartDateWithSpecificSize.add(product);
                 }
+            }
+        }
 
-                //looping through all filtered products
-                for(Product product1: productBeforeStartDateWithSpecificSize) {
-
-                    //nested loop to compare one product with all other
-                    for(Product product2: productBeforeStartDateWithSpecificSize) {
-
-                        //make sure we don't compare with same product
-                        if(!product1.equals(product2)) {
+        //larger size having per unit cost higher than smaller one by more than tolerance
+        inversionFinder.find(tolerance, (larger, smaller) -> productsUnderGoingPriceInversion.add(productName + "\t"
+                + productBeforeStartDateWithSpecificSize.get(larger).getOriginalSize() + "\t"
+                + productBeforeStartDateWithSpecificSize.get(smaller).getOriginalSize()));
+    }
 
-                            //if product1 is larger then product2
-                            if(product1.getSizeInBaseUnit() > product2.getSizeInBaseUnit()) {
+    /**
+     * Function to evaluate products in tasks of productsPerTask(pool, ...) products each on given pool, see ProductTask
+     * @param pool
+     * @param productNames
+     * @param evaluation result of one product, called from many threads at once
+     * @return result of every product in the order of productNames
+     */
+    private static <R> List<R> forEachProduct( ForkJoinPool pool, String[] productNames, Function<String, R> evaluation ) {
+        List<R> results = new ArrayList<>(Collections.nCopies(productNames.length, null));
+        if(productNames.length > 0) {
+            pool.invoke(new ProductTask(productNames, 0, productNames.length, productsPerTask(pool, productNames.length),
+                    (productName, index) -> results.set(index, evaluation.apply(productName))));
+        }
+        return results;
+    }
 
-                                //calculating per unit cost for both the products
-                                double perUnitCostOfProduct1 = product1.getCost()/product1.getSizeInBaseUnit();
-                                double perUnitCostOfProduct2 = product2.getCost()/product2.getSizeInBaseUnit();
+    //products evaluated one after another by a single task, enough tasks per thread to even out products of different history lengths
+    private static int productsPerTask( ForkJoinPool pool, int products ) {
+        int tasks = pool.getParallelism() * TASKS_PER_THREAD;
+        return Math.max(MIN_PRODUCTS_PER_TASK, (products + tasks - 1) / tasks);
+    }
 
-                                //if larger product has per unit cost larger than smaller onw
-                                if( perUnitCostOfProduct1 > perUnitCostOfProduct2 ) {
-                                    double percentageDifference = (perUnitCostOfProduct1-perUnitCostOfProduct2)/perUnitCostOfProduct1*100;
+    /**
+     * Task evaluating products [from, to), halves itself until it is left with at most productsPerTask products
+     * every product writes into its own slot so tasks never contend, joining the halves makes all slots visible
+     */
+    @SuppressWarnings("serial")     //holds a lambda of the running query, it only exists while that query runs
+    private static class ProductTask extends RecursiveAction {
+        private final String[] productNames;
+        private final int from;
+        private final int to;
+        private final int productsPerTask;
+        private final ObjIntConsumer<String> evaluation;
+
+        ProductTask(String[] productNames, int from, int to, int productsPerTask, ObjIntConsumer<String> evaluation) {
+            this.productNames = productNames;
+            this.from = from;
+            this.to = to;
+            this.productsPerTask = productsPerTask;
+            this.evaluation = evaluation;
+        }
 
-                                    //if percentage difference is greater than tolerance add it to result
-                                    if(percentageDifference > tolerance) {
-                                        productsUnderGoingPriceInversion.add(productName + "\t" + product1.getOriginalSize() + "\t" + product2.getOriginalSize());
-                                    }
-                                }
-                            }
-                        }
-                    }
+        @Override
+        protected void compute() {
+            if(to - from <= productsPerTask) {
+                for(int i = from; i < to; i++) {
+                    evaluation.accept(productNames[i], i);
                 }
+                return;
             }
 
-            return productsUnderGoingPriceInversion;
-        } catch(Exception e) {
-            return null;
+            int mid = (from + to) >>> 1;
+            invokeAll(new ProductTask(productNames, from, mid, productsPerTask, evaluation),
+                    new ProductTask(productNames, mid, to, productsPerTask, evaluation));
         }
     }
 }
@@ -0,0 +1,303 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms of one CostOfLiving, exposed over JMX once registered
+ * i.e. rows parsed, deduplicated and rejected by loads, batches rejected per RejectReason, latency of queries
+ * and current size of the index. Recording is done with LongAdder and LatencyHistogram, so it never locks
+ * or allocates and is safe from any thread; versions of ConcurrentCostOfLiving all share one object.
+ */
+public class CostOfLivingMetrics implements CostOfLivingMetricsMXBean {
+
+    //queries with their latency recorded
+    public enum Query { SHOPPING_CART_COST, SHOPPING_CART_COST_BY_MONTH, INFLATION, PRICE_INVERSION, SHOPPING_CART_COSTS }
+
+    //domain of every registered ObjectName
+    public static final String JMX_DOMAIN = "inflationtracker";
+
+    private volatile boolean enabled = true;
+
+    private final LongAdder rowsParsed = new LongAdder();
+    private final LongAdder rowsDeduplicated = new LongAdder();
+    private final LongAdder rowsDiscarded = new LongAdder();
+    private final LongAdder rowsSkipped = new LongAdder();
+    private final LongAdder batchesLoaded = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private volatile double lastLoadRowsPerSecond;
+
+    //rejected batches per RejectReason ordinal, a batch is rejected because of one invalid row
+    private final LongAdder[] batchesRejected = new LongAdder[RejectReason.values().length];
+
+    //latency in nanoseconds per Query ordinal
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Query.values().length];
+
+    //size of the index, set after every successful load
+    private volatile long productNames;
+    private volatile long sizes;
+    private volatile long records;
+    private volatile long monthlyPriceTableRows;
+    private volatile long monthlyPriceTableBytes;
+
+    //number of carts is read from cart store whenever asked for
+    private final LongSupplier carts;
+
+    private ObjectName registeredName;
+
+    /**
+     * Constructor to create metrics with every counter at 0
+     * @param carts supplier of current number of carts
+     */
+    public CostOfLivingMetrics(LongSupplier carts) {
+        this.carts = carts;
+        for(int i = 0; i < batchesRejected.length; i++) {
+            batchesRejected[i] = new LongAdder();
+        }
+        for(int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Function to register these metrics with the platform MBean server
+     * @param name value of the name key of the ObjectName i.e. "prices" gives inflationtracker:type=CostOfLiving,name="prices"
+     * @return name metrics got registered under
+     */
+    public synchronized ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=CostOfLiving,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Metrics could not be registered as " + name, e);
+        }
+    }
+
+    //function to remove these metrics from the platform MBean server if they were registered
+    public synchronized void unregister() {
+        if(registeredName == null) return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            //already removed by someone else, nothing left to do
+        }
+        registeredName = null;
+    }
+
+    /**
+     * @return current time to be passed to stopTimer, 0 when metrics are disabled
+     */
+    public long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Function to record latency of a query
+     * @param query
+     * @param started value returned by startTimer
+     */
+    public void stopTimer(Query query, long started) {
+        if(started != 0) latencies[query.ordinal()].record(System.nanoTime() - started);
+    }
+
+    /**
+     * Function to record a successful load
+     * @param parsed valid rows of the batch
+     * @param added rows which were new, the rest were duplicates
+     * @param started value returned by startTimer
+     */
+    public void batchLoaded(long parsed, long added, long started) {
+        batchesLoaded.increment();
+        rowsParsed.add(parsed);
+        rowsDeduplicated.add(parsed - added);
+
+        if(started != 0) {
+            long nanos = Math.max(1, System.nanoTime() - started);
+            loadNanos.add(nanos);
+            lastLoadRowsPerSecond = parsed * 1e9 / nanos;
+        }
+    }
+
+    /**
+     * Function to record a load rejected because of an invalid row, every row of the batch is discarded
+     * @param reason
+     * @param parsed valid rows parsed before the invalid one
+     * @param started value returned by startTimer
+     */
+    public void batchRejected(RejectReason reason, long parsed, long started) {
+        batchesRejected[reason.ordinal()].increment();
+        rowsParsed.add(parsed);
+        rowsDiscarded.add(parsed);
+        if(started != 0) loadNanos.add(System.nanoTime() - started);
+    }
+
+    /**
+     * Function to record invalid rows a lenient load skipped, rest of their batch was loaded
+     * @param rows
+     */
+    public void rowsSkipped(long rows) {
+        rowsSkipped.add(rows);
+    }
+
+    /**
+     * Function to set size of the index after a load
+     * @param productNames
+     * @param sizes number of different sizes of all products
+     * @param records
+     */
+    public void setIndexSize(long productNames, long sizes, long records) {
+        this.productNames = productNames;
+        this.sizes = sizes;
+        this.records = records;
+    }
+
+    /**
+     * Function to set size of the table of prices on the 1st of every month, see MonthlyPriceTable
+     * @param rows number of series with a row, 0 if table is turned off
+     * @param bytes estimated memory used by the rows
+     */
+    public void setMonthlyPriceTableSize(long rows, long bytes) {
+        this.monthlyPriceTableRows = rows;
+        this.monthlyPriceTableBytes = bytes;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //turning off timing of queries and loads, counters keep counting as they cost next to nothing
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getRowsParsed() {
+        return rowsParsed.sum();
+    }
+
+    @Override
+    public long getRowsDeduplicated() {
+        return rowsDeduplicated.sum();
+    }
+
+    //one invalid row per rejected batch and every row skipped by lenient loads
+    @Override
+    public long getRowsRejected() {
+        return getBatchesRejected() + getRowsSkipped();
+    }
+
+    //invalid rows of lenient loads, see CheckpointedHistoryIngest
+    @Override
+    public long getRowsSkipped() {
+        return rowsSkipped.sum();
+    }
+
+    //valid rows thrown away because another row of their batch was invalid
+    @Override
+    public long getRowsDiscarded() {
+        return rowsDiscarded.sum();
+    }
+
+    @Override
+    public long getBatchesLoaded() {
+        return batchesLoaded.sum();
+    }
+
+    @Override
+    public long getBatchesRejected() {
+        long total = 0;
+        for(LongAdder rejected: batchesRejected) {
+            total += rejected.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getBatchesRejectedByReason() {
+        Map<String, Long> rejectedByReason = new LinkedHashMap<>();
+        for(RejectReason reason: RejectReason.values()) {
+            rejectedByReason.put(reason.name(), batchesRejected[reason.ordinal()].sum());
+        }
+        return rejectedByReason;
+    }
+
+    //rows parsed per second of time spent loading, since start
+    @Override
+    public double getRowsParsedPerSecond() {
+        long nanos = loadNanos.sum();
+        return nanos == 0 ? 0 : getRowsParsed() * 1e9 / nanos;
+    }
+
+    @Override
+    public double getLastLoadRowsPerSecond() {
+        return lastLoadRowsPerSecond;
+    }
+
+    @Override
+    public long getProductNames() {
+        return productNames;
+    }
+
+    @Override
+    public long getSizes() {
+        return sizes;
+    }
+
+    @Override
+    public long getRecords() {
+        return records;
+    }
+
+    @Override
+    public long getMonthlyPriceTableRows() {
+        return monthlyPriceTableRows;
+    }
+
+    @Override
+    public long getMonthlyPriceTableBytes() {
+        return monthlyPriceTableBytes;
+    }
+
+    @Override
+    public long getCarts() {
+        return carts.getAsLong();
+    }
+
+    @Override
+    public LatencySummary getShoppingCartCostLatency() {
+        return new LatencySummary(latencies[Query.SHOPPING_CART_COST.ordinal()]);
+    }
+
+    @Override
+    public LatencySummary getShoppingCartCostByMonthLatency() {
+        return new LatencySummary(latencies[Query.SHOPPING_CART_COST_BY_MONTH.ordinal()]);
+    }
+
+    @Override
+    public LatencySummary getInflationLatency() {
+        return new LatencySummary(latencies[Query.INFLATION.ordinal()]);
+    }
+
+    @Override
+    public LatencySummary getPriceInversionLatency() {
+        return new LatencySummary(latencies[Query.PRICE_INVERSION.ordinal()]);
+    }
+
+    @Override
+    public LatencySummary getShoppingCartCostsLatency() {
+        return new LatencySummary(latencies[Query.SHOPPING_CART_COSTS.ordinal()]);
+    }
+
+    //getter for histogram of given query, i.e. to merge it with other histograms
+    public LatencyHistogram getLatency(Query query) {
+        return latencies[query.ordinal()];
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.Map;
+
+/**
+ * Management interface of CostOfLivingMetrics, every getter shows up as a read only attribute in JMX clients
+ */
+public interface CostOfLivingMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getRowsParsed();
+
+    long getRowsDeduplicated();
+
+    long getRowsRejected();
+
+    long getRowsSkipped();
+
+    long getRowsDiscarded();
+
+    long getBatchesLoaded();
+
+    long getBatchesRejected();
+
+    Map<String, Long> getBatchesRejectedByReason();
+
+    double getRowsParsedPerSecond();
+
+    double getLastLoadRowsPerSecond();
+
+    long getProductNames();
+
+    long getSizes();
+
+    long getRecords();
+
+    long getMonthlyPriceTableRows();
+
+    long getMonthlyPriceTableBytes();
+
+    long getCarts();
+
+    LatencySummary getShoppingCartCostLatency();
+
+    LatencySummary getShoppingCartCostByMonthLatency();
+
+    LatencySummary getInflationLatency();
+
+    LatencySummary getPriceInversionLatency();
+
+    LatencySummary getShoppingCartCostsLatency();
+}
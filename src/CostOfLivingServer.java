@@ -0,0 +1,432 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Year;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Long running HTTP server answering queries of a ConcurrentCostOfLiving, bound to localhost only and built on the
+ * HTTP server of the JDK, so other services call it instead of starting a JVM for every query.
+ * Every request is handled on a thread of its own, a virtual thread when the JVM has them (Java 21 and later),
+ * otherwise a thread of a bounded pool. With virtual threads history loads are handed to a few platform threads,
+ * see loadExecutor. Queries never wait for ingest as every load builds a new version next to the current one,
+ * but loads run one at a time, so at most maxPendingLoads loads are accepted at once and any further load is
+ * answered with 503 and Retry-After instead of piling up request bodies.
+ * Results are written as they are produced with chunked encoding, one tab separated line per entry.
+ *
+ * Endpoints, every response is text/plain UTF-8, 400 with a message for invalid input and 500 for anything else:
+ *   POST /history                                          body in loadProductHistory format, answers total number of products
+ *   POST /carts                                            body in loadShoppingCarts format, answers cartId of every cart per line
+ *   GET  /cart-cost?cart=&year=&month=                     answers cost of cart, -1 if it can not be bought
+ *   GET  /cart-cost?cart=&year=&month=&endYear=&endMonth=  answers "yyyy-mm	cost" for every month
+ *   GET  /inflation?startYear=&startMonth=&endYear=&endMonth=[&top=]  answers "name size	value	kind" for every record
+ *   GET  /price-inversion?year=&month=&tolerance=          answers one line of priceInversion per inversion
+ *
+ * usage: java CostOfLivingServer [name=value ...] i.e. java CostOfLivingServer port=8080 history=prices.tsv
+ *   port           port on localhost, 0 for any free port (default 8080)
+ *   history        product history file loaded before serving (default none)
+ *   threads        threads of the pool used without virtual threads (default 4 per processor, at least 16)
+ *   pendingLoads   loads accepted at the same time (default 2)
+ *   virtualThreads false to use the pool even when the JVM has virtual threads (default true)
+ */
+public class CostOfLivingServer implements AutoCloseable {
+
+    private static final String TEXT = "text/plain; charset=utf-8";
+
+    //seconds a client is told to wait before sending a load again
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    //connections waiting to be accepted
+    private static final int BACKLOG = 1024;
+
+    //small answers are sent right away instead of waiting for an acknowledgement of the previous write, which
+    //otherwise adds around 40 ms to every request on a kept alive connection, read when the first server is created
+    static {
+        if(System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ConcurrentCostOfLiving costOfLiving;
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final boolean virtualThreads;
+
+    //platform threads running history loads when requests run on virtual threads, null otherwise
+    //a virtual thread is never preempted, a load on it would keep its carrier busy and stall every query waiting for one
+    private final ExecutorService loadExecutor;
+
+    //one permit for every load accepted at the same time
+    private final Semaphore pendingLoads;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong loadsRejected = new AtomicLong();
+
+    /**
+     * Constructor to create a server on localhost handling requests on virtual threads when the JVM has them
+     * @param costOfLiving
+     * @param port 0 for any free port, see getPort
+     * @param threads threads of the pool used when the JVM has no virtual threads
+     * @param maxPendingLoads loads accepted at the same time, one is loaded and the others wait for it
+     * @throws IOException if port can not be bound
+     */
+    public CostOfLivingServer(ConcurrentCostOfLiving costOfLiving, int port, int threads, int maxPendingLoads) throws IOException {
+        this(costOfLiving, port, threads, maxPendingLoads, true);
+    }
+
+    /**
+     * Constructor to create a server on localhost, it starts answering once started
+     * @param costOfLiving
+     * @param port 0 for any free port, see getPort
+     * @param threads threads of the pool used without virtual threads
+     * @param maxPendingLoads loads accepted at the same time, one is loaded and the others wait for it
+     * @param useVirtualThreads false to use the pool even when the JVM has virtual threads, a virtual thread is never
+     *                          preempted so with few cores a long query delays the short ones behind it
+     * @throws IOException if port can not be bound
+     */
+    public CostOfLivingServer(ConcurrentCostOfLiving costOfLiving, int port, int threads, int maxPendingLoads, boolean useVirtualThreads) throws IOException {
+        if(costOfLiving == null || port < 0 || threads <= 0 || maxPendingLoads <= 0) throw new IllegalArgumentException("Invalid server settings");
+
+        this.costOfLiving = costOfLiving;
+        this.pendingLoads = new Semaphore(maxPendingLoads);
+
+        ExecutorService virtualThreadExecutor = useVirtualThreads ? newVirtualThreadExecutor() : null;
+        virtualThreads = virtualThreadExecutor != null;
+        requestExecutor = virtualThreads ? virtualThreadExecutor : Executors.newFixedThreadPool(threads, daemonThreads());
+        loadExecutor = virtualThreads ? Executors.newFixedThreadPool(maxPendingLoads, daemonThreads()) : null;
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.setExecutor(requestExecutor);
+        server.createContext("/history", exchange -> handle(exchange, "POST", this::loadHistory));
+        server.createContext("/carts", exchange -> handle(exchange, "POST", this::loadCarts));
+        server.createContext("/cart-cost", exchange -> handle(exchange, "GET", this::cartCost));
+        server.createContext("/inflation", exchange -> handle(exchange, "GET", this::inflation));
+        server.createContext("/price-inversion", exchange -> handle(exchange, "GET", this::priceInversion));
+    }
+
+    /**
+     * Function to create an executor starting a virtual thread for every task, looked up by reflection so the
+     * server still compiles and runs on JVMs without virtual threads
+     * @return executor, null if the JVM has no virtual threads
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    //thread factory of the fallback pool, request threads never keep the JVM alive
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger created = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "cost-of-living-server-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        for(String arg: args) {
+            String[] setting = arg.split("=", 2);
+            if(setting.length != 2) throw new IllegalArgumentException("Invalid setting " + arg + ", expected name=value");
+            settings.put(setting[0], setting[1]);
+        }
+
+        ConcurrentCostOfLiving costOfLiving = new ConcurrentCostOfLiving();
+        costOfLiving.getMetrics().register("CostOfLivingServer");
+
+        if(settings.containsKey("history") && costOfLiving.loadProductHistory(Path.of(settings.get("history"))) == -1) {
+            throw new IllegalArgumentException("Invalid history file " + settings.get("history"));
+        }
+
+        int threads = Integer.parseInt(settings.getOrDefault("threads", Integer.toString(Math.max(16, 4 * Runtime.getRuntime().availableProcessors()))));
+        int pendingLoads = Integer.parseInt(settings.getOrDefault("pendingLoads", "2"));
+        boolean virtualThreads = Boolean.parseBoolean(settings.getOrDefault("virtualThreads", "true"));
+        CostOfLivingServer server = new CostOfLivingServer(costOfLiving, Integer.parseInt(settings.getOrDefault("port", "8080")), threads, pendingLoads, virtualThreads);
+        server.start();
+        System.out.printf("serving %d products on http://localhost:%d/ with %s%n", costOfLiving.getProductCount(), server.getPort(),
+                server.isVirtualThreads() ? "virtual threads" : threads + " threads");
+
+        //request threads are daemons, main thread keeps the JVM running until it is killed
+        Thread.currentThread().join();
+    }
+
+    //function to start answering requests
+    public void start() {
+        server.start();
+    }
+
+    //function to stop the server, requests being answered get a second to finish
+    @Override
+    public void close() {
+        server.stop(1);
+        requestExecutor.shutdown();
+        if(loadExecutor != null) loadExecutor.shutdown();
+    }
+
+    //answer of an endpoint, throwing BadRequestException for invalid input
+    private interface Endpoint {
+        void answer(HttpExchange exchange, Map<String, String> parameters) throws IOException;
+    }
+
+    //invalid input found by the checks of an endpoint, answered with 400 and its message
+    //anything else thrown by an endpoint is a fault of the server and answered with 500
+    @SuppressWarnings("serial")     //never serialized, only thrown and caught within handle
+    private static class BadRequestException extends RuntimeException {
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+
+    //function to check method, parse parameters and turn errors into status codes
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        requests.incrementAndGet();
+        try(exchange) {
+            if(!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath())) {
+                respond(exchange, 404, "Not found");
+                return;
+            }
+            if(!method.equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", method);
+                respond(exchange, 405, "Method not allowed, use " + method);
+                return;
+            }
+
+            try {
+                endpoint.answer(exchange, parameters(exchange.getRequestURI().getRawQuery()));
+            } catch (BadRequestException e) {
+                //only reachable before a streamed answer started, afterwards nothing can be invalid anymore
+                respond(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                //once a streamed answer started its status is sent, closing the exchange cuts the answer short
+                if(exchange.getResponseCode() == -1) respond(exchange, 500, "Internal error");
+            }
+        }
+    }
+
+    //parameters of a query string, a parameter given twice keeps its last value
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if(query == null || query.isEmpty()) return parameters;
+
+        try {
+            for(String parameter: query.split("&")) {
+                String[] nameAndValue = parameter.split("=", 2);
+                parameters.put(URLDecoder.decode(nameAndValue[0], StandardCharsets.UTF_8),
+                        nameAndValue.length == 2 ? URLDecoder.decode(nameAndValue[1], StandardCharsets.UTF_8) : "");
+            }
+        } catch (IllegalArgumentException e) {
+            //malformed % escape
+            throw new BadRequestException("Invalid query string");
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if(value == null) throw new BadRequestException("Missing parameter " + name);
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid parameter " + name);
+        }
+    }
+
+    //month from two parameters, checked before anything is calculated so a streamed answer never fails halfway
+    private static YearMonth monthParameter(Map<String, String> parameters, String year, String month) {
+        int monthValue = intParameter(parameters, month);
+        if(monthValue < 1 || monthValue > 12) throw new BadRequestException("Invalid parameter " + month);
+        int yearValue = intParameter(parameters, year);
+        if(yearValue < Year.MIN_VALUE || yearValue > Year.MAX_VALUE) throw new BadRequestException("Invalid parameter " + year);
+        return YearMonth.of(yearValue, monthValue);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", TEXT);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    //function to start a 200 answer of unknown length, lines written to it are sent in chunks as the buffer fills up
+    private static Writer streamedResponse(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", TEXT);
+        exchange.sendResponseHeaders(200, 0);
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+    }
+
+    private static BufferedReader requestBody(HttpExchange exchange) {
+        return new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+    }
+
+    private void loadHistory(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+        //a load waiting for a permit would keep its connection and body around, so it is turned away right away
+        if(!pendingLoads.tryAcquire()) {
+            loadsRejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+            respond(exchange, 503, "Too many loads running, retry later");
+            return;
+        }
+
+        int productCount;
+        try {
+            productCount = onLoadThread(() -> costOfLiving.loadProductHistory(requestBody(exchange)));
+        } finally {
+            pendingLoads.release();
+        }
+
+        if(productCount == -1) {
+            respond(exchange, 400, "Invalid history, nothing loaded");
+        } else {
+            respond(exchange, 200, Integer.toString(productCount));
+        }
+    }
+
+    /**
+     * Function to run a load on a thread of loadExecutor and wait for it, or right away without one
+     * @param load
+     * @return result of the load
+     * @throws IOException if interrupted while waiting
+     */
+    private int onLoadThread(IntSupplier load) throws IOException {
+        if(loadExecutor == null) return load.getAsInt();
+
+        try {
+            return loadExecutor.submit(load::getAsInt).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Load failed", e.getCause());
+        }
+    }
+
+    private void loadCarts(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+        int[] cartIds = costOfLiving.loadShoppingCarts(requestBody(exchange));
+        if(cartIds == null) {
+            respond(exchange, 400, "Invalid carts");
+            return;
+        }
+
+        try(Writer writer = streamedResponse(exchange)) {
+            for(int cartId: cartIds) {
+                writer.write(cartId + "\n");
+            }
+        }
+    }
+
+    private void cartCost(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+        int cart = intParameter(parameters, "cart");
+        YearMonth month = monthParameter(parameters, "year", "month");
+
+        if(!parameters.containsKey("endYear") && !parameters.containsKey("endMonth")) {
+            respond(exchange, 200, Float.toString(costOfLiving.shoppingCartCost(cart, month.getYear(), month.getMonthValue())));
+            return;
+        }
+
+        YearMonth endMonth = monthParameter(parameters, "endYear", "endMonth");
+        Map<YearMonth, Float> costByMonth = costOfLiving.shoppingCartCostByMonth(cart, month.getYear(), month.getMonthValue(), endMonth.getYear(), endMonth.getMonthValue());
+        if(costByMonth == null) throw new BadRequestException("Invalid cart or months");
+
+        try(Writer writer = streamedResponse(exchange)) {
+            for(Map.Entry<YearMonth, Float> cost: costByMonth.entrySet()) {
+                writer.write(cost.getKey() + "\t" + cost.getValue() + "\n");
+            }
+        }
+    }
+
+    private void inflation(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+        YearMonth start = monthParameter(parameters, "startYear", "startMonth");
+        YearMonth end = monthParameter(parameters, "endYear", "endMonth");
+        if(start.isAfter(end)) throw new BadRequestException("Invalid months, start is after end");
+
+        if(parameters.containsKey("top")) {
+            int top = intParameter(parameters, "top");
+            if(top < 0) throw new BadRequestException("Invalid parameter top");
+
+            List<InflationRecord> records = costOfLiving.topInflation(start.getYear(), start.getMonthValue(), end.getYear(), end.getMonthValue(), top);
+            if(records == null) throw new IllegalStateException("Inflation of checked months failed");
+            try(Writer writer = streamedResponse(exchange)) {
+                for(InflationRecord record: records) {
+                    writeRecord(writer, record);
+                }
+            }
+            return;
+        }
+
+        //records are written as the products are evaluated, the whole result is never held in memory
+        try(Writer writer = streamedResponse(exchange)) {
+            costOfLiving.inflationRecords(start.getYear(), start.getMonthValue(), end.getYear(), end.getMonthValue(), record -> {
+                try {
+                    writeRecord(writer, record);
+                } catch (IOException e) {
+                    //client stopped reading, ends the query instead of evaluating the rest
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static void writeRecord(Writer writer, InflationRecord record) throws IOException {
+        writer.write(record.getKey() + "\t" + record.getValue() + "\t" + record.getKind() + "\n");
+    }
+
+    private void priceInversion(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+        YearMonth month = monthParameter(parameters, "year", "month");
+        int tolerance = intParameter(parameters, "tolerance");
+
+        List<String> inversions = costOfLiving.priceInversion(month.getYear(), month.getMonthValue(), tolerance);
+        if(inversions == null) throw new BadRequestException("Invalid month or tolerance");
+
+        try(Writer writer = streamedResponse(exchange)) {
+            for(String inversion: inversions) {
+                writer.write(inversion + "\n");
+            }
+        }
+    }
+
+    //getter for port the server is bound to, useful when it was created with port 0
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    //true if every request is handled on a virtual thread
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    //getter for number of requests received till now
+    public long getRequests() {
+        return requests.get();
+    }
+
+    //getter for number of loads answered with 503 because too many loads were running
+    public long getLoadsRejected() {
+        return loadsRejected.get();
+    }
+}
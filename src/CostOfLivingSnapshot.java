@@ -0,0 +1,552 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Binary snapshot of the product index and carts of a CostOfLiving, so a restart does not parse the history again.
+ * Records of every series are stored as columns (epoch day, cost, size id, name id) and only turned into Product objects
+ * the first time their series is used, the file is memory mapped so untouched parts are never even read from disk.
+ * Maps are written and restored in their iteration order, so every query gives exactly the same result as
+ * before saving.
+ *
+ * Layout, little endian:
+ *   header      magic, version, productCount, sizeCount, directory offset, file length
+ *   records     per series: int[] epoch days, float[] costs, int[] size ids, int[] name ids
+ *   month refs  per name and month: series slot of every size with a record in that month
+ *   directory   strings, sizes, per name its series and months, carts as arrays
+ * Snapshot has to be smaller than 2 GB, custom units (ProductSize.addNewUnit) have to be added again before opening.
+ */
+public class CostOfLivingSnapshot {
+
+    private static final int MAGIC = 0x434F4C53;            // "COLS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+
+    //bytes of one month entry of the directory (month, size count, offset), skipped while opening
+    private static final int MONTH_ENTRY_SIZE = 16;
+
+    private CostOfLivingSnapshot() {
+    }
+
+    /**
+     * Function to write product index and carts of given object into a file, existing file is replaced
+     * snapshot is written next to the file and moved over it once complete, so a file the object was opened from
+     * keeps its old content (and its mapping stays valid) until the move, and a failed save leaves it untouched
+     * @param costOfLiving object to be saved, must not be loaded into while saving
+     * @param file
+     * @throws IOException
+     */
+    public static void save(CostOfLiving costOfLiving, Path file) throws IOException {
+        Path absoluteFile = file.toAbsolutePath();
+        Path temporary = Files.createTempFile(absoluteFile.getParent(), absoluteFile.getFileName().toString(), ".tmp");
+        try {
+            write(costOfLiving, temporary);
+            Files.move(temporary, absoluteFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    //function to write the whole snapshot into given file and force it to disk
+    private static void write(CostOfLiving costOfLiving, Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(channel);
+            Dictionary dictionary = new Dictionary();
+
+            //header is written again with the directory offset once everything else is written
+            writer.skip(HEADER_SIZE);
+
+            //records of every series, offsets are kept for the directory
+            Map<String, long[]> seriesOffsets = new HashMap<>();
+            for(Map.Entry<String, Map<Float, PriceSeries>> name: costOfLiving.productList.entrySet()) {
+                long[] offsets = new long[name.getValue().size()];
+                int slot = 0;
+                for(PriceSeries series: name.getValue().values()) {
+                    offsets[slot++] = writer.position();
+                    writeRecords(writer, dictionary, series);
+                }
+                seriesOffsets.put(name.getKey(), offsets);
+            }
+
+            //month index as references into series of the same name
+            Map<String, long[]> monthOffsets = new HashMap<>();
+            for(Map.Entry<String, Map<YearMonth, float[]>> name: costOfLiving.sizesByMonth.entrySet()) {
+                monthOffsets.put(name.getKey(), writeMonthRefs(writer, costOfLiving.productList.getOrDefault(name.getKey(), Collections.emptyMap()), name.getValue()));
+            }
+
+            long directoryOffset = writer.position();
+            writeDirectory(writer, dictionary, costOfLiving, seriesOffsets, monthOffsets);
+            long fileLength = writer.position();
+            writer.flush();
+
+            if(fileLength > Integer.MAX_VALUE) throw new IOException("Snapshot larger than 2 GB");
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(costOfLiving.productCount).putInt(costOfLiving.sizeCount);
+            header.putLong(directoryOffset).putLong(fileLength).flip();
+            channel.write(header, 0);
+
+            //snapshots are what checkpoints rely on after a crash, see CheckpointedHistoryIngest
+            channel.force(true);
+        }
+    }
+
+    private static void writeRecords(Writer writer, Dictionary dictionary, PriceSeries series) throws IOException {
+        List<Product> products = series.getProducts();
+
+        for(Product product: products) {
+            writer.putInt((int) product.getDate().toEpochDay());
+        }
+        for(Product product: products) {
+            writer.putFloat(product.getCost());
+        }
+        for(Product product: products) {
+            writer.putInt(dictionary.sizeId(product.getSize()));
+        }
+
+        //names keep the case they were loaded with, records of one series can differ in it
+        for(Product product: products) {
+            writer.putInt(dictionary.stringId(product.getName()));
+        }
+    }
+
+    /**
+     * @return offset of refs of every month in iteration order of given months
+     */
+    private static long[] writeMonthRefs(Writer writer, Map<Float, PriceSeries> sizes, Map<YearMonth, float[]> months) throws IOException {
+        //slot of every size of the name, in the order its series are written
+        Map<Float, Integer> slots = new HashMap<>();
+        for(Float size: sizes.keySet()) {
+            slots.put(size, slots.size());
+        }
+
+        long[] offsets = new long[months.size()];
+        int month = 0;
+        for(float[] sizesInMonth: months.values()) {
+            offsets[month++] = writer.position();
+            for(float size: sizesInMonth) {
+                Integer slot = slots.get(size);
+                if(slot == null) throw new IOException("Size of month index is missing from its product");
+
+                writer.putInt(slot);
+            }
+        }
+        return offsets;
+    }
+
+    private static void writeDirectory(Writer writer, Dictionary dictionary, CostOfLiving costOfLiving, Map<String, long[]> seriesOffsets, Map<String, long[]> monthOffsets) throws IOException {
+        CartStore carts = costOfLiving.carts;
+        int cartCount = carts.size();
+        int itemCount = cartCount == 0 ? 0 : carts.endItem(cartCount - 1);
+
+        //ids of cart names and sizes are added to the dictionary before it is written
+        int[] itemNameIds = new int[itemCount];
+        int[] itemSizeIds = new int[itemCount];
+        for(int item = 0; item < itemCount; item++) {
+            itemNameIds[item] = dictionary.stringId(carts.itemName(item));
+            itemSizeIds[item] = dictionary.sizeId(carts.itemSize(item));
+        }
+
+        //names of products are added too, then the whole dictionary is final
+        for(String name: costOfLiving.productList.keySet()) dictionary.stringId(name);
+        for(String name: costOfLiving.sizesByMonth.keySet()) dictionary.stringId(name);
+        dictionary.write(writer);
+
+        //products, in iteration order of productList, then names only present in sizesByMonth
+        Set<String> names = new LinkedHashSet<>(costOfLiving.productList.keySet());
+        names.addAll(costOfLiving.sizesByMonth.keySet());
+        writer.putInt(names.size());
+        for(String name: names) {
+            writer.putInt(dictionary.stringId(name));
+
+            Map<Float, PriceSeries> sizes = costOfLiving.productList.get(name);
+            writer.putInt(sizes == null ? -1 : sizes.size());
+            if(sizes != null) {
+                long[] offsets = seriesOffsets.get(name);
+                int slot = 0;
+                for(Map.Entry<Float, PriceSeries> size: sizes.entrySet()) {
+                    writer.putFloat(size.getKey());
+                    writer.putInt(size.getValue().size());
+                    writer.putLong(offsets[slot++]);
+                }
+            }
+
+            Map<YearMonth, float[]> months = costOfLiving.sizesByMonth.get(name);
+            writer.putInt(months == null ? -1 : months.size());
+            if(months != null) {
+                long[] offsets = monthOffsets.get(name);
+                int month = 0;
+                for(Map.Entry<YearMonth, float[]> entry: months.entrySet()) {
+                    writer.putInt(entry.getKey().getYear() * 12 + entry.getKey().getMonthValue() - 1);
+                    writer.putInt(entry.getValue().length);
+                    writer.putLong(offsets[month++]);
+                }
+            }
+        }
+
+        //carts as arrays, names and sizes refer to the dictionary
+        writer.putInt(cartCount);
+        writer.putInt(itemCount);
+        for(int cartId = 0; cartId <= cartCount; cartId++) {
+            writer.putInt(cartId == cartCount ? itemCount : carts.firstItem(cartId));
+        }
+        for(int item = 0; item < itemCount; item++) writer.putInt(itemNameIds[item]);
+        for(int item = 0; item < itemCount; item++) writer.putFloat(carts.itemSizeInBaseUnit(item));
+        for(int item = 0; item < itemCount; item++) writer.putInt(itemSizeIds[item]);
+    }
+
+    /**
+     * Function to open a snapshot, only directories are read now, records are read once they are needed
+     * @param file written by save
+     * @return object with the same product index and carts as the saved one
+     * @throws IOException if file is not a snapshot of this version or is damaged
+     */
+    public static CostOfLiving open(Path file) throws IOException {
+        ByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) throw new IOException("Not a snapshot");
+
+            //mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if(buffer.getInt(0) != MAGIC) throw new IOException("Not a snapshot");
+        if(buffer.getInt(4) != VERSION) throw new IOException("Unsupported snapshot version " + buffer.getInt(4));
+        if(buffer.getLong(24) != buffer.capacity()) throw new IOException("Snapshot is truncated");
+
+        try {
+            return read(buffer);
+        } catch (RuntimeException e) {
+            throw new IOException("Snapshot is damaged", e);
+        }
+    }
+
+    private static CostOfLiving read(ByteBuffer buffer) {
+        CostOfLiving costOfLiving = new CostOfLiving();
+        costOfLiving.productCount = buffer.getInt(8);
+        costOfLiving.sizeCount = buffer.getInt(12);
+
+        Reader reader = new Reader(buffer, (int) buffer.getLong(16));
+
+        String[] strings = new String[reader.getInt()];
+        for(int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[reader.getInt()];
+            reader.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        ProductSize[] sizes = new ProductSize[reader.getInt()];
+        for(int i = 0; i < sizes.length; i++) {
+            float value = reader.getFloat();
+            sizes[i] = ProductSize.of(value + " " + strings[reader.getInt()]);
+        }
+
+        //maps are filled in saved order, which gives them the same iteration order they had
+        int names = reader.getInt();
+        for(int i = 0; i < names; i++) {
+            String name = strings[reader.getInt()];
+
+            int seriesCount = reader.getInt();
+            float[] sizesOfName = new float[Math.max(seriesCount, 0)];
+            if(seriesCount >= 0) {
+                Map<Float, PriceSeries> sizeMap = new HashMap<>();
+                for(int slot = 0; slot < seriesCount; slot++) {
+                    sizesOfName[slot] = reader.getFloat();
+                    int count = reader.getInt();
+                    int offset = (int) reader.getLong();
+
+                    sizeMap.put(sizesOfName[slot], new PriceSeries(() -> readRecords(buffer, offset, count, strings, sizes)));
+                }
+                costOfLiving.productList.put(name, sizeMap);
+            }
+
+            int monthCount = reader.getInt();
+            if(monthCount >= 0) {
+                int directory = reader.position();
+                costOfLiving.sizesByMonth.put(name, new LazyMap<>(() -> readMonths(buffer, directory, monthCount, sizesOfName)));
+                reader.skip(monthCount * MONTH_ENTRY_SIZE);
+            }
+        }
+
+        int cartCount = reader.getInt();
+        int itemCount = reader.getInt();
+        int[] firstItem = reader.getInts(cartCount + 1);
+        int[] itemNameIds = reader.getInts(itemCount);
+        float[] itemSizesInBaseUnit = reader.getFloats(itemCount);
+        int[] itemSizeIds = reader.getInts(itemCount);
+
+        //cart dictionaries only keep what carts use, ids are translated into them
+        Map<Integer, Integer> nameIdOfString = new LinkedHashMap<>();
+        Map<Integer, Integer> sizeIdOfSize = new LinkedHashMap<>();
+        for(int item = 0; item < itemCount; item++) {
+            itemNameIds[item] = nameIdOfString.computeIfAbsent(itemNameIds[item], k -> nameIdOfString.size());
+            itemSizeIds[item] = sizeIdOfSize.computeIfAbsent(itemSizeIds[item], k -> sizeIdOfSize.size());
+        }
+        String[] cartNames = nameIdOfString.keySet().stream().map(id -> strings[id]).toArray(String[]::new);
+        ProductSize[] cartSizes = sizeIdOfSize.keySet().stream().map(id -> sizes[id]).toArray(ProductSize[]::new);
+
+        costOfLiving.carts = new CartStore(cartCount, firstItem, itemNameIds, itemSizesInBaseUnit, itemSizeIds, cartNames, cartSizes);
+        costOfLiving.metrics = new CostOfLivingMetrics(costOfLiving.carts::size);
+        costOfLiving.metrics.setIndexSize(costOfLiving.productList.size(), costOfLiving.sizeCount, costOfLiving.productCount);
+        return costOfLiving;
+    }
+
+    //records of one series created from their columns
+    private static List<Product> readRecords(ByteBuffer buffer, int offset, int count, String[] strings, ProductSize[] sizes) {
+        List<Product> products = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            int epochDay = buffer.getInt(offset + 4 * i);
+            float cost = buffer.getFloat(offset + 4 * (count + i));
+            int sizeId = buffer.getInt(offset + 4 * (2 * count + i));
+            int nameId = buffer.getInt(offset + 4 * (3 * count + i));
+            products.add(new Product(LocalDate.ofEpochDay(epochDay), strings[nameId], sizes[sizeId], cost));
+        }
+        return products;
+    }
+
+    //month index of one name, sizes are taken from the sizes of its series
+    private static Map<YearMonth, float[]> readMonths(ByteBuffer buffer, int directory, int monthCount, float[] sizesOfName) {
+        Map<YearMonth, float[]> months = new HashMap<>();
+        for(int month = 0; month < monthCount; month++) {
+            int entry = directory + month * MONTH_ENTRY_SIZE;
+            int yearMonth = buffer.getInt(entry);
+            int count = buffer.getInt(entry + 4);
+            int offset = (int) buffer.getLong(entry + 8);
+
+            float[] sizes = new float[count];
+            for(int i = 0; i < count; i++) {
+                sizes[i] = sizesOfName[buffer.getInt(offset + 4 * i)];
+            }
+            months.put(YearMonth.of(Math.floorDiv(yearMonth, 12), Math.floorMod(yearMonth, 12) + 1), sizes);
+        }
+        return months;
+    }
+
+    /**
+     * Map created on first use from a supplier, every change goes to the created map
+     */
+    private static class LazyMap<K, V> extends AbstractMap<K, V> {
+        private volatile Supplier<Map<K, V>> pending;
+        private Map<K, V> map;
+
+        LazyMap(Supplier<Map<K, V>> pending) {
+            this.pending = pending;
+        }
+
+        private Map<K, V> map() {
+            if(pending != null) {
+                synchronized(this) {
+                    if(pending != null) {
+                        map = pending.get();
+                        pending = null;
+                    }
+                }
+            }
+            return map;
+        }
+
+        @Override
+        public V get(Object key) {
+            return map().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return map().containsKey(key);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            return map().put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return map().remove(key);
+        }
+
+        @Override
+        public int size() {
+            return map().size();
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return map().entrySet();
+        }
+    }
+
+    /**
+     * Strings and sizes written once and referred to by id everywhere else
+     */
+    private static class Dictionary {
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> idOfString = new HashMap<>();
+        private final List<ProductSize> sizes = new ArrayList<>();
+        private final Map<String, Integer> idOfSize = new HashMap<>();
+
+        //records of one size usually share one ProductSize object, so it is looked up by identity first
+        private final Map<ProductSize, Integer> idOfSizeObject = new IdentityHashMap<>();
+
+        int stringId(String string) {
+            return idOfString.computeIfAbsent(string, k -> {
+                strings.add(k);
+                return strings.size() - 1;
+            });
+        }
+
+        int sizeId(ProductSize size) {
+            Integer id = idOfSizeObject.get(size);
+            if(id != null) return id;
+
+            id = idOfSize.computeIfAbsent(size.getValue() + " " + size.getUnit(), k -> {
+                sizes.add(size);
+                return sizes.size() - 1;
+            });
+            stringId(size.getUnit());
+            idOfSizeObject.put(size, id);
+            return id;
+        }
+
+        void write(Writer writer) throws IOException {
+            writer.putInt(strings.size());
+            for(String string: strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writer.putInt(bytes.length);
+                writer.put(bytes);
+            }
+
+            writer.putInt(sizes.size());
+            for(ProductSize size: sizes) {
+                writer.putFloat(size.getValue());
+                writer.putInt(idOfString.get(size.getUnit()));
+            }
+        }
+    }
+
+    /**
+     * Buffered little endian writer keeping track of its position in the file
+     */
+    private static class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long flushed;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if(buffer.remaining() < bytes) flush();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining()) flushed += channel.write(buffer, flushed);
+            buffer.clear();
+        }
+
+        void skip(int bytes) throws IOException {
+            ensure(bytes);
+            buffer.position(buffer.position() + bytes);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putFloat(float value) throws IOException {
+            ensure(4);
+            buffer.putFloat(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            for(int written = 0; written < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, length);
+                written += length;
+            }
+        }
+    }
+
+    /**
+     * Sequential reader over absolute positions of a shared buffer, buffer itself is never moved
+     */
+    private static class Reader {
+        private final ByteBuffer buffer;
+        private int position;
+
+        Reader(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int position() {
+            return position;
+        }
+
+        void skip(int bytes) {
+            position += bytes;
+        }
+
+        int getInt() {
+            int value = buffer.getInt(position);
+            position += 4;
+            return value;
+        }
+
+        float getFloat() {
+            float value = buffer.getFloat(position);
+            position += 4;
+            return value;
+        }
+
+        long getLong() {
+            long value = buffer.getLong(position);
+            position += 8;
+            return value;
+        }
+
+        void get(byte[] bytes) {
+            buffer.get(position, bytes);
+            position += bytes.length;
+        }
+
+        int[] getInts(int count) {
+            int[] values = new int[count];
+            buffer.slice(position, 4 * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values);
+            position += 4 * count;
+            return values;
+        }
+
+        float[] getFloats(int count) {
+            float[] values = new float[count];
+            buffer.slice(position, 4 * count).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(values);
+            position += 4 * count;
+            return values;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.Comparator;
+
+/**
+ * One product size exhibiting inflation or shrinkflation, same entry inflation() returns as "name size" -> value
+ * but with its parts kept apart, so callers do not need to parse the key back
+ */
+public class InflationRecord {
+
+    public enum Kind { INFLATION, SHRINKFLATION }
+
+    //largest value first, ties are ordered by name and then by size so the order never depends on the index
+    public static final Comparator<InflationRecord> LARGEST_FIRST = Comparator.comparing(InflationRecord::getValue, Comparator.reverseOrder())
+            .thenComparing(InflationRecord::getName)
+            .thenComparing(InflationRecord::getSizeInBaseUnit)
+            .thenComparing(record -> record.getSize().getUnit());
+
+    private final String name;
+    private final ProductSize size;
+    private final float sizeInBaseUnit;
+    private final Kind kind;
+    private final float value;
+
+    /**
+     * @param product record whose size exhibits inflation, or the smaller size which replaced a discontinued one
+     * @param kind
+     * @param value increase of cost per unit as a fraction i.e. 0.25 for 25%
+     */
+    public InflationRecord(Product product, Kind kind, float value) {
+        this.name = product.getName();
+        this.size = product.getSize();
+        this.sizeInBaseUnit = product.getSizeInBaseUnit();
+        this.kind = kind;
+        this.value = value;
+    }
+
+    //getter for name of product in lower case
+    public String getName() {
+        return name;
+    }
+
+    //getter for size as it was loaded i.e. 1 kg
+    public ProductSize getSize() {
+        return size;
+    }
+
+    //getter for size in base unit i.e. 1000 for 1 kg
+    public float getSizeInBaseUnit() {
+        return sizeInBaseUnit;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public float getValue() {
+        return value;
+    }
+
+    //same key inflation() uses for this record, i.e. "cookies 400.0 g"
+    public String getKey() {
+        return name + " " + size.getValue() + " " + size.getUnit();
+    }
+
+    /**
+     * @param other
+     * @return true if both records are reported for the same key, only then one record replaces the other
+     */
+    boolean hasSameKey(InflationRecord other) {
+        return name.equals(other.name) && size.getValue() == other.size.getValue() && size.getUnit().equals(other.size.getUnit());
+    }
+
+    @Override
+    public String toString() {
+        return getKey() + " " + kind + " " + value;
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with about 3% precision, recording never locks or allocates
+ * i.e. values below 64 have a bucket each, above that every power of two is split in 32 buckets,
+ * so percentiles of anything from nanoseconds to hours come out of 1888 counters.
+ */
+public class LatencyHistogram {
+
+    //number of buckets every power of two is split in
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Function to record one latency
+     * @param nanos latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(Math.max(0, nanos)));
+    }
+
+    //bucket of given value, values below 2 * SUB_BUCKETS are their own bucket
+    private static int bucketOf(long value) {
+        if(value < 2 * SUB_BUCKETS) return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    //highest value falling in given bucket
+    private static long highestValueOf(int bucket) {
+        if(bucket < 2 * SUB_BUCKETS) return bucket;
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket - shift * SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Function to add every recorded latency of given histogram to this one
+     * @param other
+     */
+    public void add(LatencyHistogram other) {
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            long count = other.counts.get(bucket);
+            if(count != 0) counts.addAndGet(bucket, count);
+        }
+    }
+
+    //removing all recorded latencies
+    public void reset() {
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+    }
+
+    //number of recorded latencies
+    public long getCount() {
+        long total = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            total += counts.get(bucket);
+        }
+        return total;
+    }
+
+    /**
+     * @param percentile between 0 and 100 i.e. 99.9
+     * @return latency in nanoseconds given percentage of recorded latencies are at or below, 0 if nothing is recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        if(total == 0) return 0;
+
+        //rank of the latency looked for, at least the first one
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if(seen >= rank) return highestValueOf(bucket);
+        }
+        return getMax();
+    }
+
+    //highest recorded latency in nanoseconds, rounded up to its bucket
+    public long getMax() {
+        for(int bucket = BUCKETS - 1; bucket >= 0; bucket--) {
+            if(counts.get(bucket) != 0) return highestValueOf(bucket);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Percentiles of latencies of one method at the time it was taken, in microseconds
+ */
+public class LatencySummary {
+    private final long count;
+    private final double p50Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+
+    /**
+     * Constructor to take summary of given histogram
+     * @param histogram latencies in nanoseconds
+     */
+    public LatencySummary(LatencyHistogram histogram) {
+        count = histogram.getCount();
+        p50Micros = histogram.getPercentile(50) / 1e3;
+        p99Micros = histogram.getPercentile(99) / 1e3;
+        p999Micros = histogram.getPercentile(99.9) / 1e3;
+        maxMicros = histogram.getMax() / 1e3;
+    }
+
+    //getter for number of calls
+    public long getCount() {
+        return count;
+    }
+
+    //getter for median latency
+    public double getP50Micros() {
+        return p50Micros;
+    }
+
+    //getter for 99th percentile latency
+    public double getP99Micros() {
+        return p99Micros;
+    }
+
+    //getter for 99.9th percentile latency
+    public double getP999Micros() {
+        return p999Micros;
+    }
+
+    //getter for highest latency
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus", count, p50Micros, p99Micros, p999Micros, maxMicros);
+    }
+}
@@ -0,0 +1,230 @@
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays a mix of operations against ConcurrentCostOfLiving from many threads and reports throughput and
+ * p50/p99/p999 latency of every operation, data comes from WorkloadGenerator.
+ *
+ * usage: java LoadDriver [name=value ...] i.e. java LoadDriver threads=8 seconds=60 mix=load:1,cart:5,cost:80,inflation:4,inversion:2
+ *   threads        worker threads (default number of processors)
+ *   seconds        length of the measured run (default 30)
+ *   warmup         seconds run before measuring (default 10)
+ *   seed           seed of generated data (default 42)
+ *   products       different product names (default 1000)
+ *   sizes          sizes of every product (default 4)
+ *   months         months covered by history (default 120)
+ *   records        records loaded before the run (default 1000000)
+ *   carts          carts loaded before the run (default 10000)
+ *   batch          records of every history load during the run (default 1000)
+ *   cartItems      items of every cart (default 10)
+ *   window         months of every inflation window (default 12)
+ *   tolerance      tolerance of every price inversion (default 5)
+ *   weight         part of products sold by weight (default 0.5)
+ *   largeUnits     part of sizes written in kg or l (default 0.25)
+ *   discontinued   part of records with cost 0 (default 0.01)
+ *   replaced       part of discontinuations replaced by smaller size in the same month (default 0.5)
+ *   mix            weights of operations load, cart, cost, inflation and inversion
+ */
+public class LoadDriver {
+
+    //operations in the mix, index of every operation is its position here
+    enum Operation { LOAD, CART, COST, INFLATION, INVERSION }
+
+    private final Map<String, String> settings;
+    private final ConcurrentCostOfLiving costOfLiving = new ConcurrentCostOfLiving();
+
+    //highest cartId created till now, carts have dense ids so every id up to it can be queried
+    private final AtomicInteger highestCartId = new AtomicInteger(-1);
+
+    /**
+     * Constructor to create driver with given settings, missing settings get their default
+     * @param settings
+     */
+    public LoadDriver(Map<String, String> settings) {
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        for(String arg: args) {
+            String[] setting = arg.split("=", 2);
+            if(setting.length != 2) throw new IllegalArgumentException("Invalid setting " + arg + ", expected name=value");
+            settings.put(setting[0], setting[1]);
+        }
+        new LoadDriver(settings).run();
+    }
+
+    private int intSetting(String name, int defaultValue) {
+        return settings.containsKey(name) ? Integer.parseInt(settings.get(name)) : defaultValue;
+    }
+
+    private double doubleSetting(String name, double defaultValue) {
+        return settings.containsKey(name) ? Double.parseDouble(settings.get(name)) : defaultValue;
+    }
+
+    //generator with given seed configured from settings
+    private WorkloadGenerator generator(long seed) {
+        WorkloadGenerator generator = new WorkloadGenerator(seed);
+        generator.setProducts(intSetting("products", 1000));
+        generator.setSizesPerProduct(intSetting("sizes", 4));
+        generator.setMonths(YearMonth.of(2015, 1), intSetting("months", 120));
+        generator.setUnitMix(doubleSetting("weight", 0.5), doubleSetting("largeUnits", 0.25));
+        generator.setDiscontinuations(doubleSetting("discontinued", 0.01), doubleSetting("replaced", 0.5));
+        return generator;
+    }
+
+    /**
+     * @param mix i.e. load:1,cart:5,cost:80,inflation:4,inversion:2, missing operations get weight 0
+     * @return running total of weights in the order of Operation
+     */
+    static int[] cumulativeWeights(String mix) {
+        int[] weights = new int[Operation.values().length];
+        for(String entry: mix.split(",")) {
+            String[] operationAndWeight = entry.split(":");
+            weights[Operation.valueOf(operationAndWeight[0].trim().toUpperCase()).ordinal()] = Integer.parseInt(operationAndWeight[1].trim());
+        }
+
+        for(int i = 1; i < weights.length; i++) {
+            weights[i] += weights[i - 1];
+        }
+        if(weights[weights.length - 1] <= 0) throw new IllegalArgumentException("Invalid mix " + mix);
+        return weights;
+    }
+
+    /**
+     * Function to load initial data, run the mix on all threads and print the report
+     * @throws Exception
+     */
+    public void run() throws Exception {
+        int threads = intSetting("threads", Runtime.getRuntime().availableProcessors());
+        int seconds = intSetting("seconds", 30);
+        int warmup = intSetting("warmup", 10);
+        long seed = intSetting("seed", 42);
+        int[] weights = cumulativeWeights(settings.getOrDefault("mix", "load:1,cart:5,cost:80,inflation:4,inversion:2"));
+
+        //metrics can be watched with any JMX client while the driver runs
+        costOfLiving.getMetrics().register("LoadDriver");
+
+        //initial history and carts so queries have something to work on from the start
+        WorkloadGenerator generator = generator(seed);
+        long started = System.nanoTime();
+        int records = intSetting("records", 1000000);
+        for(int loaded = 0; loaded < records; loaded += 100000) {
+            costOfLiving.loadProductHistory(new BufferedReader(new StringReader(generator.history(Math.min(100000, records - loaded)))));
+        }
+
+        StringBuilder carts = new StringBuilder();
+        for(int cart = intSetting("carts", 10000); cart > 0; cart--) {
+            carts.append(generator.cart(intSetting("cartItems", 10))).append('\n');
+        }
+        for(int cartId: costOfLiving.loadShoppingCarts(new BufferedReader(new StringReader(carts.toString())))) {
+            highestCartId.accumulateAndGet(cartId, Math::max);
+        }
+        System.out.printf("loaded %d products and %d carts in %.1f s%n", costOfLiving.getProductCount(), highestCartId.get() + 1, (System.nanoTime() - started) / 1e9);
+
+        //latencies of every operation, recorded by all threads
+        LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+        for(int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(seconds);
+
+        List<Future<?>> running = new ArrayList<>();
+        for(int thread = 0; thread < threads; thread++) {
+            long threadSeed = seed + 1 + thread;
+            running.add(workers.submit(() -> work(threadSeed, weights, latencies, warmupEnd, end)));
+        }
+        for(Future<?> worker: running) {
+            worker.get();
+        }
+        workers.shutdown();
+
+        report(latencies, threads, seconds);
+    }
+
+    //loop of one worker thread, latencies are only recorded after warmup
+    private Void work(long seed, int[] weights, LatencyHistogram[] latencies, long warmupEnd, long end) {
+        WorkloadGenerator generator = generator(seed);
+        Random random = new Random(seed);
+        int batch = intSetting("batch", 1000);
+        int cartItems = intSetting("cartItems", 10);
+        int window = intSetting("window", 12);
+        int tolerance = intSetting("tolerance", 5);
+
+        long now;
+        while((now = System.nanoTime()) < end) {
+            int pick = random.nextInt(weights[weights.length - 1]);
+            int operation = 0;
+            while(pick >= weights[operation]) operation++;
+
+            //input is generated before the clock starts so only CostOfLiving is measured
+            long started;
+            switch(Operation.values()[operation]) {
+                case LOAD: {
+                    BufferedReader history = new BufferedReader(new StringReader(generator.history(batch)));
+                    started = System.nanoTime();
+                    costOfLiving.loadProductHistory(history);
+                    break;
+                }
+                case CART: {
+                    BufferedReader cart = new BufferedReader(new StringReader(generator.cart(cartItems)));
+                    started = System.nanoTime();
+                    highestCartId.accumulateAndGet(costOfLiving.loadShoppingCart(cart), Math::max);
+                    break;
+                }
+                case COST: {
+                    int cartId = random.nextInt(highestCartId.get() + 1);
+                    YearMonth month = generator.month();
+                    started = System.nanoTime();
+                    costOfLiving.shoppingCartCost(cartId, month.getYear(), month.getMonthValue());
+                    break;
+                }
+                case INFLATION: {
+                    YearMonth start = generator.month();
+                    YearMonth last = start.plusMonths(window - 1);
+                    started = System.nanoTime();
+                    costOfLiving.inflation(start.getYear(), start.getMonthValue(), last.getYear(), last.getMonthValue());
+                    break;
+                }
+                default: {
+                    YearMonth month = generator.month();
+                    started = System.nanoTime();
+                    costOfLiving.priceInversion(month.getYear(), month.getMonthValue(), tolerance);
+                    break;
+                }
+            }
+            long finished = System.nanoTime();
+
+            if(now >= warmupEnd) latencies[operation].record(finished - started);
+        }
+        return null;
+    }
+
+    //printing throughput and latency percentiles of every operation that ran
+    private void report(LatencyHistogram[] latencies, int threads, int seconds) {
+        System.out.printf("%d threads, %d s measured, %d products and %d carts at the end%n", threads, seconds, costOfLiving.getProductCount(), highestCartId.get() + 1);
+        System.out.printf("%-10s %10s %10s %10s %10s %10s %10s%n", "operation", "count", "ops/s", "p50 us", "p99 us", "p999 us", "max us");
+
+        long total = 0;
+        for(Operation operation: Operation.values()) {
+            LatencyHistogram histogram = latencies[operation.ordinal()];
+            long count = histogram.getCount();
+            if(count == 0) continue;
+
+            total += count;
+            System.out.printf("%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation.name().toLowerCase(), count, (double) count / seconds,
+                    histogram.getPercentile(50) / 1e3, histogram.getPercentile(99) / 1e3, histogram.getPercentile(99.9) / 1e3, histogram.getMax() / 1e3);
+        }
+        System.out.printf("%-10s %10d %10.1f%n", "total", total, (double) total / seconds);
+
+        CartCostCache cache = costOfLiving.getCartCostCache();
+        System.out.printf("cart cost cache: %d hits, %d misses, %d evictions, %d invalidations%n", cache.getHits(), cache.getMisses(), cache.getEvictions(), cache.getInvalidations());
+    }
+}
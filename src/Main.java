@@ -1,5 +1,7 @@
 public class Main {
-    public static void main(String[] args) {
-        System.out.println("Hello world!");
+
+    //runs the load driver, see LoadDriver for settings
+    public static void main(String[] args) throws Exception {
+        LoadDriver.main(args);
     }
-}
\ No newline at end of file
+}
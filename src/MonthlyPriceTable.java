@@ -0,0 +1,202 @@
+import java.time.LocalDate;
+
+/**
+ * Optional table of the price of every size on the 1st of every month, so a query at month granularity reads an
+ * array instead of searching the series i.e. milk 1000 ml first recorded on 2023-01-15 and last on 2023-04-02 gets
+ * prices for 2023-02, 2023-03, 2023-04 and 2023-05, every later month has the same price as 2023-05.
+ * Prices of a series are kept in a row stored with the series (see PriceSeries.getMonthlyPrices), rows are never
+ * changed once built, a load builds a new row reusing months before its earliest new record. Versions created by
+ * copyForUpdate share rows of series they share, the table itself only holds the budget and the accounting.
+ * Once the budget would be exceeded a series gets no row and its queries keep using binary search.
+ */
+public class MonthlyPriceTable {
+
+    //estimated bytes of a row besides its prices, object headers and fields of row and array
+    static final int ROW_OVERHEAD_BYTES = 48;
+
+    //longest array a JVM reliably allocates, a series spanning more months never gets a row
+    private static final int MAX_ROW_LENGTH = Integer.MAX_VALUE - 8;
+
+    /**
+     * Prices of one series on the 1st of every month from firstMonth to firstMonth + costs.length - 1
+     */
+    public static class Row {
+        private final int firstMonth;
+        private final float sizeInBaseUnit;
+        private final float[] costs;
+
+        Row(int firstMonth, float sizeInBaseUnit, float[] costs) {
+            this.firstMonth = firstMonth;
+            this.sizeInBaseUnit = sizeInBaseUnit;
+            this.costs = costs;
+        }
+
+        /**
+         * @param month see monthOrdinal
+         * @return cost of the latest record on or before 1st of given month, -1 if there is none
+         */
+        public float costOnFirstOfMonth(int month) {
+            if(month < firstMonth) return -1f;
+
+            //after the last record price never changes
+            return costs[Math.min(month - firstMonth, costs.length - 1)];
+        }
+
+        //getter for size of every record of the series in base unit
+        public float getSizeInBaseUnit() {
+            return sizeInBaseUnit;
+        }
+
+        //estimated memory used by the row
+        public long getBytes() {
+            return ROW_OVERHEAD_BYTES + 4L * costs.length;
+        }
+    }
+
+    private final long maxBytes;
+
+    //rows of the version this table belongs to and their memory
+    private long bytes;
+    private long rows;
+
+    //series left without a row the last time they changed, because of the budget
+    private long seriesSkipped;
+
+    /**
+     * Constructor to create an empty table
+     * @param maxBytes most memory all rows may use together
+     */
+    public MonthlyPriceTable(long maxBytes) {
+        if(maxBytes < 0) throw new IllegalArgumentException("Invalid table size");
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Copy constructor, accounting of the copy can change without affecting given table
+     * @param table
+     */
+    public MonthlyPriceTable(MonthlyPriceTable table) {
+        maxBytes = table.maxBytes;
+        bytes = table.bytes;
+        rows = table.rows;
+        seriesSkipped = table.seriesSkipped;
+    }
+
+    /**
+     * @param year
+     * @param month
+     * @return index of the month counted from January of year 0, rows are indexed with it, years too far away for an
+     * int share the largest index which is after every row anyway
+     */
+    public static int monthOrdinal(int year, int month) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, year * 12L + month - 1));
+    }
+
+    //ordinal of the first month whose 1st is on or after given date
+    private static int monthOnOrAfter(LocalDate date) {
+        return monthOrdinal(date.getYear(), date.getMonthValue()) + (date.getDayOfMonth() == 1 ? 0 : 1);
+    }
+
+    private static LocalDate firstDayOf(int month) {
+        return LocalDate.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1, 1);
+    }
+
+    /**
+     * Function to build the row of a series after records were added to it, months before the earliest added record
+     * are copied from its current row, a series which would exceed the budget is left without a row
+     * @param series
+     * @param earliestChange date of the earliest added record, null to build the whole row
+     * @return true if series has a row now
+     */
+    boolean update(PriceSeries series, LocalDate earliestChange) {
+        Row current = series.getMonthlyPrices();
+        long currentBytes = current == null ? 0 : current.getBytes();
+
+        //budget is checked before the row is allocated, records years apart would need a row of billions of months
+        Row next = null;
+        long nextBytes = rowBytes(series);
+        if(nextBytes < 0 || bytes - currentBytes + nextBytes > maxBytes) {
+            nextBytes = 0;
+            seriesSkipped++;
+        } else {
+            next = build(series, current, earliestChange);
+        }
+
+        bytes += nextBytes - currentBytes;
+        rows += (next == null ? 0 : 1) - (current == null ? 0 : 1);
+        series.setMonthlyPrices(next);
+        return next != null;
+    }
+
+    //function to remove row of a series, i.e. when table is turned off
+    void remove(PriceSeries series) {
+        Row current = series.getMonthlyPrices();
+        if(current == null) return;
+
+        bytes -= current.getBytes();
+        rows--;
+        series.setMonthlyPrices(null);
+    }
+
+    //estimated bytes of the row build would give series, 0 if it gets none, -1 if its months do not fit in an array
+    private static long rowBytes(PriceSeries series) {
+        int size = series.size();
+        if(size == 0) return 0;
+
+        long firstMonth = monthOnOrAfterExact(series.get(0).getDate());
+        long lastMonth = monthOnOrAfterExact(series.get(size - 1).getDate());
+        if(firstMonth < Integer.MIN_VALUE || lastMonth > Integer.MAX_VALUE || lastMonth - firstMonth + 1 > MAX_ROW_LENGTH) return -1;
+
+        return ROW_OVERHEAD_BYTES + 4L * (lastMonth - firstMonth + 1);
+    }
+
+    //same as monthOnOrAfter without clamping to int, for dates too far away for a row
+    private static long monthOnOrAfterExact(LocalDate date) {
+        return date.getYear() * 12L + date.getMonthValue() - 1 + (date.getDayOfMonth() == 1 ? 0 : 1);
+    }
+
+    private static Row build(PriceSeries series, Row current, LocalDate earliestChange) {
+        int size = series.size();
+        if(size == 0) return null;
+
+        int firstMonth = monthOnOrAfter(series.get(0).getDate());
+        int lastMonth = monthOnOrAfter(series.get(size - 1).getDate());
+        float[] costs = new float[lastMonth - firstMonth + 1];
+
+        //a record changes prices of months on or after it, earlier months stay the same as in the current row
+        int kept = 0;
+        if(current != null && earliestChange != null && current.firstMonth == firstMonth) {
+            kept = Math.max(0, Math.min(monthOnOrAfter(earliestChange) - firstMonth, Math.min(current.costs.length, costs.length)));
+            System.arraycopy(current.costs, 0, costs, 0, kept);
+        }
+
+        //walking the series forward month by month, first record is on or before 1st of firstMonth by definition
+        int latest = series.floorIndex(firstDayOf(firstMonth + kept));
+        for(int month = kept; month < costs.length; month++) {
+            LocalDate firstDay = firstDayOf(firstMonth + month);
+            while(latest + 1 < size && !series.get(latest + 1).getDate().isAfter(firstDay)) latest++;
+            costs[month] = series.get(latest).getCost();
+        }
+        return new Row(firstMonth, series.get(0).getSizeInBaseUnit(), costs);
+    }
+
+    //getter for most memory all rows may use together
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    //getter for estimated memory used by all rows
+    public long getBytes() {
+        return bytes;
+    }
+
+    //getter for number of series with a row
+    public long getRows() {
+        return rows;
+    }
+
+    //getter for number of times a series was left without a row because of the budget
+    public long getSeriesSkipped() {
+        return seriesSkipped;
+    }
+}
@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Parses a product history file on a ForkJoinPool
+ * i.e. file is cut into chunks which always start right after a \n, every chunk is parsed and deduplicated
+ * by its own task and records of every chunk are handed over in file order without merging them, duplicates across
+ * chunks are left to the caller which goes through the records once anyway
+ */
+class ParallelHistoryLoader {
+
+    //more chunks than threads so that a slow chunk does not keep other threads idle
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    //chunks smaller than this are not worth a task of their own
+    private static final long MIN_CHUNK_SIZE = 1 << 16;
+
+    //a chunk is mapped in one go so it has to fit in a MappedByteBuffer
+    private static final long MAX_CHUNK_SIZE = 1 << 30;
+
+    //bytes read at a time while looking for the end of line at a chunk boundary
+    private static final int BOUNDARY_SCAN_SIZE = 4096;
+
+    private final FileChannel channel;
+    private final Predicate<Product> isAlreadyLoaded;
+
+    //set by the first task finding an invalid line so that remaining tasks can stop early
+    private final AtomicBoolean invalidInput = new AtomicBoolean(false);
+
+    //reason of the invalid line found first and number of valid rows parsed by all tasks
+    private final AtomicReference<RejectReason> rejectReason = new AtomicReference<>();
+    private final LongAdder rowsParsed = new LongAdder();
+
+    /**
+     * @param channel file to be parsed
+     * @param isAlreadyLoaded records for which this returns true are left out of the result, must be safe to call from many threads
+     */
+    ParallelHistoryLoader(FileChannel channel, Predicate<Product> isAlreadyLoaded) {
+        this.channel = channel;
+        this.isAlreadyLoaded = isAlreadyLoaded;
+    }
+
+    /**
+     * Function to parse whole file on given pool
+     * @param pool
+     * @return records of every chunk which are not loaded yet in file order, distinct within a chunk but not across
+     * chunks, null if any line is invalid
+     * @throws IOException
+     */
+    List<Set<Product>> load(ForkJoinPool pool) throws IOException {
+        long[] boundaries = chunkBoundaries(pool.getParallelism() * CHUNKS_PER_THREAD);
+        if(boundaries == null) return null;
+
+        //every task fills in the records of its own chunk, join makes them visible here
+        List<Set<Product>> chunkProducts = new ArrayList<>(Collections.nCopies(boundaries.length - 1, null));
+        try {
+            pool.invoke(new ChunkTask(boundaries, 0, boundaries.length - 1, chunkProducts));
+            return invalidInput.get() ? null : chunkProducts;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    //getter for number of valid rows parsed, rows of chunks skipped after an invalid line are not counted
+    long getRowsParsed() {
+        return rowsParsed.sum();
+    }
+
+    //getter for reason of the first invalid line found, null if every line was valid
+    RejectReason getRejectReason() {
+        return rejectReason.get();
+    }
+
+    /**
+     * Function to cut the file into roughly equal chunks, every boundary is moved forward to the start of next line
+     * @param chunks wanted number of chunks
+     * @return offsets where i-th chunk starts and the file size as last element, null if a line is too long to be mapped
+     * @throws IOException
+     */
+    long[] chunkBoundaries(int chunks) throws IOException {
+        long fileSize = channel.size();
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, fileSize / Math.max(chunks, 1) + 1));
+
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+
+        long position = 0;
+        while(position + chunkSize < fileSize) {
+            long next = nextLineStart(position + chunkSize, fileSize);
+
+            //a line longer than the largest chunk can not be mapped, rejected like the sequential parser does
+            if(next - position > MAX_CHUNK_SIZE) {
+                rejectReason.compareAndSet(null, RejectReason.LINE_TOO_LONG);
+                invalidInput.set(true);
+                return null;
+            }
+
+            if(next < fileSize) boundaries.add(next);
+            position = next;
+        }
+        boundaries.add(fileSize);
+
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    //offset right after the first \n found before position, or the file size if there is none
+    private long nextLineStart(long position, long fileSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+
+        for(long offset = position - 1; offset < fileSize; offset += BOUNDARY_SCAN_SIZE) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            for(int i = 0; i < read; i++) {
+                if(buffer.get(i) == '\n') return offset + i + 1;
+            }
+        }
+        return fileSize;
+    }
+
+    /**
+     * Task parsing chunks [from, to) of the file, splits itself in half until a single chunk is left
+     */
+    @SuppressWarnings("serial")     //a chunk task lives for one load only and is never serialized
+    private class ChunkTask extends RecursiveAction {
+        private final long[] boundaries;
+        private final int from;
+        private final int to;
+        private final List<Set<Product>> chunkProducts;
+
+        ChunkTask(long[] boundaries, int from, int to, List<Set<Product>> chunkProducts) {
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+            this.chunkProducts = chunkProducts;
+        }
+
+        @Override
+        protected void compute() {
+            if(invalidInput.get()) return;
+
+            //every chunk writes its own index only, so the list is never changed structurally
+            if(to - from == 1) {
+                chunkProducts.set(from, parseChunk(boundaries[from], boundaries[to]));
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkTask(boundaries, from, mid, chunkProducts), new ChunkTask(boundaries, mid, to, chunkProducts));
+        }
+
+        private Set<Product> parseChunk(long start, long end) {
+            Set<Product> products = new LinkedHashSet<>();
+
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+
+                ProductHistoryParser parser = new ProductHistoryParser();
+                boolean valid = parser.parse(buffer, 0, (int) (end - start), (epochDay, name, size, cost) -> {
+                    Product product = new Product(LocalDate.ofEpochDay(epochDay), name, size, cost);
+
+                    if(!isAlreadyLoaded.test(product)) {
+                        products.add(product);
+                    }
+                });
+
+                rowsParsed.add(parser.getRowsParsed());
+                if(!valid) {
+                    rejectReason.compareAndSet(null, parser.getRejectReason());
+                    invalidInput.set(true);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return products;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * Hash map split into a fixed number of parts by hash of the key, so a copy shares every part with the map it was
+ * copied from and only copies a part the first time it changes it i.e. a load adding milk records to a version
+ * with 100k names copies the part holding milk, about 400 names, instead of all 100k.
+ * The map copied from must not change anymore once copied, see CostOfLiving.copyForUpdate
+ * entries returned by iteration belong to parts which may be shared, they are read only.
+ */
+public class PartitionedMap<K, V> extends AbstractMap<K, V> {
+
+    //number of parts is 2^PART_BITS, copying a map copies this many references
+    private static final int PART_BITS = 8;
+    private static final int PARTS = 1 << PART_BITS;
+
+    //parts created on first put, null while no key of the part was added
+    private final HashMap<K, V>[] parts;
+
+    //parts this map may change, null when it owns every part i.e. it was not copied from another map
+    private final boolean[] owned;
+
+    private int size;
+
+    //constructor to create an empty map which owns all its parts
+    public PartitionedMap() {
+        parts = newParts();
+        owned = null;
+    }
+
+    /**
+     * Copy constructor, the copy can be changed without affecting given map, given map must not change anymore
+     * @param map
+     */
+    public PartitionedMap(PartitionedMap<K, V> map) {
+        parts = map.parts.clone();
+        owned = new boolean[PARTS];
+        size = map.size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> HashMap<K, V>[] newParts() {
+        return (HashMap<K, V>[]) new HashMap<?, ?>[PARTS];
+    }
+
+    //part of a key from the upper bits of its mixed hash, lower bits are left to the HashMap of the part
+    private static int partOf(Object key) {
+        return (Objects.hashCode(key) * 0x9E3779B9) >>> (Integer.SIZE - PART_BITS);
+    }
+
+    //part of given index this map is allowed to change, copied first if it is still shared
+    private HashMap<K, V> writablePart(int index) {
+        HashMap<K, V> part = parts[index];
+        if(part == null) {
+            part = new HashMap<>();
+        } else if(owned != null && !owned[index]) {
+            part = new HashMap<>(part);
+        } else {
+            return part;
+        }
+
+        parts[index] = part;
+        if(owned != null) owned[index] = true;
+        return part;
+    }
+
+    @Override
+    public V get(Object key) {
+        HashMap<K, V> part = parts[partOf(key)];
+        return part == null ? null : part.get(key);
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        HashMap<K, V> part = parts[partOf(key)];
+        return part == null ? defaultValue : part.getOrDefault(key, defaultValue);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        HashMap<K, V> part = parts[partOf(key)];
+        return part != null && part.containsKey(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        HashMap<K, V> part = writablePart(partOf(key));
+        int before = part.size();
+        V previous = part.put(key, value);
+        size += part.size() - before;
+        return previous;
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        HashMap<K, V> part = writablePart(partOf(key));
+        int before = part.size();
+        V value = part.compute(key, remappingFunction);
+        size += part.size() - before;
+        return value;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int index = partOf(key);
+        if(parts[index] == null || !parts[index].containsKey(key)) return null;
+
+        size--;
+        return writablePart(index).remove(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new Iterator<>() {
+                    private int nextPart = 0;
+                    private Iterator<Entry<K, V>> entries = Collections.emptyIterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        while(!entries.hasNext() && nextPart < PARTS) {
+                            HashMap<K, V> part = parts[nextPart++];
+                            if(part != null) entries = part.entrySet().iterator();
+                        }
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        if(!hasNext()) throw new NoSuchElementException();
+                        return entries.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.*;
+
+/**
+ * Finds price inversions between records of one product, i.e. pairs where the larger size costs more per unit
+ * than the smaller size by more than given tolerance percentage.
+ * Records are swept in increasing size while records of smaller sizes are kept ordered by per-unit cost,
+ * so for every record only the smaller records which really are inverted with it get visited,
+ * O(n log n + number of inversions) instead of comparing all pairs.
+ */
+public class PriceInversionFinder {
+
+    //callback receiving index of larger and smaller record of every inversion, indexes are the ones returned by add
+    public interface InversionHandler {
+        void accept(int larger, int smaller);
+    }
+
+    private float[] sizesInBaseUnit = new float[16];
+    private double[] perUnitCosts = new double[16];
+    private int count = 0;
+
+    /**
+     * Function to add a record of the product
+     * @param sizeInBaseUnit
+     * @param cost
+     * @return index of the record passed to InversionHandler
+     */
+    public int add(float sizeInBaseUnit, float cost) {
+        if(count == sizesInBaseUnit.length) {
+            sizesInBaseUnit = Arrays.copyOf(sizesInBaseUnit, count * 2);
+            perUnitCosts = Arrays.copyOf(perUnitCosts, count * 2);
+        }
+
+        sizesInBaseUnit[count] = sizeInBaseUnit;
+        //per unit cost is calculated in float same as comparing products one by one did
+        perUnitCosts[count] = cost/sizeInBaseUnit;
+        return count++;
+    }
+
+    //removing all records so the finder can be reused for next product
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Function to report every pair (larger, smaller) with larger size and per-unit cost higher than smaller one by more than tolerance
+     * @param tolerance percentage difference of per-unit cost that has to be exceeded
+     * @param handler
+     */
+    public void find(int tolerance, InversionHandler handler) {
+        //sorting by size, bits of a positive float compare the same way as the float does
+        long[] bySize = new long[count];
+        int sortable = 0;
+        for(int i = 0; i < count; i++) {
+            if(!Float.isNaN(sizesInBaseUnit[i])) {
+                bySize[sortable++] = ((long) Float.floatToIntBits(sizesInBaseUnit[i]) << 32) | i;
+            }
+        }
+        Arrays.sort(bySize, 0, sortable);
+
+        //records of sizes smaller than the group being processed, ordered by per-unit cost
+        TreeMap<Double, List<Integer>> smallerByPerUnitCost = new TreeMap<>();
+
+        int groupStart = 0;
+        while(groupStart < sortable) {
+            //records of exactly the same size are never compared with each other
+            int groupEnd = groupStart;
+            while(groupEnd < sortable && (bySize[groupEnd] >>> 32) == (bySize[groupStart] >>> 32)) groupEnd++;
+
+            for(int g = groupStart; g < groupEnd; g++) {
+                int larger = (int) bySize[g];
+                double perUnitCostOfLarger = perUnitCosts[larger];
+
+                //condition only gets harder as per-unit cost of smaller record grows, so stop at first miss
+                for(Map.Entry<Double, List<Integer>> entry: smallerByPerUnitCost.entrySet()) {
+                    double perUnitCostOfSmaller = entry.getKey();
+
+                    if(!(perUnitCostOfLarger > perUnitCostOfSmaller
+                            && (perUnitCostOfLarger-perUnitCostOfSmaller)/perUnitCostOfLarger*100 > tolerance)) break;
+
+                    for(int smaller: entry.getValue()) {
+                        handler.accept(larger, smaller);
+                    }
+                }
+            }
+
+            for(int g = groupStart; g < groupEnd; g++) {
+                int index = (int) bySize[g];
+                smallerByPerUnitCost.computeIfAbsent(perUnitCosts[index], k -> new ArrayList<>()).add(index);
+            }
+            groupStart = groupEnd;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Price history of one product in one base unit size kept in date order
+ * i.e. every record of milk 1000 ml sorted from oldest to latest, so "price as of a date" is a binary search
+ */
+public class PriceSeries {
+
+    //records sorted by date, records on the same date keep the order in which they were added
+    private List<Product> products = new ArrayList<>();
+
+    //records not created yet, i.e. still sitting in a snapshot file, created on first access
+    private volatile Supplier<List<Product>> pendingProducts;
+
+    //prices on the 1st of every month, null unless a MonthlyPriceTable built them, replaced as a whole on change
+    private volatile MonthlyPriceTable.Row monthlyPrices;
+
+    //constructor for an empty series
+    public PriceSeries() {
+    }
+
+    /**
+     * Copy constructor, the copy can be changed without affecting given series
+     * @param series
+     */
+    public PriceSeries(PriceSeries series) {
+        products.addAll(series.products());
+        monthlyPrices = series.monthlyPrices;
+    }
+
+    /**
+     * Constructor for a series whose records are only created once the series is used
+     * @param pendingProducts supplier of records already in date order, called at most once
+     */
+    PriceSeries(Supplier<List<Product>> pendingProducts) {
+        this.pendingProducts = pendingProducts;
+    }
+
+    //records of the series, created first if they are still pending
+    private List<Product> products() {
+        if(pendingProducts != null) createPendingProducts();
+        return products;
+    }
+
+    //synchronized as series of a published version can be used by many threads at the same time
+    private synchronized void createPendingProducts() {
+        if(pendingProducts == null) return;
+
+        products = new ArrayList<>(pendingProducts.get());
+        pendingProducts = null;
+    }
+
+    /**
+     * Function to add a single record at its position in date order
+     * @param product
+     * @return false if the same record is already present in the series
+     */
+    public boolean add(Product product) {
+        if(contains(product)) return false;
+
+        products().add(floorIndex(product.getDate()) + 1, product);
+        return true;
+    }
+
+    /**
+     * Function to add a batch of records, sorting once instead of inserting one by one
+     * caller is responsible for making sure the batch has no record already present in the series
+     * @param batch
+     */
+    public void addAll(Collection<Product> batch) {
+        List<Product> products = products();
+        products.addAll(batch);
+
+        //stable sort so records already present stay ahead of new ones on the same date
+        products.sort(Comparator.comparing(Product::getDate));
+    }
+
+    /**
+     * @param product
+     * @return true if a record equal to given product is present in the series
+     */
+    public boolean contains(Product product) {
+        List<Product> products = products();
+
+        //only records of the same date can be equal, so scan backwards from the last one on that date
+        for(int i = floorIndex(product.getDate()); i >= 0 && products.get(i).getDate().isEqual(product.getDate()); i--) {
+            if(products.get(i).equals(product)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param date
+     * @return index of the latest record on or before given date, -1 if there is none
+     */
+    public int floorIndex(LocalDate date) {
+        List<Product> products = products();
+        int low = 0;
+        int high = products.size();
+
+        //first index with date after given date
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(products.get(mid).getDate().isAfter(date)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * @param date
+     * @return index of the earliest record on or after given date, size() if there is none
+     */
+    public int ceilingIndex(LocalDate date) {
+        List<Product> products = products();
+        int low = 0;
+        int high = products.size();
+
+        //first index with date not before given date
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(products.get(mid).getDate().isBefore(date)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param date
+     * @return latest record on or before given date, null if there is none
+     */
+    public Product latestOnOrBefore(LocalDate date) {
+        int index = floorIndex(date);
+        return index < 0 ? null : products().get(index);
+    }
+
+    /**
+     * @param date
+     * @return earliest record on or after given date, null if there is none
+     */
+    public Product earliestOnOrAfter(LocalDate date) {
+        int index = ceilingIndex(date);
+        return index == products().size() ? null : products().get(index);
+    }
+
+    /**
+     * @param date
+     * @return read only view of records on or before given date in date order
+     */
+    public List<Product> onOrBefore(LocalDate date) {
+        return Collections.unmodifiableList(products().subList(0, floorIndex(date) + 1));
+    }
+
+    //getter for record at given index in date order
+    public Product get(int index) {
+        return products().get(index);
+    }
+
+    //number of records in the series
+    public int size() {
+        return products().size();
+    }
+
+    //getter for prices on the 1st of every month, null if series has no row in a MonthlyPriceTable
+    public MonthlyPriceTable.Row getMonthlyPrices() {
+        return monthlyPrices;
+    }
+
+    //setter used by MonthlyPriceTable only, row has to match the records of the series
+    void setMonthlyPrices(MonthlyPriceTable.Row monthlyPrices) {
+        this.monthlyPrices = monthlyPrices;
+    }
+
+    //getter for all records in date order
+    public List<Product> getProducts() {
+        return Collections.unmodifiableList(products());
+    }
+}
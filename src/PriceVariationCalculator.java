@@ -1,11 +1,52 @@
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.YearMonth;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 
 
 //abstract class which will calculate inflation or shrinkflation
 public interface PriceVariationCalculator {
-    public abstract Map<String, Float> calculatePriceIncrease(Map<Float, Set<Product>> productWithDifferentSize, LocalDate startDate, LocalDate endDate);
+
+    //callback receiving every price increase along with the record whose size it is reported for
+    interface PriceIncreaseHandler {
+        void accept(Product product, float priceIncrease);
+    }
+
+    /**
+     * Function to find price increase of one size from its summary, summaries are shared with other calculators
+     * see PriceVariationPipeline, only sizes with a record in the time period are handed over
+     * @param window
+     * @param handler a size may be reported more than once, the last one is the one that counts
+     */
+    void calculatePriceIncrease(PriceWindowSummary window, PriceIncreaseHandler handler);
+
+    /**
+     * Function to find price increase of every size of one product, without building any key
+     * @param productWithDifferentSize
+     * @param startDate
+     * @param endDate
+     * @param handler a size may be reported more than once, the last one is the one that counts
+     */
+    default void calculatePriceIncrease(Map<Float, PriceSeries> productWithDifferentSize, LocalDate startDate, LocalDate endDate, PriceIncreaseHandler handler) {
+        new PriceVariationPipeline(getSizesByMonth()).register(this)
+                .calculatePriceIncrease(productWithDifferentSize, startDate, endDate, (calculator, product, priceIncrease) -> handler.accept(product, priceIncrease));
+    }
+
+    /**
+     * @param productWithDifferentSize
+     * @param startDate
+     * @param endDate
+     * @return Map with key as productName and size separated by space and value as price increase
+     */
+    default Map<String, Float> calculatePriceIncrease(Map<Float, PriceSeries> productWithDifferentSize, LocalDate startDate, LocalDate endDate) {
+        Map<String, Float> productExhibitingPriceIncrease = new HashMap<>();
+        calculatePriceIncrease(productWithDifferentSize, startDate, endDate,
+                (product, priceIncrease) -> productExhibitingPriceIncrease.put(product.getName() + " " + product.getOriginalSize(), priceIncrease));
+        return productExhibitingPriceIncrease;
+    }
+
+    //sizes grouped by product and month for summaries built by this calculator alone, null if it does not need them
+    default Map<String, Map<YearMonth, float[]>> getSizesByMonth() {
+        return null;
+    }
 }
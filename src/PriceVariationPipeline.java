@@ -0,0 +1,73 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs every registered PriceVariationCalculator over the sizes of a product, each size is summarized once
+ * (see PriceWindowSummary) and that summary is handed to all calculators, so registering another calculator
+ * does not look through the series again. Keeps no state besides the calculators, one pipeline can be shared by
+ * every thread evaluating products of the same version.
+ */
+public class PriceVariationPipeline {
+
+    //callback receiving every price increase along with index of the calculator that found it, in registration order
+    public interface PriceIncreaseHandler {
+        void accept(int calculator, Product product, float priceIncrease);
+    }
+
+    private final Map<String, Map<YearMonth, float[]>> sizesByMonth;
+    private final List<PriceVariationCalculator> calculators = new ArrayList<>();
+
+    /**
+     * @param sizesByMonth sizes grouped by product and month, used by summaries for same month introductions
+     */
+    public PriceVariationPipeline(Map<String, Map<YearMonth, float[]>> sizesByMonth) {
+        this.sizesByMonth = sizesByMonth;
+    }
+
+    /**
+     * Function to add a calculator, calculators run in the order they were registered
+     * @param calculator
+     * @return this pipeline
+     */
+    public PriceVariationPipeline register(PriceVariationCalculator calculator) {
+        if(calculator == null) throw new IllegalArgumentException("Invalid calculator");
+        calculators.add(calculator);
+        return this;
+    }
+
+    /**
+     * Function to find price increases of every size of one product with every registered calculator
+     * calculators are run one after another over the same summaries, so a later calculator reporting the same size
+     * comes after an earlier one same as running the calculators one by one
+     * @param productWithDifferentSize
+     * @param startDate
+     * @param endDate
+     * @param handler
+     */
+    public void calculatePriceIncrease(Map<Float, PriceSeries> productWithDifferentSize, LocalDate startDate, LocalDate endDate, PriceIncreaseHandler handler) {
+        //a product has a few sizes, summaries of sizes not in the time period are left out right away
+        PriceWindowSummary[] windows = new PriceWindowSummary[productWithDifferentSize.size()];
+        int inWindow = 0;
+        for(PriceSeries series: productWithDifferentSize.values()) {
+            PriceWindowSummary window = PriceWindowSummary.of(series, startDate, endDate, productWithDifferentSize, sizesByMonth);
+            if(window.isInWindow()) windows[inWindow++] = window;
+        }
+
+        for(int calculator = 0; calculator < calculators.size(); calculator++) {
+            int index = calculator;
+            PriceVariationCalculator.PriceIncreaseHandler calculatorHandler = (product, priceIncrease) -> handler.accept(index, product, priceIncrease);
+
+            for(int i = 0; i < inWindow; i++) {
+                calculators.get(calculator).calculatePriceIncrease(windows[i], calculatorHandler);
+            }
+        }
+    }
+
+    //number of calculators registered till now
+    public int getCalculatorCount() {
+        return calculators.size();
+    }
+}
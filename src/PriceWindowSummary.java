@@ -0,0 +1,104 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What every PriceVariationCalculator needs to know about one size of a product within a time period, looked up
+ * from its series once and shared by all calculators i.e. first and last record of the period, whether the size
+ * got discontinued by its end and which records of the same product were introduced in the month it got discontinued
+ */
+public class PriceWindowSummary {
+
+    private final Product first;
+    private final Product last;
+    private final LocalDate endDate;
+
+    //every size of the product and sizes grouped by month, only needed once a calculator asks for same month introductions
+    private final Map<Float, PriceSeries> sizes;
+    private final Map<String, Map<YearMonth, float[]>> sizesByMonth;
+    private List<Product> sameMonthIntroductions;
+
+    private PriceWindowSummary(Product first, Product last, LocalDate endDate, Map<Float, PriceSeries> sizes, Map<String, Map<YearMonth, float[]>> sizesByMonth) {
+        this.first = first;
+        this.last = last;
+        this.endDate = endDate;
+        this.sizes = sizes;
+        this.sizesByMonth = sizesByMonth;
+    }
+
+    /**
+     * Function to summarize one series, two binary searches no matter how many calculators use the summary
+     * @param series
+     * @param startDate
+     * @param endDate
+     * @param sizes every size of the product, same month introductions are read from their series
+     * @param sizesByMonth sizes grouped by month for same month introductions, null if no calculator needs them
+     * @return summary of the series between given dates
+     */
+    public static PriceWindowSummary of(PriceSeries series, LocalDate startDate, LocalDate endDate, Map<Float, PriceSeries> sizes, Map<String, Map<YearMonth, float[]>> sizesByMonth) {
+        Product first = series.earliestOnOrAfter(startDate);
+
+        //first record is after the time period, so there is nothing in it
+        if(first != null && first.getDate().isAfter(endDate)) first = null;
+
+        Product last = first == null ? null : series.latestOnOrBefore(endDate);
+        return new PriceWindowSummary(first, last, endDate, sizes, sizesByMonth);
+    }
+
+    //true if size has at least one record in the time period, every other getter needs it
+    public boolean isInWindow() {
+        return first != null;
+    }
+
+    //getter for earliest record on or after start date, null if size is not in the time period
+    public Product getFirst() {
+        return first;
+    }
+
+    //getter for latest record on or before end date, null if size is not in the time period
+    public Product getLast() {
+        return last;
+    }
+
+    //true if latest record in the time period has cost 0 i.e. size was discontinued
+    public boolean isDiscontinued() {
+        return first != null && last.getCost() == 0;
+    }
+
+    /**
+     * Function to get records of the same product introduced in the month size got discontinued, on or after the
+     * day it got discontinued and not after end date, looked up once and shared by every calculator asking for them
+     * @return records size by size in the order sizes first got a record in that month, every size in date order,
+     * empty if size was not discontinued
+     */
+    public List<Product> getSameMonthIntroductions() {
+        if(sameMonthIntroductions == null) {
+            sameMonthIntroductions = findSameMonthIntroductions();
+        }
+        return sameMonthIntroductions;
+    }
+
+    private List<Product> findSameMonthIntroductions() {
+        if(!isDiscontinued() || sizesByMonth == null) return Collections.emptyList();
+
+        YearMonth month = YearMonth.from(last.getDate());
+        float[] sizesInTheSameMonth = sizesByMonth.getOrDefault(last.getName(), Collections.emptyMap()).get(month);
+        if(sizesInTheSameMonth == null) return Collections.emptyList();
+
+        //records of each size from the day it got discontinued till end date or end of that month, whichever is first
+        LocalDate lastDay = endDate.isBefore(month.atEndOfMonth()) ? endDate : month.atEndOfMonth();
+        List<Product> introductions = new ArrayList<>();
+        for(float size: sizesInTheSameMonth) {
+            PriceSeries series = sizes.get(size);
+            if(series == null) continue;
+
+            for(int index = series.ceilingIndex(last.getDate()); index < series.size() && !series.get(index).getDate().isAfter(lastDay); index++) {
+                introductions.add(series.get(index));
+            }
+        }
+        return introductions;
+    }
+}
@@ -26,7 +26,28 @@ public class Product {
 
         date = theDate;
         name = theName.toLowerCase();           //converting every letter to lower case
-        size = new ProductSize(theSize);        //size will be stored as ProductSize object
+        size = ProductSize.of(theSize);         //size will be stored as ProductSize object, shared by every record with the same size
+        cost = theCost;
+        sizeInBaseUnit = size.toBaseUnit();
+    }
+
+    /**
+     * Function overloading of constructor to create product from an already parsed size
+     * i.e. when parser shares one ProductSize object between all records with same size
+     * @param theDate
+     * @param theName
+     * @param theSize
+     * @param theCost
+     */
+    public Product(LocalDate theDate, String theName, ProductSize theSize, float theCost) {
+
+        if(theName.isBlank() || theName.isEmpty() || theCost<0 || theSize == null) {
+            throw new IllegalArgumentException("Invalid product input");
+        }
+
+        date = theDate;
+        name = theName.toLowerCase();
+        size = theSize;
         cost = theCost;
         sizeInBaseUnit = size.toBaseUnit();
     }
@@ -43,7 +64,7 @@ public class Product {
         }
 
         name = theName;                 //converting every letter to lower case
-        size = new ProductSize(theSize);
+        size = ProductSize.of(theSize);
         sizeInBaseUnit = size.toBaseUnit();
     }
 
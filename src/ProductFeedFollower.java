@@ -0,0 +1,347 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows a product history file which keeps growing, i.e. a feed scrapers append price lines to all day
+ * Byte offset of the first line not loaded yet is remembered, every poll loads only complete lines appended after it,
+ * in batches of at most maxBatchLines and maxBatchBytes, with the same validation and deduplication as loadProductHistory.
+ * A batch with fewer lines is held back until its first line waited maxBatchDelay, so a larger delay gives fewer
+ * and larger batches (throughput) and a smaller one gets lines loaded sooner (freshness).
+ * Batches are loaded leniently (see CheckpointedHistoryIngest), an invalid line is skipped and handed to the reject
+ * handler with its offset in the file, every other line of its batch is loaded. A line longer than maxBatchBytes is
+ * rejected as LINE_TOO_LONG once it is complete.
+ * A file shorter than the offset, or a different file under the same path (other file key, or other creation time
+ * where the file system has no file keys), was truncated or replaced and is followed again from its start, records
+ * loaded before are deduplicated. A follower resuming from an offset takes the file it finds as the one the offset
+ * belongs to.
+ */
+public class ProductFeedFollower implements AutoCloseable {
+
+    //bytes read at a time while looking for complete lines
+    private static final int READ_SIZE = 1 << 16;
+
+    //a batch is held in one array so it has to fit in an int length
+    private static final int MAX_BATCH_BYTES = 1 << 30;
+
+    //bytes of a line longer than a batch handed to the reject handler, rest of it is left out
+    private static final int MAX_REJECTED_LINE_BYTES = 4096;
+
+    /**
+     * Receives every line of the feed which was not loaded
+     */
+    public interface RejectHandler {
+        void reject(long offset, String line, RejectReason reason);
+    }
+
+    //loads valid lines between from and to of a buffer, invalid ones go to rejectHandler, returns total number of products
+    private interface LenientLoad {
+        int load(ByteBuffer buffer, int from, int to, ProductHistoryParser.RejectHandler rejectHandler);
+    }
+
+    private final Path feed;
+    private final LenientLoad load;
+
+    private volatile int maxBatchLines = 10000;
+    private volatile int maxBatchBytes = 64 << 20;
+    private volatile RejectHandler rejectHandler;
+    private volatile long maxBatchDelayMillis = 200;
+    private volatile long pollIntervalMillis = 100;
+
+    //offset right after the last line loaded or rejected
+    private volatile long offset;
+
+    //time complete lines not loaded yet were first seen, -1 if there are none
+    private long pendingSince = -1;
+
+    //file key, or creation time if there is no key, of the file offset belongs to, null until the first poll
+    private Object fileIdentity;
+
+    //polls of the thread and of callers run one at a time, close holds the monitor of this object while waiting for the thread
+    private final Object pollLock = new Object();
+
+    private final AtomicLong linesLoaded = new AtomicLong();
+    private final AtomicLong linesRejected = new AtomicLong();
+    private final AtomicLong batchesLoaded = new AtomicLong();
+    private volatile int productCount;
+
+    private ScheduledExecutorService poller;
+
+    /**
+     * Constructor to follow a feed into a thread safe CostOfLiving, queries keep running while batches are loaded
+     * @param feed
+     * @param costOfLiving
+     * @param offset byte offset to start at, i.e. getOffset of an earlier follower, 0 for the start of the file
+     */
+    public ProductFeedFollower(Path feed, ConcurrentCostOfLiving costOfLiving, long offset) {
+        this(feed, costOfLiving::loadProductHistoryLenient, offset);
+    }
+
+    /**
+     * Constructor to follow a feed into a CostOfLiving, which is not thread safe so it must not be queried
+     * while a started follower could be loading, calling poll from the thread using the object is always safe
+     * @param feed
+     * @param costOfLiving
+     * @param offset byte offset to start at, 0 for the start of the file
+     */
+    public ProductFeedFollower(Path feed, CostOfLiving costOfLiving, long offset) {
+        this(feed, costOfLiving::loadProductHistoryLenient, offset);
+    }
+
+    private ProductFeedFollower(Path feed, LenientLoad load, long offset) {
+        if(feed == null || offset < 0) throw new IllegalArgumentException("Invalid feed or offset");
+
+        this.feed = feed;
+        this.load = load;
+        this.offset = offset;
+    }
+
+    //setter for largest number of lines loaded as one batch
+    public void setMaxBatchLines(int maxBatchLines) {
+        if(maxBatchLines <= 0) throw new IllegalArgumentException("Invalid number of lines");
+        this.maxBatchLines = maxBatchLines;
+    }
+
+    //setter for largest number of bytes loaded as one batch, also the longest line which can be loaded
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        if(maxBatchBytes <= 0 || maxBatchBytes > MAX_BATCH_BYTES) throw new IllegalArgumentException("Invalid batch size");
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    //setter for handler receiving every line which was not loaded, null to only count them
+    public void setRejectHandler(RejectHandler rejectHandler) {
+        this.rejectHandler = rejectHandler;
+    }
+
+    //setter for longest time lines are held back waiting for their batch to fill up, 0 loads them on next poll
+    public void setMaxBatchDelay(long maxBatchDelay, TimeUnit unit) {
+        if(maxBatchDelay < 0 || unit == null) throw new IllegalArgumentException("Invalid delay");
+        this.maxBatchDelayMillis = unit.toMillis(maxBatchDelay);
+    }
+
+    //setter for time between polls of a started follower, takes effect when it is started
+    public void setPollInterval(long pollInterval, TimeUnit unit) {
+        if(pollInterval <= 0 || unit == null) throw new IllegalArgumentException("Invalid interval");
+        this.pollIntervalMillis = Math.max(1, unit.toMillis(pollInterval));
+    }
+
+    //function to start polling the feed on a thread of its own
+    public synchronized void start() {
+        if(poller != null) return;
+
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "feed-follower-" + feed.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        //a feed which can not be read right now, i.e. not created yet, is simply polled again
+        poller.scheduleWithFixedDelay(this::poll, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //function to stop polling, a batch being loaded is finished first
+    @Override
+    public synchronized void close() {
+        if(poller == null) return;
+
+        poller.shutdown();
+        try {
+            poller.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        poller = null;
+    }
+
+    /**
+     * Function to load complete lines appended since last poll, lines of a batch which is not full stay in the
+     * file until the batch waited long enough
+     * @return number of batches loaded and lines too long for a batch skipped, -1 if feed could not be read
+     */
+    public int poll() {
+        synchronized(pollLock) {
+            try(FileChannel channel = FileChannel.open(feed, StandardOpenOption.READ)) {
+                BasicFileAttributes attributes = Files.readAttributes(feed, BasicFileAttributes.class);
+                Object identity = attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+                long fileSize = channel.size();
+
+                if(fileSize < offset || (fileIdentity != null && !Objects.equals(fileIdentity, identity))) {
+                    offset = 0;
+                    pendingSince = -1;
+                }
+                fileIdentity = identity;
+
+                int batches = 0;
+                while(true) {
+                    Batch batch = readBatch(channel, fileSize);
+                    if(batch.lines == 0) {
+                        //no complete line fits a batch, the line at offset is too long to be loaded
+                        if(batch.full && skipLongLine(channel, fileSize)) {
+                            batches++;
+                            continue;
+                        }
+                        pendingSince = -1;
+                        return batches;
+                    }
+
+                    long now = System.nanoTime();
+                    if(pendingSince == -1) pendingSince = now;
+                    if(!batch.full && now - pendingSince < TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis)) return batches;
+
+                    loadBatch(batch);
+                    offset = batch.end;
+                    pendingSince = -1;
+                    batches++;
+                }
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Function to read complete lines starting at offset, until maxBatchLines lines, maxBatchBytes bytes or the end of file
+     * @param channel
+     * @param fileSize size of file when poll started, anything appended later waits for next poll
+     * @return lines read, a line without \n at the end is still being written and is left out
+     * @throws IOException
+     */
+    private Batch readBatch(FileChannel channel, long fileSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int lines = 0;
+        long end = offset;
+        int limit = maxBatchLines;
+
+        //nothing past maxBatchBytes is read, so a line still being written is never held in memory beyond it
+        long batchEnd = Math.min(fileSize, offset + maxBatchBytes);
+        boolean full = batchEnd - offset == maxBatchBytes;
+
+        for(long position = offset; position < batchEnd && lines < limit; ) {
+            buffer.clear();
+            buffer.limit((int) Math.min(READ_SIZE, batchEnd - position));
+            int read = channel.read(buffer, position);
+            if(read <= 0) break;
+
+            int consumed = 0;
+            for(int i = 0; i < read && lines < limit; i++) {
+                if(buffer.get(i) == '\n') {
+                    lines++;
+                    consumed = i + 1;
+                }
+            }
+
+            //bytes after the last complete line are kept only if more of the line can still be read
+            bytes.write(buffer.array(), 0, lines < limit ? read : consumed);
+            position += read;
+            if(consumed > 0) end = position - read + consumed;
+        }
+
+        return new Batch(bytes.toByteArray(), (int) (end - offset), lines, end, full || lines == limit);
+    }
+
+    /**
+     * Function to reject the line at offset which does not fit a batch, once it is complete
+     * @param channel
+     * @param fileSize
+     * @return true if the line was complete and offset moved after it
+     * @throws IOException
+     */
+    private boolean skipLongLine(FileChannel channel, long fileSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+
+        for(long position = offset + maxBatchBytes; position < fileSize; ) {
+            buffer.clear();
+            buffer.limit((int) Math.min(READ_SIZE, fileSize - position));
+            int read = channel.read(buffer, position);
+            if(read <= 0) break;
+
+            for(int i = 0; i < read; i++) {
+                if(buffer.get(i) == '\n') {
+                    ByteBuffer start = ByteBuffer.allocate(Math.min(maxBatchBytes, MAX_REJECTED_LINE_BYTES));
+                    channel.read(start, offset);
+                    reject(offset, new String(start.array(), 0, start.position(), StandardCharsets.UTF_8), RejectReason.LINE_TOO_LONG);
+
+                    offset = position + i + 1;
+                    pendingSince = -1;
+                    return true;
+                }
+            }
+            position += read;
+        }
+        return false;
+    }
+
+    private void loadBatch(Batch batch) {
+        long batchOffset = offset;
+        long rejectedBefore = linesRejected.get();
+
+        productCount = load.load(ByteBuffer.wrap(batch.bytes, 0, batch.length), 0, batch.length,
+                (lineOffset, line, reason) -> reject(batchOffset + lineOffset, line, reason));
+        batchesLoaded.incrementAndGet();
+        linesLoaded.addAndGet(batch.lines - (linesRejected.get() - rejectedBefore));
+    }
+
+    private void reject(long lineOffset, String line, RejectReason reason) {
+        linesRejected.incrementAndGet();
+
+        RejectHandler handler = rejectHandler;
+        try {
+            if(handler != null) handler.reject(lineOffset, line, reason);
+        } catch (RuntimeException e) {
+            //a failing handler must not stop the feed, the line is counted as rejected anyway
+        }
+    }
+
+    //getter for offset right after the last line loaded or rejected, a new follower can resume from it
+    public long getOffset() {
+        return offset;
+    }
+
+    //getter for lines of loaded batches which were not rejected, including blank lines and duplicates
+    public long getLinesLoaded() {
+        return linesLoaded.get();
+    }
+
+    //getter for lines which were not loaded, every one of them went to the reject handler
+    public long getLinesRejected() {
+        return linesRejected.get();
+    }
+
+    public long getBatchesLoaded() {
+        return batchesLoaded.get();
+    }
+
+    //getter for total number of products returned by the last loaded batch
+    public int getProductCount() {
+        return productCount;
+    }
+
+    //complete lines read from the feed, end is the offset right after them, full if no more lines fit the batch
+    private static class Batch {
+        private final byte[] bytes;
+        private final int length;
+        private final int lines;
+        private final long end;
+        private final boolean full;
+
+        Batch(byte[] bytes, int length, int lines, long end, boolean full) {
+            this.bytes = bytes;
+            this.length = length;
+            this.lines = lines;
+            this.end = end;
+            this.full = full;
+        }
+    }
+}
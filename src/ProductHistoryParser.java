@@ -0,0 +1,419 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parser for product history lines (date, name, size and cost separated by tab) which works directly on bytes
+ * i.e. canonical rows like "2023/10/11\tcookies\t1000 g\t2" are parsed without creating any intermediate String,
+ * names and sizes are resolved through caches keyed by their bytes. Anything unusual is handed over to the same
+ * String based parsing loadProductHistory uses, so validation rules stay exactly the same.
+ */
+public class ProductHistoryParser {
+
+    //callback receiving every valid row in the order it appears in the input
+    public interface RecordHandler {
+        void accept(int epochDay, String name, ProductSize size, float cost);
+    }
+
+    //callback receiving every invalid line of a lenient parse, offset is where the line starts in the buffer
+    public interface RejectHandler {
+        void reject(int offset, String line, RejectReason reason);
+    }
+
+    //number of days from 0000/01/01 to 1970/01/01, same constant as used by LocalDate
+    private static final int DAYS_0000_TO_1970 = 719528;
+
+    //largest window mapped at once, a MappedByteBuffer can not be larger than Integer.MAX_VALUE bytes
+    private static final int MAX_MAPPED_WINDOW = 1 << 30;
+
+    //costs with an integral part up to 2^24 and at most 10 decimals are exactly representable as float operands,
+    //so dividing them in double and rounding to float gives the same result as Float.parseFloat
+    private static final long MAX_FAST_MANTISSA = 1L << 24;
+    private static final int MAX_FAST_DECIMALS = 10;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10};
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+
+    //caches of already seen names (stored lower case) and sizes keyed by their raw bytes
+    private final ByteKeyCache<String> nameCache = new ByteKeyCache<>();
+    private final ByteKeyCache<ProductSize> sizeCache = new ByteKeyCache<>();
+
+    //start and end offset of the fields of the line being parsed
+    private final int[] fieldStart = new int[CostOfLiving.TOTAL_FIELDS_IN_PRODUCT_LINE];
+    private final int[] fieldEnd = new int[CostOfLiving.TOTAL_FIELDS_IN_PRODUCT_LINE];
+
+    //holder for cost parsed by parseCost
+    private float parsedCost;
+
+    //number of valid rows handed over to the handler and reason parsing stopped at, null if nothing was invalid
+    private long rowsParsed;
+    private RejectReason rejectReason;
+
+    //number of invalid lines skipped by lenient parsing
+    private long rowsRejected;
+
+    /**
+     * Function to parse a whole file by memory mapping it window by window
+     * @param channel
+     * @param handler
+     * @return false as soon as a line is invalid, true if every line was valid
+     * @throws IOException
+     */
+    public boolean parse(FileChannel channel, RecordHandler handler) throws IOException {
+        long position = 0;
+        long fileSize = channel.size();
+
+        while(position < fileSize) {
+            int length = (int) Math.min(MAX_MAPPED_WINDOW, fileSize - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            //last window takes everything, other windows stop after their last complete line
+            int end = position + length == fileSize ? length : lineAlignedEnd(buffer, length);
+
+            //a single line larger than the window can not be parsed
+            if(end == 0) return reject(RejectReason.LINE_TOO_LONG);
+
+            if(!parse(buffer, 0, end, handler)) return false;
+
+            position += end;
+        }
+        return true;
+    }
+
+    /**
+     * Function to parse all lines between given offsets of the buffer
+     * @param buffer
+     * @param from offset of first byte of the first line
+     * @param to offset after last byte of the last line
+     * @param handler
+     * @return false as soon as a line is invalid, true if every line was valid
+     */
+    public boolean parse(ByteBuffer buffer, int from, int to, RecordHandler handler) {
+        int lineStart = from;
+
+        while(lineStart < to) {
+            //looking for end of line, \n, \r and \r\n are all accepted same as BufferedReader.readLine
+            int lineEnd = lineStart;
+            while(lineEnd < to && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r') lineEnd++;
+
+            if(!parseLine(buffer, lineStart, lineEnd, handler)) return false;
+
+            lineStart = lineEnd + 1;
+            if(lineEnd + 1 < to && buffer.get(lineEnd) == '\r' && buffer.get(lineEnd + 1) == '\n') lineStart++;
+        }
+        return true;
+    }
+
+    /**
+     * Function to parse all lines between given offsets of the buffer, invalid lines are handed over to rejectHandler
+     * and parsing goes on with the next line, validation is the same as parse
+     * @param buffer
+     * @param from offset of first byte of the first line
+     * @param to offset after last byte of the last line
+     * @param handler
+     * @param rejectHandler
+     */
+    public void parseLenient(ByteBuffer buffer, int from, int to, RecordHandler handler, RejectHandler rejectHandler) {
+        int lineStart = from;
+
+        while(lineStart < to) {
+            int lineEnd = lineStart;
+            while(lineEnd < to && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r') lineEnd++;
+
+            if(!parseLine(buffer, lineStart, lineEnd, handler)) {
+                rowsRejected++;
+                rejectHandler.reject(lineStart, string(buffer, lineStart, lineEnd), rejectReason);
+            }
+
+            lineStart = lineEnd + 1;
+            if(lineEnd + 1 < to && buffer.get(lineEnd) == '\r' && buffer.get(lineEnd + 1) == '\n') lineStart++;
+        }
+    }
+
+    /**
+     * @param buffer
+     * @param length
+     * @return offset right after the last \n in first length bytes of buffer, 0 if there is none
+     */
+    static int lineAlignedEnd(ByteBuffer buffer, int length) {
+        int end = length;
+        while(end > 0 && buffer.get(end - 1) != '\n') end--;
+        return end;
+    }
+
+    private boolean parseLine(ByteBuffer buffer, int start, int end, RecordHandler handler) {
+        if(isBlank(buffer, start, end)) return true;
+
+        //splitting with tab, same as String.split trailing empty fields are dropped
+        int fields = 0;
+        int fieldBegin = start;
+        for(int i = start; i <= end; i++) {
+            if(i == end || buffer.get(i) == '\t') {
+                if(fields < CostOfLiving.TOTAL_FIELDS_IN_PRODUCT_LINE) {
+                    fieldStart[fields] = fieldBegin;
+                    fieldEnd[fields] = i;
+                    fields++;
+                } else if(i > fieldBegin) {
+                    //any non-empty field after the expected ones means a wrong number of fields
+                    return reject(RejectReason.WRONG_FIELD_COUNT);
+                }
+                fieldBegin = i + 1;
+            }
+        }
+
+        //trailing empty fields are not counted by String.split
+        while(fields > 0 && fieldStart[fields - 1] == fieldEnd[fields - 1]) fields--;
+
+        if(fields != CostOfLiving.TOTAL_FIELDS_IN_PRODUCT_LINE) return reject(RejectReason.WRONG_FIELD_COUNT);
+
+        int epochDay = parseDate(buffer, fieldStart[0], fieldEnd[0]);
+        if(epochDay == Integer.MIN_VALUE) return reject(RejectReason.INVALID_DATE);
+
+        String name = parseName(buffer, fieldStart[1], fieldEnd[1]);
+        if(name == null) return reject(RejectReason.INVALID_NAME);
+
+        ProductSize size = parseSize(buffer, fieldStart[2], fieldEnd[2]);
+        if(size == null) return reject(RejectReason.INVALID_SIZE);
+
+        if(!parseCost(buffer, fieldStart[3], fieldEnd[3])) return reject(RejectReason.INVALID_COST);
+
+        handler.accept(epochDay, name, size, parsedCost);
+        rowsParsed++;
+        return true;
+    }
+
+    //remembering why parsing stopped, always false so it can be returned straight away
+    private boolean reject(RejectReason reason) {
+        rejectReason = reason;
+        return false;
+    }
+
+    //getter for number of valid rows parsed till now
+    public long getRowsParsed() {
+        return rowsParsed;
+    }
+
+    //getter for reason of the invalid line parsing stopped at, null if every line was valid
+    public RejectReason getRejectReason() {
+        return rejectReason;
+    }
+
+    //getter for number of invalid lines skipped by parseLenient till now
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    //same as String.isBlank for ascii, any other byte makes line non-blank
+    private static boolean isBlank(ByteBuffer buffer, int start, int end) {
+        for(int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if(b != ' ' && b != '\t' && b != 0x0B && b != '\f' && (b < 0x1C || b > 0x1F)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Function to parse yyyy/MM/dd into epoch day
+     * @return epoch day, Integer.MIN_VALUE if date is invalid
+     */
+    private static int parseDate(ByteBuffer buffer, int start, int end) {
+        if(end - start == 10 && buffer.get(start + 4) == '/' && buffer.get(start + 7) == '/') {
+            int year = digits(buffer, start, start + 4);
+            int month = digits(buffer, start + 5, start + 7);
+            int day = digits(buffer, start + 8, start + 10);
+
+            if(year > 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31) {
+                return toEpochDay(year, month, day);
+            }
+        }
+
+        //anything not in canonical form is left to the formatter
+        try {
+            return (int) LocalDate.parse(string(buffer, start, end), DATE_FORMATTER).toEpochDay();
+        } catch (Exception e) {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    //value of ascii digits between given offsets, -1 if any byte is not a digit
+    private static int digits(ByteBuffer buffer, int start, int end) {
+        int value = 0;
+        for(int i = start; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if(digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Function to convert date into epoch day, day of month beyond the length of month is moved to its last day
+     * same as the formatter does with its default resolver style
+     */
+    static int toEpochDay(int year, int month, int day) {
+        boolean leapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        int lengthOfMonth = month == 2 ? (leapYear ? 29 : 28) : (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+        day = Math.min(day, lengthOfMonth);
+
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if(month > 2) {
+            total--;
+            if(!leapYear) total--;
+        }
+        return (int) (total - DAYS_0000_TO_1970);
+    }
+
+    /**
+     * @return name in lower case, null if name is blank
+     */
+    private String parseName(ByteBuffer buffer, int start, int end) {
+        int hash = ByteKeyCache.hash(buffer, start, end);
+        String name = nameCache.get(buffer, start, end, hash);
+
+        if(name == null) {
+            name = string(buffer, start, end);
+            if(name.isBlank()) return null;
+
+            name = name.toLowerCase();
+            nameCache.put(buffer, start, end, hash, name);
+        }
+        return name;
+    }
+
+    /**
+     * @return size, null if size is invalid
+     */
+    private ProductSize parseSize(ByteBuffer buffer, int start, int end) {
+        int hash = ByteKeyCache.hash(buffer, start, end);
+        ProductSize size = sizeCache.get(buffer, start, end, hash);
+
+        if(size == null) {
+            String sizeString = string(buffer, start, end);
+            if(sizeString.isBlank()) return null;
+
+            try {
+                size = ProductSize.of(sizeString);
+            } catch (Exception e) {
+                return null;
+            }
+            sizeCache.put(buffer, start, end, hash, size);
+        }
+        return size;
+    }
+
+    /**
+     * Function to parse non-negative decimal cost into parsedCost
+     * @return false if cost is invalid or negative
+     */
+    private boolean parseCost(ByteBuffer buffer, int start, int end) {
+        long mantissa = 0;
+        int decimals = -1;
+        boolean fastPath = end > start;
+
+        for(int i = start; i < end && fastPath; i++) {
+            byte b = buffer.get(i);
+            if(b == '.' && decimals < 0 && i > start && i < end - 1) {
+                decimals = 0;
+            } else if(b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                if(decimals >= 0) decimals++;
+                fastPath = mantissa <= MAX_FAST_MANTISSA && decimals <= MAX_FAST_DECIMALS;
+            } else {
+                fastPath = false;
+            }
+        }
+
+        if(fastPath) {
+            parsedCost = (float) (mantissa / POWERS_OF_TEN[Math.max(decimals, 0)]);
+            return true;
+        }
+
+        //exponents, signs, surrounding whitespace and long numbers are left to Float.parseFloat
+        try {
+            parsedCost = Float.parseFloat(string(buffer, start, end));
+        } catch (Exception e) {
+            return false;
+        }
+        return !(parsedCost < 0);
+    }
+
+    private static String string(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Small open addressing hash table from byte sequences to values, used so that a repeated name or size
+     * can be looked up straight from the buffer without building a String for it
+     */
+    private static class ByteKeyCache<V> {
+        private byte[][] keys = new byte[64][];
+        private Object[] values = new Object[64];
+        private int[] hashes = new int[64];
+        private int count = 0;
+
+        static int hash(ByteBuffer buffer, int start, int end) {
+            int hash = 1;
+            for(int i = start; i < end; i++) hash = 31 * hash + buffer.get(i);
+            return hash;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(ByteBuffer buffer, int start, int end, int hash) {
+            int mask = keys.length - 1;
+            for(int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                if(hashes[slot] == hash && matches(keys[slot], buffer, start, end)) return (V) values[slot];
+            }
+            return null;
+        }
+
+        void put(ByteBuffer buffer, int start, int end, int hash, V value) {
+            //keeping table at most half full
+            if(2 * (count + 1) > keys.length) resize();
+
+            byte[] key = new byte[end - start];
+            buffer.get(start, key);
+            insert(key, hash, value);
+            count++;
+        }
+
+        private void insert(byte[] key, int hash, Object value) {
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while(keys[slot] != null) slot = (slot + 1) & mask;
+
+            keys[slot] = key;
+            hashes[slot] = hash;
+            values[slot] = value;
+        }
+
+        private void resize() {
+            byte[][] oldKeys = keys;
+            Object[] oldValues = values;
+            int[] oldHashes = hashes;
+
+            keys = new byte[oldKeys.length * 2][];
+            values = new Object[oldKeys.length * 2];
+            hashes = new int[oldKeys.length * 2];
+
+            for(int i = 0; i < oldKeys.length; i++) {
+                if(oldKeys[i] != null) insert(oldKeys[i], oldHashes[i], oldValues[i]);
+            }
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+            if(key.length != end - start) return false;
+            for(int i = 0; i < key.length; i++) {
+                if(key[i] != buffer.get(start + i)) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -1,25 +1,42 @@
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ProductSize {
 
-    //static map to store unit conversions
-    private static final Map<String, Float> unitMap = new HashMap<>();
     private static final int TOTAL_FIELD_IN_PRODUCT_SIZE = 2;
 
+    //size strings remembered by of, more distinct strings than this are parsed every time instead of growing the cache
+    private static final int MAX_CACHED_SIZES = 10000;
+
+    //units with their conversion factors, replaced as a whole when a unit is added so readers never lock
+    private static volatile UnitTable units;
+
     //static block which will be executed before the main method
     static {
+        UnitTable table = new UnitTable();
+
         //weight units
-        unitMap.put("g", 1.0f);
-        unitMap.put("kg", 1000.0f);
+        table = table.with("g", 1.0f);
+        table = table.with("kg", 1000.0f);
 
         //liquid units
-        unitMap.put("ml", 1.0f);
-        unitMap.put("l", 1000.0f);
+        table = table.with("ml", 1.0f);
+        table = table.with("l", 1000.0f);
+
+        units = table;
     }
 
-    private float value;
-    private String unit;
+    //size of every valid size string seen by of, shared by everyone using that string
+    private static final Map<String, ProductSize> sizeOfText = new ConcurrentHashMap<>();
+
+    private final float value;
+    private final String unit;
+
+    //index of unit in the unit table and value already converted with it
+    private final int unitId;
+    private final float sizeInBaseUnit;
 
 
     /**
@@ -37,25 +54,49 @@ public class ProductSize {
         value = Float.parseFloat(part[0]);
         unit = part[1].toLowerCase();       //converting units to lowercase
 
-        //if passed unit is not present in the map then throw error
-        if(!unitMap.containsKey(unit)) {
+        //if passed unit is not present in the table then throw error
+        UnitTable table = units;
+        Integer id = table.idOfUnit.get(unit);
+        if(id == null) {
             throw new IllegalArgumentException(("Invalid unit"));
         }else if(value <= 0) {
             throw new IllegalArgumentException("Invalid quantity value");
         }
+
+        //factor of a unit never changes once added, so converting once is enough
+        unitId = id;
+        sizeInBaseUnit = value * table.factors[unitId];
+    }
+
+    /**
+     * Function to get size of a size string, repeated strings share one ProductSize object which is parsed only once
+     * @param size i.e. "500 g", same format as the constructor
+     * @return size, never null
+     * @throws IllegalArgumentException if size is invalid, invalid strings are not remembered
+     */
+    public static ProductSize of(String size) {
+        ProductSize productSize = sizeOfText.get(size);
+        if(productSize != null) return productSize;
+
+        productSize = new ProductSize(size);
+        if(sizeOfText.size() < MAX_CACHED_SIZES) {
+            ProductSize cached = sizeOfText.putIfAbsent(size, productSize);
+            if(cached != null) return cached;
+        }
+        return productSize;
     }
 
     //function to convert to base unit
     public float toBaseUnit() {
-        return this.value * unitMap.get(this.unit);
+        return sizeInBaseUnit;
     }
 
     /**
-     * Method to introduce a new unit and its conversion factor into the unitMap
+     * Method to introduce a new unit and its conversion factor into the unit table, safe while other threads parse sizes
      * @param unit The unit as a string (e.g., "oz", "lb")
      * @param conversionFactor The conversion factor to the base unit (e.g., 28.35 for "oz" if "g" is the base unit)
      */
-    public static void addNewUnit(String unit, float conversionFactor) {
+    public static synchronized void addNewUnit(String unit, float conversionFactor) {
         if(unit == null || unit.isBlank() || conversionFactor <= 0) {
             throw new IllegalArgumentException("Invalid unit or conversion factor.");
         }
@@ -63,13 +104,21 @@ public class ProductSize {
         // Convert the unit to lowercase to ensure case consistency
         unit = unit.toLowerCase();
 
-        // Check if the unit already exists in the map
-        if(unitMap.containsKey(unit)) {
+        // Check if the unit already exists in the table
+        if(units.idOfUnit.containsKey(unit)) {
             throw new IllegalArgumentException("Unit already exists in the unit map.");
         }
 
-        // Add the new unit and its conversion factor to the map
-        unitMap.put(unit, conversionFactor);
+        // Add the new unit and its conversion factor to the table
+        units = units.with(unit, conversionFactor);
+    }
+
+    /**
+     * @param unitId
+     * @return conversion factor of unit to its base unit
+     */
+    public static float conversionFactor(int unitId) {
+        return units.factors[unitId];
     }
 
     //getter for value
@@ -81,4 +130,41 @@ public class ProductSize {
     public String getUnit() {
         return unit;
     }
+
+    //getter for index of unit in the unit table, ids never change once given
+    public int getUnitId() {
+        return unitId;
+    }
+
+    /**
+     * Units known so far, never changed after being published, adding a unit creates a new table
+     */
+    private static class UnitTable {
+        private final Map<String, Integer> idOfUnit;
+        private final String[] units;
+        private final float[] factors;
+
+        UnitTable() {
+            this(new HashMap<>(), new String[0], new float[0]);
+        }
+
+        private UnitTable(Map<String, Integer> idOfUnit, String[] units, float[] factors) {
+            this.idOfUnit = idOfUnit;
+            this.units = units;
+            this.factors = factors;
+        }
+
+        //table with one more unit, ids of units already present stay the same
+        UnitTable with(String unit, float factor) {
+            Map<String, Integer> nextIdOfUnit = new HashMap<>(idOfUnit);
+            nextIdOfUnit.put(unit, units.length);
+
+            String[] nextUnits = Arrays.copyOf(units, units.length + 1);
+            nextUnits[units.length] = unit;
+            float[] nextFactors = Arrays.copyOf(factors, factors.length + 1);
+            nextFactors[factors.length] = factor;
+
+            return new UnitTable(nextIdOfUnit, nextUnits, nextFactors);
+        }
+    }
 }
@@ -0,0 +1,56 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Reason a product history batch was rejected, a batch is rejected as a whole because of its first invalid line
+ */
+public enum RejectReason {
+    //line does not have date, name, size and cost separated by tab
+    WRONG_FIELD_COUNT,
+    //date is not in yyyy/MM/dd format
+    INVALID_DATE,
+    //name is blank
+    INVALID_NAME,
+    //size is blank, has an unknown unit or a quantity which is not positive
+    INVALID_SIZE,
+    //cost is not a number or is negative
+    INVALID_COST,
+    //line does not fit in the largest window a file is mapped with
+    LINE_TOO_LONG,
+    //input could not be read
+    IO_ERROR;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+
+    /**
+     * Function to find out why a line could not be loaded, fields are checked in the order they appear in the line
+     * same order ProductHistoryParser checks them in, so both ways of loading report the same reason
+     * @param line
+     * @return reason of the first invalid field, null if the line is valid
+     */
+    public static RejectReason of(String line) {
+        String[] productDetails = line.split("\t");
+        if(productDetails.length != CostOfLiving.TOTAL_FIELDS_IN_PRODUCT_LINE) return WRONG_FIELD_COUNT;
+
+        try {
+            LocalDate.parse(productDetails[0], DATE_FORMATTER);
+        } catch (Exception e) {
+            return INVALID_DATE;
+        }
+
+        if(productDetails[1].isBlank()) return INVALID_NAME;
+
+        try {
+            ProductSize.of(productDetails[2]);
+        } catch (Exception e) {
+            return INVALID_SIZE;
+        }
+
+        try {
+            if(Float.parseFloat(productDetails[3]) < 0) return INVALID_COST;
+        } catch (Exception e) {
+            return INVALID_COST;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,235 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of CostOfLivingServer, replays the same mix of operations as LoadDriver but over HTTP from many client
+ * threads and reports sustained requests per second and p50/p99/p999 latency as seen by the client.
+ * Starts a server of its own on a free port unless url of a running one is given, data comes from WorkloadGenerator
+ * and is loaded through the server as well.
+ *
+ * usage: java ServerLoadDriver [name=value ...] i.e. java ServerLoadDriver threads=64 seconds=60 url=http://localhost:8080
+ *   url            server to test (default a server started in this JVM)
+ *   virtualThreads false to start the server with a thread pool even when the JVM has virtual threads (default true)
+ *   threads        client threads, each one sends a request and waits for its answer (default 32)
+ *   seconds        length of the measured run (default 30)
+ *   warmup         seconds run before measuring (default 10)
+ *   seed           seed of generated data (default 42)
+ *   products       different product names (default 1000)
+ *   sizes          sizes of every product (default 4)
+ *   months         months covered by history (default 120)
+ *   records        records loaded before the run (default 1000000)
+ *   carts          carts loaded before the run (default 10000)
+ *   batch          records of every history load during the run (default 1000)
+ *   cartItems      items of every cart (default 10)
+ *   window         months of every inflation window (default 12)
+ *   tolerance      tolerance of every price inversion (default 5)
+ *   mix            weights of operations load, cart, cost, inflation and inversion, see LoadDriver
+ */
+public class ServerLoadDriver {
+
+    private final Map<String, String> settings;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private String url;
+
+    //highest cartId created till now, carts have dense ids so every id up to it can be queried
+    private final AtomicInteger highestCartId = new AtomicInteger(-1);
+
+    //answers other than 200 after warmup, by status code
+    private final Map<Integer, AtomicLong> failures = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor to create driver with given settings, missing settings get their default
+     * @param settings
+     */
+    public ServerLoadDriver(Map<String, String> settings) {
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        for(String arg: args) {
+            String[] setting = arg.split("=", 2);
+            if(setting.length != 2) throw new IllegalArgumentException("Invalid setting " + arg + ", expected name=value");
+            settings.put(setting[0], setting[1]);
+        }
+        new ServerLoadDriver(settings).run();
+    }
+
+    private int intSetting(String name, int defaultValue) {
+        return settings.containsKey(name) ? Integer.parseInt(settings.get(name)) : defaultValue;
+    }
+
+    //generator with given seed configured from settings
+    private WorkloadGenerator generator(long seed) {
+        WorkloadGenerator generator = new WorkloadGenerator(seed);
+        generator.setProducts(intSetting("products", 1000));
+        generator.setSizesPerProduct(intSetting("sizes", 4));
+        generator.setMonths(YearMonth.of(2015, 1), intSetting("months", 120));
+        return generator;
+    }
+
+    /**
+     * Function to start the server if needed, load initial data through it, run the mix and print the report
+     * @throws Exception
+     */
+    public void run() throws Exception {
+        int threads = intSetting("threads", 32);
+        int seconds = intSetting("seconds", 30);
+        int warmup = intSetting("warmup", 10);
+        long seed = intSetting("seed", 42);
+        int[] weights = LoadDriver.cumulativeWeights(settings.getOrDefault("mix", "load:1,cart:5,cost:80,inflation:4,inversion:2"));
+
+        CostOfLivingServer server = null;
+        url = settings.get("url");
+        if(url == null) {
+            boolean virtualThreads = Boolean.parseBoolean(settings.getOrDefault("virtualThreads", "true"));
+            server = new CostOfLivingServer(new ConcurrentCostOfLiving(), 0, Math.max(16, 4 * Runtime.getRuntime().availableProcessors()), 2, virtualThreads);
+            server.start();
+            url = "http://localhost:" + server.getPort();
+            System.out.printf("started server on %s with %s%n", url, server.isVirtualThreads() ? "virtual threads" : "a thread pool");
+        }
+
+        //initial history and carts so queries have something to work on from the start
+        WorkloadGenerator generator = generator(seed);
+        long started = System.nanoTime();
+        int records = intSetting("records", 1000000);
+        for(int loaded = 0; loaded < records; loaded += 100000) {
+            HttpResponse<String> response = send(post("/history", generator.history(Math.min(100000, records - loaded))));
+            if(response.statusCode() != 200) throw new IllegalStateException("Initial load failed with " + response.statusCode() + " " + response.body());
+        }
+
+        StringBuilder carts = new StringBuilder();
+        for(int cart = intSetting("carts", 10000); cart > 0; cart--) {
+            carts.append(generator.cart(intSetting("cartItems", 10))).append('\n');
+        }
+        for(String cartId: send(post("/carts", carts.toString())).body().split("\n")) {
+            highestCartId.accumulateAndGet(Integer.parseInt(cartId.trim()), Math::max);
+        }
+        System.out.printf("loaded %d records and %d carts through %s in %.1f s%n", records, highestCartId.get() + 1, url, (System.nanoTime() - started) / 1e9);
+
+        //latencies of every operation, recorded by all threads
+        LatencyHistogram[] latencies = new LatencyHistogram[LoadDriver.Operation.values().length];
+        for(int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(seconds);
+
+        List<Future<?>> running = new ArrayList<>();
+        for(int thread = 0; thread < threads; thread++) {
+            long threadSeed = seed + 1 + thread;
+            running.add(workers.submit(() -> work(threadSeed, weights, latencies, warmupEnd, end)));
+        }
+        for(Future<?> worker: running) {
+            worker.get();
+        }
+        workers.shutdown();
+
+        report(latencies, threads, seconds);
+        if(server != null) server.close();
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(url + path)).timeout(Duration.ofMinutes(5)).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    private HttpRequest get(String pathAndQuery) {
+        return HttpRequest.newBuilder(URI.create(url + pathAndQuery)).timeout(Duration.ofMinutes(5)).GET().build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    //loop of one client thread, latencies are only recorded after warmup
+    private Void work(long seed, int[] weights, LatencyHistogram[] latencies, long warmupEnd, long end) throws Exception {
+        WorkloadGenerator generator = generator(seed);
+        Random random = new Random(seed);
+        int batch = intSetting("batch", 1000);
+        int cartItems = intSetting("cartItems", 10);
+        int window = intSetting("window", 12);
+        int tolerance = intSetting("tolerance", 5);
+
+        long now;
+        while((now = System.nanoTime()) < end) {
+            int pick = random.nextInt(weights[weights.length - 1]);
+            int operation = 0;
+            while(pick >= weights[operation]) operation++;
+
+            //request is built before the clock starts so only the round trip is measured
+            HttpRequest request;
+            switch(LoadDriver.Operation.values()[operation]) {
+                case LOAD:
+                    request = post("/history", generator.history(batch));
+                    break;
+                case CART:
+                    request = post("/carts", generator.cart(cartItems));
+                    break;
+                case COST: {
+                    YearMonth month = generator.month();
+                    request = get("/cart-cost?cart=" + random.nextInt(highestCartId.get() + 1) + "&year=" + month.getYear() + "&month=" + month.getMonthValue());
+                    break;
+                }
+                case INFLATION: {
+                    YearMonth start = generator.month();
+                    YearMonth last = start.plusMonths(window - 1);
+                    request = get("/inflation?startYear=" + start.getYear() + "&startMonth=" + start.getMonthValue()
+                            + "&endYear=" + last.getYear() + "&endMonth=" + last.getMonthValue());
+                    break;
+                }
+                default: {
+                    YearMonth month = generator.month();
+                    request = get("/price-inversion?year=" + month.getYear() + "&month=" + month.getMonthValue() + "&tolerance=" + tolerance);
+                    break;
+                }
+            }
+
+            long started = System.nanoTime();
+            HttpResponse<String> response = send(request);
+            long finished = System.nanoTime();
+
+            if(response.statusCode() == 200 && LoadDriver.Operation.values()[operation] == LoadDriver.Operation.CART) {
+                highestCartId.accumulateAndGet(Integer.parseInt(response.body().trim()), Math::max);
+            }
+
+            if(now < warmupEnd) continue;
+            if(response.statusCode() == 200) {
+                latencies[operation].record(finished - started);
+            } else {
+                failures.computeIfAbsent(response.statusCode(), status -> new AtomicLong()).incrementAndGet();
+            }
+        }
+        return null;
+    }
+
+    //printing throughput and latency percentiles of every operation that ran
+    private void report(LatencyHistogram[] latencies, int threads, int seconds) {
+        System.out.printf("%d client threads, %d s measured against %s%n", threads, seconds, url);
+        System.out.printf("%-10s %10s %10s %10s %10s %10s %10s%n", "operation", "count", "req/s", "p50 us", "p99 us", "p999 us", "max us");
+
+        long total = 0;
+        for(LoadDriver.Operation operation: LoadDriver.Operation.values()) {
+            LatencyHistogram histogram = latencies[operation.ordinal()];
+            long count = histogram.getCount();
+            if(count == 0) continue;
+
+            total += count;
+            System.out.printf("%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation.name().toLowerCase(), count, (double) count / seconds,
+                    histogram.getPercentile(50) / 1e3, histogram.getPercentile(99) / 1e3, histogram.getPercentile(99.9) / 1e3, histogram.getMax() / 1e3);
+        }
+        System.out.printf("%-10s %10d %10.1f%n", "total", total, (double) total / seconds);
+
+        //503 are loads turned away while other loads were running, see CostOfLivingServer
+        failures.forEach((status, count) -> System.out.printf("status %d: %d requests%n", status, count.get()));
+    }
+}
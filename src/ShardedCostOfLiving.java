@@ -0,0 +1,491 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Coordinator of a CostOfLiving split into shards, every shard is a CostOfLivingServer process holding the products
+ * whose lower case name hashes to it, so the history does not have to fit the heap of one JVM.
+ * Loads are validated here first with the same rules as loadProductHistory, so a batch is either sent to no shard
+ * or its lines are sent to their shards at the same time, a shard sees the records of its products in the same
+ * batches and order as a single CostOfLiving would. Carts are split into one sub-cart per shard holding any of their
+ * items, a cart costs the sum of its sub-carts. Inflation and price inversion run on every shard at the same time
+ * and their results are merged, every product lives on one shard only so nothing has to be combined per product.
+ *
+ * Shards failing a load or a cart are sent it again, up to LOAD_ATTEMPTS times, which is safe for loads as records
+ * already present are skipped. A load failing on a shard after all attempts is PARTIALLY_LOADED, and a sub-cart
+ * created for a cart failing on another shard is kept and reused when the same cart is loaded again.
+ *
+ * Differences from a single CostOfLiving: cart cost adds costs of sub-carts instead of items one by one, so it may
+ * differ in the last bit of the float; price inversions come shard after shard.
+ *
+ * usage: java ShardedCostOfLiving [name=value ...] i.e. java ShardedCostOfLiving shards=4 records=1000000
+ * starts local shards, loads generated data into them and into a CostOfLiving of its own and compares both
+ *   shards         number of shard processes started on localhost (default 4)
+ *   xmx            heap of every shard process i.e. 512m (default JVM default)
+ *   seed           seed of generated data (default 42)
+ *   products       different product names (default 1000)
+ *   records        records loaded (default 1000000)
+ *   batch          records of every load (default 100000)
+ *   carts          carts loaded and priced (default 1000)
+ */
+public class ShardedCostOfLiving implements AutoCloseable {
+
+    //first line a CostOfLivingServer prints, holding the port it got
+    private static final Pattern SERVING = Pattern.compile("serving \\d+ products on http://localhost:(\\d+)/.*");
+
+    //seconds to wait for a local shard to print its port
+    private static final int SHARD_START_SECONDS = 60;
+
+    //times a load or cart is sent to a shard before giving up, waiting RETRY_DELAY_MILLIS longer after every failure
+    private static final int LOAD_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MILLIS = 200;
+
+    //answer of loadProductHistory when a batch got loaded on some shards only, load the same batch again to complete it
+    public static final int PARTIALLY_LOADED = -2;
+
+    private final List<URI> shards;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    //processes of shards started by startLocal, stopped by close
+    private final List<Process> processes = new ArrayList<>();
+
+    //latest product count answered by every shard
+    private final int[] productCountOfShard;
+
+    //cartId of the sub-cart on every shard for every cart, -1 for shards with no item of the cart
+    private final List<int[]> subCarts = new ArrayList<>();
+
+    //sub-carts created for carts which failed on another shard, by shard and items sent to it, reused by the next
+    //cart with the same items on that shard instead of leaving them behind
+    private final List<Map<String, Integer>> unusedSubCarts = new ArrayList<>();
+
+    /**
+     * Constructor to coordinate shards which are already running, i.e. CostOfLivingServer on other machines
+     * every shard has to start empty and only be loaded through this object
+     * @param shards base URI of every shard i.e. http://localhost:8080, same order every time as it decides partitioning
+     */
+    public ShardedCostOfLiving(List<URI> shards) {
+        if(shards == null || shards.isEmpty()) throw new IllegalArgumentException("Invalid shards");
+
+        this.shards = List.copyOf(shards);
+        this.productCountOfShard = new int[shards.size()];
+        for(int shard = 0; shard < shards.size(); shard++) {
+            unusedSubCarts.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Function to start every shard as a CostOfLivingServer process on localhost with the class path of this JVM
+     * @param shardCount
+     * @param jvmOptions options of every shard process i.e. -Xmx512m
+     * @return coordinator of the started shards, close stops them
+     * @throws IOException if a shard could not be started
+     */
+    public static ShardedCostOfLiving startLocal(int shardCount, List<String> jvmOptions) throws IOException {
+        if(shardCount <= 0) throw new IllegalArgumentException("Invalid number of shards");
+
+        List<Process> started = new ArrayList<>();
+        List<URI> uris = new ArrayList<>();
+        try {
+            for(int shard = 0; shard < shardCount; shard++) {
+                List<String> command = new ArrayList<>();
+                command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+                command.addAll(jvmOptions);
+                command.addAll(List.of("-cp", System.getProperty("java.class.path"), "CostOfLivingServer", "port=0"));
+
+                Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                started.add(process);
+                uris.add(URI.create("http://localhost:" + portOf(process)));
+            }
+        } catch (IOException | RuntimeException e) {
+            started.forEach(Process::destroy);
+            throw e;
+        }
+
+        ShardedCostOfLiving sharded = new ShardedCostOfLiving(uris);
+        sharded.processes.addAll(started);
+        return sharded;
+    }
+
+    //port a started shard listens on, read from the first line it prints
+    private static int portOf(Process process) throws IOException {
+        CompletableFuture<String> firstLine = CompletableFuture.supplyAsync(() -> {
+            try {
+                return new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)).readLine();
+            } catch (IOException e) {
+                return null;
+            }
+        });
+
+        String line;
+        try {
+            line = firstLine.get(SHARD_START_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IOException("Shard did not start", e);
+        }
+
+        Matcher matcher = line == null ? null : SERVING.matcher(line);
+        if(matcher == null || !matcher.matches()) throw new IOException("Shard did not start, it printed " + line);
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    //function to stop shards started by startLocal, shards started elsewhere keep running
+    @Override
+    public void close() {
+        for(Process process: processes) {
+            process.destroy();
+        }
+        processes.clear();
+    }
+
+    /**
+     * @param name product name as it appears in input
+     * @return index of the shard holding given product, same for every spelling of the name in upper or lower case
+     */
+    public int shardOf(String name) {
+        return Math.floorMod(name.toLowerCase().hashCode(), shards.size());
+    }
+
+    /**
+     * Function to load product history, lines are validated here and sent to their shards only if all are valid
+     * loads are sent one at a time so every shard gets batches in the same order, shards failing are sent their lines again
+     * @param productStream
+     * @return total number of products introduced till now on all shards, -1 in case of invalid input,
+     *         PARTIALLY_LOADED if a shard failed every attempt, the same batch has to be loaded again before the next one
+     */
+    public synchronized int loadProductHistory( BufferedReader productStream ) {
+        if(productStream == null) return -1;
+
+        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+        StringBuilder[] linesOfShard = new StringBuilder[shards.size()];
+
+        try {
+            String line;
+            while((line = productStream.readLine()) != null) {
+                if(line.isBlank()) continue;
+
+                //same checks as CostOfLiving.loadProductHistory, a record is created only to validate the line
+                String[] productDetails = line.split("\t");
+                if(productDetails.length != CostOfLiving.TOTAL_FIELDS_IN_PRODUCT_LINE) return -1;
+                Product product = new Product(LocalDate.parse(productDetails[0], dateFormatter), productDetails[1], productDetails[2], Float.parseFloat(productDetails[3]));
+
+                int shard = shardOf(product.getName());
+                if(linesOfShard[shard] == null) linesOfShard[shard] = new StringBuilder();
+                linesOfShard[shard].append(line).append('\n');
+            }
+        } catch (Exception e) {
+            return -1;
+        }
+
+        //shards without lines in this batch keep their count
+        HttpRequest[] requests = new HttpRequest[shards.size()];
+        for(int shard = 0; shard < shards.size(); shard++) {
+            if(linesOfShard[shard] != null) requests[shard] = post(shard, "/history", linesOfShard[shard].toString());
+        }
+
+        String[] answers = sendToShards(requests);
+        boolean loaded = true;
+        for(int shard = 0; shard < shards.size(); shard++) {
+            if(answers[shard] != null) {
+                productCountOfShard[shard] = Integer.parseInt(answers[shard].trim());
+            } else if(requests[shard] != null) {
+                loaded = false;
+            }
+        }
+        return loaded ? getProductCount() : PARTIALLY_LOADED;
+    }
+
+    /**
+     * Function to send a request to every shard at the same time, requests failing are sent again after a delay
+     * @param requests request of every shard, null for shards with nothing to send
+     * @return body of the 200 answer of every shard, null for shards with no request or failing every attempt
+     */
+    private String[] sendToShards(HttpRequest[] requests) {
+        String[] answers = new String[requests.length];
+
+        for(int attempt = 1; attempt <= LOAD_ATTEMPTS; attempt++) {
+            List<CompletableFuture<String>> pending = new ArrayList<>(Collections.nCopies(requests.length, null));
+            for(int shard = 0; shard < requests.length; shard++) {
+                if(requests[shard] != null && answers[shard] == null) pending.set(shard, sendLoad(requests[shard]));
+            }
+
+            boolean failed = false;
+            for(int shard = 0; shard < requests.length; shard++) {
+                if(pending.get(shard) == null) continue;
+                answers[shard] = pending.get(shard).join();
+                failed |= answers[shard] == null;
+            }
+            if(!failed || attempt == LOAD_ATTEMPTS) break;
+
+            try {
+                Thread.sleep(RETRY_DELAY_MILLIS << (attempt - 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return answers;
+    }
+
+    //load sent again while the shard answers 503 as it is busy with other loads, null if it failed otherwise
+    private CompletableFuture<String> sendLoad(HttpRequest request) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenCompose(response -> {
+            if(response.statusCode() == 503) {
+                long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1);
+                return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(retryAfter, TimeUnit.SECONDS))
+                        .thenCompose(ignored -> sendLoad(request));
+            }
+            return CompletableFuture.completedFuture(response.statusCode() == 200 ? response.body() : null);
+        }).exceptionally(e -> null);
+    }
+
+    /**
+     * Function to create a cart, split into a sub-cart on every shard holding any of its items
+     * shards failing are sent their items again, sub-carts of a cart failing anyway are reused by the next same cart
+     * @param cartStream same format as CostOfLiving.loadShoppingCart
+     * @return cartId of newly created cart, -1 in case of invalid input or a shard failing every attempt
+     */
+    public synchronized int loadShoppingCart( BufferedReader cartStream ) {
+        Set<Product> cartItems;
+        try {
+            //same validation and same lower case names as a single CostOfLiving
+            cartItems = CostOfLiving.readCartItems(cartStream);
+        } catch (Exception e) {
+            return -1;
+        }
+        if(cartItems == null) return -1;
+
+        //items of every shard in sorted order, so the same cart always sends the same items and can reuse unused sub-carts
+        List<List<String>> linesOfShard = new ArrayList<>(Collections.nCopies(shards.size(), null));
+        for(Product item: cartItems) {
+            int shard = shardOf(item.getName());
+            if(linesOfShard.get(shard) == null) linesOfShard.set(shard, new ArrayList<>());
+            linesOfShard.get(shard).add(item.getName() + "\t" + item.getOriginalSize() + "\n");
+        }
+
+        String[] itemsOfShard = new String[shards.size()];
+        int[] subCartOfShard = new int[shards.size()];
+        HttpRequest[] requests = new HttpRequest[shards.size()];
+        for(int shard = 0; shard < shards.size(); shard++) {
+            subCartOfShard[shard] = -1;
+            if(linesOfShard.get(shard) == null) continue;
+
+            Collections.sort(linesOfShard.get(shard));
+            itemsOfShard[shard] = String.join("", linesOfShard.get(shard));
+            Integer unusedSubCart = unusedSubCarts.get(shard).remove(itemsOfShard[shard]);
+            if(unusedSubCart != null) {
+                subCartOfShard[shard] = unusedSubCart;
+            } else {
+                requests[shard] = post(shard, "/carts", itemsOfShard[shard]);
+            }
+        }
+
+        String[] answers = sendToShards(requests);
+        boolean created = true;
+        for(int shard = 0; shard < shards.size(); shard++) {
+            if(answers[shard] != null) {
+                subCartOfShard[shard] = Integer.parseInt(answers[shard].trim());
+            } else if(requests[shard] != null) {
+                created = false;
+            }
+        }
+
+        if(!created) {
+            //sub-carts created on other shards wait for the same cart to be loaded again
+            for(int shard = 0; shard < shards.size(); shard++) {
+                if(subCartOfShard[shard] != -1) unusedSubCarts.get(shard).put(itemsOfShard[shard], subCartOfShard[shard]);
+            }
+            return -1;
+        }
+
+        subCarts.add(subCartOfShard);
+        return subCarts.size() - 1;
+    }
+
+    /**
+     * @param cartNumber
+     * @param year
+     * @param month
+     * @return sum of costs of sub-carts on 1st date of given month and year, -1 if any item can not be bought or a shard failed
+     */
+    public float shoppingCartCost( int cartNumber, int year, int month ) {
+        int[] subCartOfShard;
+        synchronized(this) {
+            if(cartNumber < 0 || cartNumber >= subCarts.size()) return -1f;
+            subCartOfShard = subCarts.get(cartNumber);
+        }
+        if(year < 0 || month < 1 || month > 12) return -1f;
+
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for(int shard = 0; shard < shards.size(); shard++) {
+            if(subCartOfShard[shard] == -1) continue;
+            answers.add(send(get(shard, "/cart-cost?cart=" + subCartOfShard[shard] + "&year=" + year + "&month=" + month)));
+        }
+
+        float totalCartCost = 0;
+        for(CompletableFuture<String> answer: answers) {
+            String cost = answer.join();
+            if(cost == null) return -1f;
+
+            float costOfSubCart = Float.parseFloat(cost.trim());
+            if(costOfSubCart == -1f) return -1f;
+            totalCartCost += costOfSubCart;
+        }
+        return totalCartCost;
+    }
+
+    /**
+     * @param startYear
+     * @param startMonth
+     * @param endYear
+     * @param endMonth
+     * @return products exhibiting inflation or shrinkflation on every shard, see CostOfLiving.inflation, null in case of invalid input or failed shard
+     */
+    public Map<String, Float> inflation( int startYear, int startMonth, int endYear, int endMonth ) {
+        List<String> lines = gather("/inflation?startYear=" + startYear + "&startMonth=" + startMonth + "&endYear=" + endYear + "&endMonth=" + endMonth);
+        if(lines == null) return null;
+
+        //lines are "name size	value	kind", names are unique to a shard so no key is answered twice
+        Map<String, Float> productExhibitingInflationOrShrinkflation = new HashMap<>();
+        for(String line: lines) {
+            String[] fields = line.split("\t");
+            productExhibitingInflationOrShrinkflation.put(fields[0], Float.parseFloat(fields[1]));
+        }
+        return productExhibitingInflationOrShrinkflation;
+    }
+
+    /**
+     * @param year
+     * @param month
+     * @param tolerance
+     * @return products going through price inversion on every shard, see CostOfLiving.priceInversion, null in case of invalid input or failed shard
+     */
+    public List<String> priceInversion( int year, int month, int tolerance ) {
+        return gather("/price-inversion?year=" + year + "&month=" + month + "&tolerance=" + tolerance);
+    }
+
+    //function to send the same query to every shard at the same time and join their lines in shard order
+    private List<String> gather(String pathAndQuery) {
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for(int shard = 0; shard < shards.size(); shard++) {
+            answers.add(send(get(shard, pathAndQuery)));
+        }
+
+        List<String> lines = new ArrayList<>();
+        for(CompletableFuture<String> answer: answers) {
+            String body = answer.join();
+            if(body == null) return null;
+            body.lines().forEach(lines::add);
+        }
+        return lines;
+    }
+
+    private HttpRequest post(int shard, String path, String body) {
+        return HttpRequest.newBuilder(shards.get(shard).resolve(path)).timeout(Duration.ofMinutes(10)).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    private HttpRequest get(int shard, String pathAndQuery) {
+        return HttpRequest.newBuilder(shards.get(shard).resolve(pathAndQuery)).timeout(Duration.ofMinutes(10)).GET().build();
+    }
+
+    //body of a 200 answer, null for any other answer or if shard could not be reached
+    private CompletableFuture<String> send(HttpRequest request) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> response.statusCode() == 200 ? response.body() : null)
+                .exceptionally(e -> null);
+    }
+
+    //getter for number of products introduced till now on all shards
+    public synchronized int getProductCount() {
+        int productCount = 0;
+        for(int count: productCountOfShard) {
+            productCount += count;
+        }
+        return productCount;
+    }
+
+    //getter for number of shards
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        for(String arg: args) {
+            String[] setting = arg.split("=", 2);
+            if(setting.length != 2) throw new IllegalArgumentException("Invalid setting " + arg + ", expected name=value");
+            settings.put(setting[0], setting[1]);
+        }
+        int shardCount = Integer.parseInt(settings.getOrDefault("shards", "4"));
+        int records = Integer.parseInt(settings.getOrDefault("records", "1000000"));
+        int batch = Integer.parseInt(settings.getOrDefault("batch", "100000"));
+        int cartCount = Integer.parseInt(settings.getOrDefault("carts", "1000"));
+        List<String> jvmOptions = settings.containsKey("xmx") ? List.of("-Xmx" + settings.get("xmx")) : List.of();
+
+        WorkloadGenerator generator = new WorkloadGenerator(Long.parseLong(settings.getOrDefault("seed", "42")));
+        generator.setProducts(Integer.parseInt(settings.getOrDefault("products", "1000")));
+        generator.setMonths(YearMonth.of(2015, 1), 120);
+
+        try(ShardedCostOfLiving sharded = startLocal(shardCount, jvmOptions)) {
+            System.out.printf("started %d shards on %s%n", shardCount, sharded.shards);
+            CostOfLiving single = new CostOfLiving();
+
+            long shardedNanos = 0;
+            for(int loaded = 0; loaded < records; loaded += batch) {
+                String history = generator.history(Math.min(batch, records - loaded));
+                single.loadProductHistory(new BufferedReader(new StringReader(history)));
+
+                long started = System.nanoTime();
+                if(sharded.loadProductHistory(new BufferedReader(new StringReader(history))) < 0) throw new IllegalStateException("Sharded load failed");
+                shardedNanos += System.nanoTime() - started;
+            }
+            System.out.printf("loaded %d products, %d on one JVM, sharded load took %.1f s%n", sharded.getProductCount(), single.productCount, shardedNanos / 1e9);
+
+            int mismatches = 0;
+            for(int cart = 0; cart < cartCount; cart++) {
+                String items = generator.cart(10);
+                int cartId = single.loadShoppingCart(new BufferedReader(new StringReader(items)));
+                int shardedCartId = sharded.loadShoppingCart(new BufferedReader(new StringReader(items)));
+                YearMonth month = generator.month();
+
+                float cost = single.shoppingCartCost(cartId, month.getYear(), month.getMonthValue());
+                float shardedCost = sharded.shoppingCartCost(shardedCartId, month.getYear(), month.getMonthValue());
+                if(Math.abs(cost - shardedCost) > Math.ulp(cost) * 16) mismatches++;
+            }
+
+            YearMonth start = generator.month();
+            YearMonth end = start.plusMonths(12);
+            long started = System.nanoTime();
+            Map<String, Float> shardedInflation = sharded.inflation(start.getYear(), start.getMonthValue(), end.getYear(), end.getMonthValue());
+            long inflationNanos = System.nanoTime() - started;
+            if(!single.inflation(start.getYear(), start.getMonthValue(), end.getYear(), end.getMonthValue()).equals(shardedInflation)) mismatches++;
+
+            started = System.nanoTime();
+            List<String> shardedInversion = sharded.priceInversion(start.getYear(), start.getMonthValue(), 5);
+            long inversionNanos = System.nanoTime() - started;
+            List<String> inversion = single.priceInversion(start.getYear(), start.getMonthValue(), 5);
+            Collections.sort(inversion);
+            Collections.sort(shardedInversion);
+            if(!inversion.equals(shardedInversion)) mismatches++;
+
+            System.out.printf("%d carts priced, inflation %d entries in %.1f ms, price inversion %d entries in %.1f ms, %d mismatches%n",
+                    cartCount, shardedInflation.size(), inflationNanos / 1e6, shardedInversion.size(), inversionNanos / 1e6, mismatches);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Generates synthetic product history and carts in the input format of CostOfLiving
+ * i.e. "2021/03/14	product7	1.5 kg	6.4" for history and "product7	500 g" for carts.
+ * Prices of every product rise slowly over the months with some noise, some records are discontinuations (cost 0)
+ * and some discontinuations are followed by a smaller size of the same product in the same month costing more per unit,
+ * so inflation, shrinkflation and price inversion all have something to find.
+ * Same seed and settings always generate the same data, an object is not safe to use from many threads.
+ */
+public class WorkloadGenerator {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+
+    //size of the replacement as part of the discontinued size, i.e. 500 g gets replaced by 400 g
+    private static final float REPLACEMENT_SIZE = 0.8f;
+
+    private final Random random;
+
+    //number of different product names and sizes of every product
+    private int products = 1000;
+    private int sizesPerProduct = 4;
+
+    //history covers months starting at startMonth
+    private YearMonth startMonth = YearMonth.of(2015, 1);
+    private int months = 120;
+
+    //part of products sold by weight (g, kg), the rest is sold by volume (ml, l)
+    private double weightShare = 0.5;
+
+    //part of records having their size written in kg or l instead of g or ml
+    private double largeUnitShare = 0.25;
+
+    //part of records which are discontinuations (cost 0)
+    private double discontinuationShare = 0.01;
+
+    //part of discontinuations followed by a smaller size in the same month
+    private double replacementShare = 0.5;
+
+    //price rise over the whole history, 0.3 is 30% more at the end than at the start
+    private double totalInflation = 0.3;
+
+    /**
+     * Constructor to create generator with default settings
+     * @param seed
+     */
+    public WorkloadGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    //setter for number of different product names
+    public void setProducts(int products) {
+        if(products <= 0) throw new IllegalArgumentException("Invalid number of products");
+        this.products = products;
+    }
+
+    //setter for number of sizes of every product
+    public void setSizesPerProduct(int sizesPerProduct) {
+        if(sizesPerProduct <= 0) throw new IllegalArgumentException("Invalid number of sizes");
+        this.sizesPerProduct = sizesPerProduct;
+    }
+
+    /**
+     * Setter for months covered by history
+     * @param startMonth first month of history
+     * @param months number of months
+     */
+    public void setMonths(YearMonth startMonth, int months) {
+        if(startMonth == null || months <= 0) throw new IllegalArgumentException("Invalid months");
+        this.startMonth = startMonth;
+        this.months = months;
+    }
+
+    /**
+     * Setter for mix of units
+     * @param weightShare part of products sold by weight, the rest is sold by volume
+     * @param largeUnitShare part of records with size written in kg or l
+     */
+    public void setUnitMix(double weightShare, double largeUnitShare) {
+        if(!isShare(weightShare) || !isShare(largeUnitShare)) throw new IllegalArgumentException("Invalid unit mix");
+        this.weightShare = weightShare;
+        this.largeUnitShare = largeUnitShare;
+    }
+
+    /**
+     * Setter for discontinuations
+     * @param discontinuationShare part of records with cost 0
+     * @param replacementShare part of discontinuations followed by smaller size in the same month
+     */
+    public void setDiscontinuations(double discontinuationShare, double replacementShare) {
+        if(!isShare(discontinuationShare) || !isShare(replacementShare)) throw new IllegalArgumentException("Invalid discontinuations");
+        this.discontinuationShare = discontinuationShare;
+        this.replacementShare = replacementShare;
+    }
+
+    //setter for price rise over the whole history
+    public void setTotalInflation(double totalInflation) {
+        if(totalInflation <= -1) throw new IllegalArgumentException("Invalid inflation");
+        this.totalInflation = totalInflation;
+    }
+
+    private static boolean isShare(double share) {
+        return share >= 0 && share <= 1;
+    }
+
+    //getter for first month of history
+    public YearMonth getStartMonth() {
+        return startMonth;
+    }
+
+    //getter for number of months covered by history
+    public int getMonths() {
+        return months;
+    }
+
+    //name of given product
+    public static String name(int product) {
+        return "product" + product;
+    }
+
+    //true if given product is sold by weight, same for every product no matter the seed
+    private boolean isSoldByWeight(int product) {
+        return (product * 0x9E3779B1 >>> 8) % 1000 < weightShare * 1000;
+    }
+
+    //size of given size index of given product in base unit, 125, 250, 375 ...
+    private static float sizeInBaseUnit(int size) {
+        return (size + 1) * 125;
+    }
+
+    //size text of given size in base unit, written in kg or l for some records
+    private String sizeText(int product, float sizeInBaseUnit) {
+        boolean weight = isSoldByWeight(product);
+
+        if(random.nextDouble() < largeUnitShare) {
+            return (sizeInBaseUnit / 1000) + (weight ? " kg" : " l");
+        }
+        return (sizeInBaseUnit == (int) sizeInBaseUnit ? String.valueOf((int) sizeInBaseUnit) : String.valueOf(sizeInBaseUnit)) + (weight ? " g" : " ml");
+    }
+
+    //price of given size of given product on given day since start of history, rounded to cents
+    private float price(int product, float sizeInBaseUnit, int day, int days) {
+        //per unit price between 0.2 and 2 cents depending on product
+        double perUnit = 0.002 + (product % 91) * 0.0002;
+
+        //larger sizes are a bit cheaper per unit
+        double discount = 1 - 0.02 * Math.log(sizeInBaseUnit / 125);
+        double rise = 1 + totalInflation * day / days;
+        double noise = 0.95 + 0.1 * random.nextDouble();
+
+        return Math.max(0.01f, Math.round(perUnit * sizeInBaseUnit * discount * rise * noise * 100) / 100f);
+    }
+
+    /**
+     * Function to generate history records, a discontinuation followed by its smaller replacement counts as two records
+     * @param records number of records to generate
+     * @return records one per line in the format of CostOfLiving.loadProductHistory
+     */
+    public String history(int records) {
+        StringBuilder history = new StringBuilder(records * 32);
+        appendHistory(history, records);
+        return history.toString();
+    }
+
+    /**
+     * Function to write history records into a file
+     * @param file
+     * @param records number of records to write
+     * @throws IOException
+     */
+    public void writeHistory(Path file, long records) throws IOException {
+        try(BufferedWriter writer = Files.newBufferedWriter(file)) {
+            StringBuilder batch = new StringBuilder();
+
+            //written in batches so memory does not grow with number of records
+            for(long written = 0; written < records; written += 10000) {
+                batch.setLength(0);
+                appendHistory(batch, (int) Math.min(10000, records - written));
+                writer.append(batch);
+            }
+        }
+    }
+
+    //appends given number of records to given builder
+    private void appendHistory(StringBuilder history, int records) {
+        LocalDate firstDay = startMonth.atDay(1);
+        int days = (int) (startMonth.plusMonths(months).atDay(1).toEpochDay() - firstDay.toEpochDay());
+
+        int generated = 0;
+        while(generated < records) {
+            int product = random.nextInt(products);
+            float size = sizeInBaseUnit(random.nextInt(sizesPerProduct));
+            int day = random.nextInt(days);
+            LocalDate date = firstDay.plusDays(day);
+
+            if(random.nextDouble() >= discontinuationShare) {
+                appendRecord(history, date, product, size, price(product, size, day, days));
+                generated++;
+                continue;
+            }
+
+            appendRecord(history, date, product, size, 0);
+            generated++;
+
+            //smaller size introduced later in the same month, costing more per unit than the discontinued one did
+            if(generated < records && random.nextDouble() < replacementShare) {
+                int dayOfReplacement = day + random.nextInt(date.lengthOfMonth() - date.getDayOfMonth() + 1);
+                float smallerSize = Math.round(size * REPLACEMENT_SIZE);
+                float cost = price(product, size, dayOfReplacement, days) * (1.05f + 0.2f * random.nextFloat());
+
+                appendRecord(history, firstDay.plusDays(dayOfReplacement), product, smallerSize, Math.round(cost * 100) / 100f);
+                generated++;
+            }
+        }
+    }
+
+    private void appendRecord(StringBuilder history, LocalDate date, int product, float sizeInBaseUnit, float cost) {
+        history.append(date.format(DATE_FORMAT)).append('\t')
+                .append(name(product)).append('\t')
+                .append(sizeText(product, sizeInBaseUnit)).append('\t')
+                .append(cost).append('\n');
+    }
+
+    /**
+     * Function to generate a cart of different products
+     * @param items number of items, at most number of products
+     * @return items one per line in the format of CostOfLiving.loadShoppingCart
+     */
+    public String cart(int items) {
+        StringBuilder cart = new StringBuilder();
+        Set<Integer> productsInCart = new HashSet<>();
+
+        while(productsInCart.size() < Math.min(items, products)) {
+            int product = random.nextInt(products);
+            if(!productsInCart.add(product)) continue;
+
+            float size = sizeInBaseUnit(random.nextInt(sizesPerProduct)) * (1 + random.nextInt(3));
+            cart.append(name(product)).append('\t').append(sizeText(product, size)).append('\n');
+        }
+        return cart.toString();
+    }
+
+    /**
+     * @return random month with in the history
+     */
+    public YearMonth month() {
+        return startMonth.plusMonths(random.nextInt(months));
+    }
+}
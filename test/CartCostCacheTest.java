@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Keys of CartCostCache for months far in the future
+ */
+class CartCostCacheTest {
+
+    @Test
+    void monthsAfterMaxCachedYearAreNotCached() {
+        CartCostCache cache = new CartCostCache(16);
+
+        cache.put(0, CartCostCache.MAX_CACHED_YEAR, 12, 1f, new String[]{"milk"});
+        cache.put(0, CartCostCache.MAX_CACHED_YEAR + 1, 1, 2f, new String[]{"milk"});
+
+        assertEquals(1f, cache.get(0, CartCostCache.MAX_CACHED_YEAR, 12));
+        assertNull(cache.get(0, CartCostCache.MAX_CACHED_YEAR + 1, 1));
+    }
+
+    @Test
+    void recentlyUsedCostsSurviveEviction() {
+        CartCostCache cache = new CartCostCache(64);
+        for(int cart = 0; cart < 64; cart++) {
+            cache.put(cart, 2020, 1, cart, new String[]{"milk"});
+        }
+
+        //first carts keep being used while as many new carts are put
+        for(int cart = 64; cart < 128; cart++) {
+            for(int used = 0; used < 8; used++) {
+                assertEquals(used, cache.get(used, 2020, 1), "cart " + used);
+            }
+            cache.put(cart, 2020, 1, cart, new String[]{"milk"});
+        }
+
+        assertTrue(cache.size() <= 64);
+        assertTrue(cache.getEvictions() >= 64);
+        for(int cart = 0; cart < 8; cart++) {
+            assertEquals(cart, cache.get(cart, 2020, 1));
+        }
+        assertNull(cache.get(8, 2020, 1));
+    }
+
+    @Test
+    void invalidatingCopyLeavesSourceUnchanged() {
+        CartCostCache cache = new CartCostCache(16);
+        cache.put(0, 2020, 1, 1f, new String[]{"milk"});
+        cache.put(1, 2020, 1, 2f, new String[]{"milk", "bread"});
+        cache.put(2, 2020, 1, 3f, new String[]{"bread"});
+
+        CartCostCache copy = new CartCostCache(cache);
+        copy.invalidate(List.of("milk"));
+        cache.put(3, 2020, 1, 4f, new String[]{"oreo"});
+
+        assertNull(copy.get(0, 2020, 1));
+        assertNull(copy.get(1, 2020, 1));
+        assertEquals(3f, copy.get(2, 2020, 1));
+        assertNull(copy.get(3, 2020, 1));
+        assertEquals(4, cache.size());
+        assertEquals(1f, cache.get(0, 2020, 1));
+    }
+
+    @Test
+    void costOfFarFutureMonthIsNotReturnedForAnotherCart() {
+        CostOfLiving costOfLiving = new CostOfLiving();
+        costOfLiving.loadProductHistory(new BufferedReader(new StringReader("2020/01/01\tmilk\t1 l\t2.00\n2020/01/01\tbread\t500 g\t7.00\n")));
+        int milk = costOfLiving.loadShoppingCart(new BufferedReader(new StringReader("milk\t1 l\n")));
+        int bread = costOfLiving.loadShoppingCart(new BufferedReader(new StringReader("bread\t500 g\n")));
+
+        //month count of January 400000000 runs into the cartId bits, landing on the key of cart 1 in a much earlier month
+        long collidingMonth = 400000000L * 12 - (1L << 32);
+
+        assertEquals(2f, costOfLiving.shoppingCartCost(milk, 400000000, 1));
+        assertEquals(7f, costOfLiving.shoppingCartCost(bread, (int) (collidingMonth / 12), (int) (collidingMonth % 12) + 1));
+    }
+}
@@ -0,0 +1,170 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checkpointed load of a product history file, resumed after a crash
+ */
+class CheckpointedHistoryIngestTest {
+
+    @TempDir
+    Path directory;
+
+    //generated history with an invalid line after every 50 valid ones
+    private static String history(int records) {
+        WorkloadGenerator generator = new WorkloadGenerator(7);
+        generator.setProducts(50);
+        generator.setMonths(YearMonth.of(2019, 1), 36);
+
+        StringBuilder history = new StringBuilder();
+        String[] lines = generator.history(records).split("\n");
+        for(int i = 0; i < lines.length; i++) {
+            history.append(lines[i]).append('\n');
+            if(i % 50 == 49) history.append(i % 100 == 99 ? "2020/13/01\tmilk\t1 l\t2.00\n" : "not a record\n");
+        }
+        return history.toString();
+    }
+
+    private static CheckpointedHistoryIngest ingest(Path productFile, Path checkpointDirectory) {
+        CheckpointedHistoryIngest ingest = new CheckpointedHistoryIngest(productFile, checkpointDirectory);
+        ingest.setBatchBytes(4096);
+        ingest.setCheckpointBytes(16384);
+        return ingest;
+    }
+
+    private static void copyDirectory(Path from, Path to) throws Exception {
+        Files.createDirectories(to);
+        try(Stream<Path> files = Files.list(from)) {
+            for(Path file: files.collect(Collectors.toList())) {
+                Files.copy(file, to.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static void assertSameIndex(CostOfLiving expected, CostOfLiving actual) {
+        assertEquals(expected.productCount, actual.productCount);
+        assertEquals(expected.inflation(2019, 1, 2021, 12), actual.inflation(2019, 1, 2021, 12));
+        assertEquals(expected.priceInversion(2020, 6, 5), actual.priceInversion(2020, 6, 5));
+    }
+
+    @Test
+    void invalidLinesAreRejectedAndOthersLoaded() throws Exception {
+        String history = history(2000);
+        Path productFile = directory.resolve("history.tsv");
+        Files.writeString(productFile, history);
+
+        CheckpointedHistoryIngest ingest = ingest(productFile, directory.resolve("checkpoint"));
+        CostOfLiving loaded = ingest.run();
+
+        CostOfLiving strict = new CostOfLiving();
+        String valid = history.lines().filter(line -> !line.equals("not a record") && !line.startsWith("2020/13/"))
+                .collect(Collectors.joining("\n", "", "\n"));
+        strict.loadProductHistory(new BufferedReader(new StringReader(valid)));
+
+        assertNotNull(loaded);
+        assertSameIndex(strict, loaded);
+        assertEquals(Files.size(productFile), ingest.getOffset());
+
+        List<String> rejects = Files.readAllLines(ingest.getRejectFile());
+        assertEquals(40, rejects.size());
+        assertEquals(40, ingest.getRowsRejected());
+        String firstReject = rejects.get(0);
+        long offset = Long.parseLong(firstReject.substring(0, firstReject.indexOf('\t')));
+        assertTrue(history.startsWith("not a record\n", (int) offset));
+        assertTrue(firstReject.endsWith("\t" + RejectReason.WRONG_FIELD_COUNT + "\tnot a record"));
+    }
+
+    @Test
+    void resumeAfterCrashLoadsAndRejectsEverythingOnce() throws Exception {
+        String history = history(4000);
+        int half = history.indexOf('\n', history.length() / 2) + 1;
+
+        //clean run over the whole file
+        Path cleanFile = directory.resolve("clean.tsv");
+        Files.writeString(cleanFile, history);
+        CheckpointedHistoryIngest clean = ingest(cleanFile, directory.resolve("clean"));
+        CostOfLiving expected = clean.run();
+
+        //first half committed with its checkpoint, the state a crash in the second half goes back to
+        Path productFile = directory.resolve("history.tsv");
+        Path checkpointDirectory = directory.resolve("checkpoint");
+        Files.writeString(productFile, history.substring(0, half));
+        assertNotNull(ingest(productFile, checkpointDirectory).run());
+        Path lastCheckpoint = directory.resolve("last-checkpoint");
+        copyDirectory(checkpointDirectory, lastCheckpoint);
+
+        //second half loaded and rejected, then the process dies before its checkpoint is written
+        Files.writeString(productFile, history.substring(half), StandardOpenOption.APPEND);
+        assertNotNull(ingest(productFile, checkpointDirectory).run());
+        byte[] rejectedBeforeCrash = Files.readAllBytes(checkpointDirectory.resolve("rejects.tsv"));
+        try(Stream<Path> files = Files.list(checkpointDirectory)) {
+            for(Path file: files.collect(Collectors.toList())) Files.delete(file);
+        }
+        copyDirectory(lastCheckpoint, checkpointDirectory);
+        Files.write(checkpointDirectory.resolve("rejects.tsv"), rejectedBeforeCrash);
+        Files.writeString(checkpointDirectory.resolve("rejects.tsv"), "123\tINVALID_D", StandardOpenOption.APPEND);
+        assertTrue(Files.size(checkpointDirectory.resolve("rejects.tsv")) > Files.size(lastCheckpoint.resolve("rejects.tsv")));
+
+        CheckpointedHistoryIngest resumed = ingest(productFile, checkpointDirectory);
+        CostOfLiving actual = resumed.run();
+
+        assertNotNull(actual);
+        assertSameIndex(expected, actual);
+        assertEquals(clean.getRowsRejected(), resumed.getRowsRejected());
+        assertEquals(Files.readString(clean.getRejectFile(), StandardCharsets.UTF_8), Files.readString(resumed.getRejectFile(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void runningAgainLoadsOnlyAppendedLines() throws Exception {
+        String history = history(2000);
+        int half = history.indexOf('\n', history.length() / 2) + 1;
+        Path productFile = directory.resolve("history.tsv");
+        Path checkpointDirectory = directory.resolve("checkpoint");
+
+        Files.writeString(productFile, history.substring(0, half));
+        CheckpointedHistoryIngest first = ingest(productFile, checkpointDirectory);
+        CostOfLiving firstHalf = first.run();
+        long rejectedInFirstHalf = first.getRowsRejected();
+
+        //nothing appended, nothing loaded or rejected again
+        CheckpointedHistoryIngest again = ingest(productFile, checkpointDirectory);
+        assertSameIndex(firstHalf, again.run());
+        assertEquals(rejectedInFirstHalf, again.getRowsRejected());
+
+        Files.writeString(productFile, history.substring(half), StandardOpenOption.APPEND);
+        CheckpointedHistoryIngest appended = ingest(productFile, checkpointDirectory);
+        CostOfLiving whole = appended.run();
+
+        Path wholeFile = directory.resolve("whole.tsv");
+        Files.writeString(wholeFile, history);
+        CheckpointedHistoryIngest clean = ingest(wholeFile, directory.resolve("clean"));
+        assertSameIndex(clean.run(), whole);
+        assertEquals(clean.getRowsRejected(), appended.getRowsRejected());
+        assertEquals(Files.size(productFile), appended.getOffset());
+    }
+
+    @Test
+    void checkpointOfAnotherFileIsNotUsed() throws Exception {
+        Path productFile = directory.resolve("history.tsv");
+        Path otherFile = directory.resolve("other.tsv");
+        Files.writeString(productFile, history(500));
+        Files.writeString(otherFile, history(500));
+        Path checkpointDirectory = directory.resolve("checkpoint");
+
+        assertNotNull(ingest(productFile, checkpointDirectory).run());
+        assertNull(ingest(otherFile, checkpointDirectory).run());
+    }
+}
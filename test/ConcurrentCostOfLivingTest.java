@@ -0,0 +1,237 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Copy-on-write versions of CostOfLiving and their publication by ConcurrentCostOfLiving
+ */
+class ConcurrentCostOfLivingTest {
+
+    private static final String HISTORY = String.join("\n",
+            "2020/01/01\tmilk\t1 l\t2.00",
+            "2020/01/01\tmilk\t2 l\t3.00",
+            "2020/01/01\tbread\t500 g\t1.50",
+            "2020/06/01\tmilk\t1 l\t2.50",
+            "");
+
+    private static BufferedReader reader(String text) {
+        return new BufferedReader(new StringReader(text));
+    }
+
+    @Test
+    void loadOnNextVersionLeavesCurrentVersionUnchanged() {
+        CostOfLiving current = new CostOfLiving();
+        current.loadProductHistory(reader(HISTORY));
+        int cartId = current.loadShoppingCart(reader("milk\t1 l\nbread\t500 g\n"));
+
+        Map<String, Float> inflationBefore = current.inflation(2020, 1, 2020, 12);
+        float costBefore = current.shoppingCartCost(cartId, 2020, 12);
+        List<String> inversionBefore = current.priceInversion(2020, 12, 0);
+        assertEquals(List.of(), inversionBefore);
+
+        //records for existing series, a new size of an existing name and a new name
+        CostOfLiving nextVersion = current.copyForUpdate();
+        assertEquals(8, nextVersion.loadProductHistory(reader(String.join("\n",
+                "2020/09/01\tmilk\t1 l\t3.00",
+                "2020/09/01\tbread\t500 g\t2.00",
+                "2020/09/01\tmilk\t4 l\t20.00",
+                "2020/09/01\teggs\t600 g\t4.00",
+                ""))));
+        nextVersion.finishUpdate();
+
+        assertEquals(4, current.productCount);
+        assertEquals(inflationBefore, current.inflation(2020, 1, 2020, 12));
+        assertEquals(costBefore, current.shoppingCartCost(cartId, 2020, 12));
+        assertEquals(inversionBefore, current.priceInversion(2020, 12, 0));
+
+        assertEquals(3.00f + 2.00f, nextVersion.shoppingCartCost(cartId, 2020, 12));
+        assertNotEquals(inflationBefore, nextVersion.inflation(2020, 1, 2020, 12));
+
+        //only the new 4 l size costs more per litre than smaller sizes
+        List<String> inversion = nextVersion.priceInversion(2020, 12, 0);
+        assertFalse(inversion.isEmpty());
+        inversion.forEach(line -> assertTrue(line.startsWith("milk\t4.0 l\t"), line));
+    }
+
+    @Test
+    void secondLoadOnSameVersionChangesOnlyItsOwnCopies() {
+        CostOfLiving current = new CostOfLiving();
+        current.loadProductHistory(reader(HISTORY));
+        Map<String, Float> inflationBefore = current.inflation(2020, 1, 2020, 12);
+
+        //after the first load the version owns its copies, the second load must not reach back into current
+        CostOfLiving nextVersion = current.copyForUpdate();
+        nextVersion.loadProductHistory(reader("2020/09/01\tmilk\t1 l\t3.00\n"));
+        nextVersion.loadProductHistory(reader("2020/10/01\tmilk\t1 l\t4.00\n2020/10/01\tmilk\t2 l\t1.00\n"));
+        nextVersion.finishUpdate();
+
+        assertEquals(inflationBefore, current.inflation(2020, 1, 2020, 12));
+        assertEquals(1.00f, nextVersion.inflation(2020, 1, 2020, 12).get("milk 1.0 l"));
+        assertEquals(4, current.productCount);
+        assertEquals(7, nextVersion.productCount);
+    }
+
+    @Test
+    void failedLoadIsNotPublished() {
+        ConcurrentCostOfLiving costOfLiving = new ConcurrentCostOfLiving();
+        assertEquals(4, costOfLiving.loadProductHistory(reader(HISTORY)));
+        Map<String, Float> inflationBefore = costOfLiving.inflation(2020, 1, 2020, 12);
+
+        //valid first line followed by an invalid one, none of the batch may become visible
+        assertEquals(-1, costOfLiving.loadProductHistory(reader("2020/09/01\tmilk\t1 l\t9.00\n2020/09/01\tmilk\t1 l\tnot a cost\n")));
+
+        assertEquals(4, costOfLiving.getProductCount());
+        assertEquals(inflationBefore, costOfLiving.inflation(2020, 1, 2020, 12));
+    }
+
+    @Test
+    void cartQueriesKeepGoingDuringIngest() throws Exception {
+        ConcurrentCostOfLiving costOfLiving = new ConcurrentCostOfLiving();
+        costOfLiving.loadProductHistory(reader(HISTORY));
+        int[] cartIds = costOfLiving.loadShoppingCarts(reader("milk\t1 l\n\nbread\t500 g\n\nmilk\t2 l\nbread\t500 g\n"));
+
+        //load stops in the middle of its input until released, holding whatever a load holds
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Reader blockingInput = new Reader() {
+            private final Reader lines = new StringReader("2020/09/01\tmilk\t1 l\t3.00\n");
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                loadStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return lines.read(buffer, offset, length);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Thread load = new Thread(() -> costOfLiving.loadProductHistory(new BufferedReader(blockingInput)));
+        load.start();
+        loadStarted.await();
+
+        //cached and uncached costs of every cart are answered from the current version meanwhile
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for(int month = 1; month <= 12; month++) {
+                for(int round = 0; round < 2; round++) {
+                    assertEquals(month < 6 ? 2.00f : 2.50f, costOfLiving.shoppingCartCost(cartIds[0], 2020, month));
+                    assertEquals(1.50f, costOfLiving.shoppingCartCost(cartIds[1], 2020, month));
+                    assertEquals(4.50f, costOfLiving.shoppingCartCost(cartIds[2], 2020, month));
+                }
+            }
+        });
+
+        release.countDown();
+        load.join();
+        assertEquals(3.00f, costOfLiving.shoppingCartCost(cartIds[0], 2020, 12));
+        assertEquals(1.50f, costOfLiving.shoppingCartCost(cartIds[1], 2020, 12));
+    }
+
+    @Test
+    void cachedCostsStayRightWhileLoadsInvalidateThem() throws Exception {
+        ConcurrentCostOfLiving costOfLiving = new ConcurrentCostOfLiving();
+        StringBuilder history = new StringBuilder();
+        StringBuilder carts = new StringBuilder();
+        for(int name = 0; name < 50; name++) {
+            history.append("2020/01/01\tproduct").append(name).append("\t1 kg\t1.00\n");
+            carts.append("product").append(name).append("\t1 kg\n\n");
+        }
+        costOfLiving.loadProductHistory(reader(history.toString()));
+        int[] cartIds = costOfLiving.loadShoppingCarts(reader(carts.toString()));
+
+        //every load raises the price of every product by 1 from its month on, a cart of one product costs its month number
+        AtomicBoolean loading = new AtomicBoolean(true);
+        List<String> failures = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for(int thread = 0; thread < 4; thread++) {
+            Thread reader = new Thread(() -> {
+                while(loading.get()) {
+                    for(int cartId: cartIds) {
+                        int loaded = costOfLiving.getProductCount() / 50;
+                        int month = 1 + (cartId + loaded) % 12;
+                        float cost = costOfLiving.shoppingCartCost(cartId, 2020, month);
+
+                        //the answering version may be newer than the count read before, never older
+                        if(cost < Math.min(month, loaded) || cost > month) {
+                            synchronized(failures) {
+                                failures.add("cart " + cartId + " in month " + month + " after " + loaded + " loads cost " + cost);
+                            }
+                        }
+                    }
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        for(int month = 2; month <= 12; month++) {
+            StringBuilder raise = new StringBuilder();
+            for(int name = 0; name < 50; name++) {
+                raise.append(String.format("2020/%02d/01\tproduct%d\t1 kg\t%d.00\n", month, name, month));
+            }
+            costOfLiving.loadProductHistory(reader(raise.toString()));
+        }
+        loading.set(false);
+        for(Thread reader: readers) {
+            reader.join();
+        }
+
+        assertEquals(List.of(), failures);
+        for(int cartId: cartIds) {
+            assertEquals(12f, costOfLiving.shoppingCartCost(cartId, 2020, 12));
+        }
+    }
+
+    @Test
+    void queriesNeverSeePartOfABatch() throws Exception {
+        ConcurrentCostOfLiving costOfLiving = new ConcurrentCostOfLiving();
+        int batches = 200;
+        int namesPerBatch = 10;
+
+        //every name of a batch shows inflation, so a query sees a multiple of namesPerBatch unless it sees half a batch
+        AtomicBoolean loading = new AtomicBoolean(true);
+        List<String> failures = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            while(loading.get()) {
+                int entries = costOfLiving.inflation(2020, 1, 2020, 12).size();
+                int products = costOfLiving.getProductCount();
+                if(entries % namesPerBatch != 0 || products % (2 * namesPerBatch) != 0) {
+                    synchronized(failures) {
+                        failures.add(entries + " entries, " + products + " products");
+                    }
+                }
+            }
+        });
+        reader.start();
+
+        for(int batch = 0; batch < batches; batch++) {
+            StringBuilder history = new StringBuilder();
+            for(int name = 0; name < namesPerBatch; name++) {
+                history.append("2020/01/01\tproduct").append(batch).append('_').append(name).append("\t1 kg\t1.00\n");
+                history.append("2020/06/01\tproduct").append(batch).append('_').append(name).append("\t1 kg\t2.00\n");
+            }
+            costOfLiving.loadProductHistory(reader(history.toString()));
+        }
+        loading.set(false);
+        reader.join();
+
+        assertEquals(List.of(), failures);
+        assertEquals(batches * namesPerBatch, costOfLiving.inflation(2020, 1, 2020, 12).size());
+    }
+}
@@ -0,0 +1,90 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Status codes and bodies of CostOfLivingServer for invalid input and failures
+ */
+class CostOfLivingServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private CostOfLivingServer server;
+
+    @AfterEach
+    void stopServer() {
+        if(server != null) server.close();
+    }
+
+    private void start(ConcurrentCostOfLiving costOfLiving) throws Exception {
+        costOfLiving.loadProductHistory(new BufferedReader(new StringReader("2020/01/01\tmilk\t1 l\t2.00\n2021/01/01\tmilk\t1 l\t3.00\n")));
+        server = new CostOfLivingServer(costOfLiving, 0, 4, 1);
+        server.start();
+    }
+
+    private HttpResponse<String> get(String pathAndQuery) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + pathAndQuery)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    //status line of a request URI would refuse to send
+    private String rawGet(String pathAndQuery) throws Exception {
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            socket.getOutputStream().write(("GET " + pathAndQuery + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+        }
+    }
+
+    private void assertAnswer(int status, String body, HttpResponse<String> response) {
+        assertEquals(status, response.statusCode(), response.body());
+        assertEquals(body + "\n", response.body());
+    }
+
+    @Test
+    void invalidParametersAreAnsweredWithTheirMessage() throws Exception {
+        start(new ConcurrentCostOfLiving());
+
+        assertAnswer(400, "Missing parameter endMonth", get("/inflation?startYear=2020&startMonth=1&endYear=2021"));
+        assertAnswer(400, "Invalid parameter startMonth", get("/inflation?startYear=2020&startMonth=13&endYear=2021&endMonth=1"));
+        assertAnswer(400, "Invalid parameter startYear", get("/inflation?startYear=2147483647&startMonth=1&endYear=2021&endMonth=1"));
+        assertAnswer(400, "Invalid months, start is after end", get("/inflation?startYear=2021&startMonth=2&endYear=2021&endMonth=1"));
+        assertAnswer(400, "Invalid parameter top", get("/inflation?startYear=2020&startMonth=1&endYear=2021&endMonth=1&top=-1"));
+        assertEquals("HTTP/1.1 400 Bad Request", rawGet("/inflation?startYear=%zz"));
+    }
+
+    @Test
+    void largestTopIsAnswered() throws Exception {
+        start(new ConcurrentCostOfLiving());
+
+        assertAnswer(200, "milk 1.0 l\t0.5\tINFLATION", get("/inflation?startYear=2020&startMonth=1&endYear=2021&endMonth=1&top=2147483647"));
+
+        HttpResponse<String> none = get("/inflation?startYear=2020&startMonth=1&endYear=2021&endMonth=1&top=0");
+        assertEquals(200, none.statusCode());
+        assertEquals("", none.body());
+    }
+
+    @Test
+    void failureOfTheServerIsNotABadRequest() throws Exception {
+        start(new ConcurrentCostOfLiving() {
+            @Override
+            public List<String> priceInversion(int year, int month, int tolerance) {
+                throw new IllegalArgumentException();
+            }
+        });
+
+        assertAnswer(500, "Internal error", get("/price-inversion?year=2020&month=6&tolerance=5"));
+        assertAnswer(400, "Missing parameter tolerance", get("/price-inversion?year=2020&month=6"));
+    }
+}
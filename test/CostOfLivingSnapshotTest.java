@@ -0,0 +1,176 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Saving a CostOfLiving into a snapshot and opening it again
+ */
+class CostOfLivingSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private static BufferedReader reader(String text) {
+        return new BufferedReader(new StringReader(text));
+    }
+
+    //object with generated history and carts, same seed gives the same content
+    private static CostOfLiving loaded(WorkloadGenerator generator, List<Integer> cartIds) {
+        CostOfLiving costOfLiving = new CostOfLiving();
+        for(int batch = 0; batch < 5; batch++) {
+            assertNotEquals(-1, costOfLiving.loadProductHistory(reader(generator.history(4000))));
+        }
+        for(int cart = 0; cart < 50; cart++) {
+            cartIds.add(costOfLiving.loadShoppingCart(reader(generator.cart(5))));
+        }
+        return costOfLiving;
+    }
+
+    private static WorkloadGenerator generator() {
+        WorkloadGenerator generator = new WorkloadGenerator(11);
+        generator.setProducts(100);
+        generator.setMonths(YearMonth.of(2018, 1), 48);
+        generator.setDiscontinuations(0.05, 0.5);
+        return generator;
+    }
+
+    //every query on both objects for a range of months and carts
+    private static void assertSameAnswers(CostOfLiving expected, CostOfLiving actual, List<Integer> cartIds) {
+        for(YearMonth month = YearMonth.of(2018, 1); month.isBefore(YearMonth.of(2022, 3)); month = month.plusMonths(5)) {
+            YearMonth end = month.plusMonths(11);
+            assertEquals(expected.inflation(month.getYear(), month.getMonthValue(), end.getYear(), end.getMonthValue()),
+                    actual.inflation(month.getYear(), month.getMonthValue(), end.getYear(), end.getMonthValue()), "inflation from " + month);
+
+            //same order too, maps are restored in their iteration order
+            assertEquals(expected.priceInversion(month.getYear(), month.getMonthValue(), 5),
+                    actual.priceInversion(month.getYear(), month.getMonthValue(), 5), "price inversion on " + month);
+
+            for(int cartId: cartIds) {
+                assertEquals(expected.shoppingCartCost(cartId, month.getYear(), month.getMonthValue()),
+                        actual.shoppingCartCost(cartId, month.getYear(), month.getMonthValue()), "cart " + cartId + " on " + month);
+            }
+        }
+    }
+
+    @Test
+    void reopenedSnapshotAnswersLikeTheSavedObject() {
+        List<Integer> cartIds = new ArrayList<>();
+        CostOfLiving saved = loaded(generator(), cartIds);
+        Path snapshot = directory.resolve("index.snapshot");
+
+        assertEquals(saved.productCount, saved.saveSnapshot(snapshot));
+        CostOfLiving opened = CostOfLiving.openSnapshot(snapshot);
+
+        assertNotNull(opened);
+        assertEquals(saved.productCount, opened.productCount);
+        for(int cartId: cartIds) {
+            assertEquals(saved.getCart(cartId).getCartItems(), opened.getCart(cartId).getCartItems());
+        }
+        assertSameAnswers(saved, opened, cartIds);
+    }
+
+    @Test
+    void reopenedSnapshotKeepsLoadingLikeTheSavedObject() {
+        List<Integer> cartIds = new ArrayList<>();
+        WorkloadGenerator generator = generator();
+        CostOfLiving saved = loaded(generator, cartIds);
+        Path snapshot = directory.resolve("index.snapshot");
+        saved.saveSnapshot(snapshot);
+        CostOfLiving opened = CostOfLiving.openSnapshot(snapshot);
+
+        //new records, records already in the snapshot and a new cart go to both objects
+        String history = generator.history(3000);
+        String cart = generator.cart(5);
+        assertEquals(saved.loadProductHistory(reader(history)), opened.loadProductHistory(reader(history)));
+        assertEquals(saved.loadProductHistory(reader(history)), opened.loadProductHistory(reader(history)));
+        cartIds.add(saved.loadShoppingCart(reader(cart)));
+        assertEquals(cartIds.get(cartIds.size() - 1), opened.loadShoppingCart(reader(cart)));
+
+        assertSameAnswers(saved, opened, cartIds);
+    }
+
+    @Test
+    void snapshotIsReadOnlyFromTheOpenedObject() throws Exception {
+        List<Integer> cartIds = new ArrayList<>();
+        CostOfLiving saved = loaded(generator(), cartIds);
+        Path snapshot = directory.resolve("index.snapshot");
+        saved.saveSnapshot(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+
+        //loads into the opened object must not write through the mapping into the file
+        CostOfLiving opened = CostOfLiving.openSnapshot(snapshot);
+        opened.loadProductHistory(reader(generator().history(3000)));
+
+        assertArrayEquals(bytes, Files.readAllBytes(snapshot));
+    }
+
+    @Test
+    void openedObjectIsSavedOverItsOwnSnapshot() {
+        List<Integer> cartIds = new ArrayList<>();
+        WorkloadGenerator generator = generator();
+        CostOfLiving saved = loaded(generator, cartIds);
+        Path snapshot = directory.resolve("index.snapshot");
+        saved.saveSnapshot(snapshot);
+
+        //series of the opened object are still read lazily from the file it is saved over
+        CostOfLiving opened = CostOfLiving.openSnapshot(snapshot);
+        String history = generator.history(3000);
+        saved.loadProductHistory(reader(history));
+        opened.loadProductHistory(reader(history));
+        assertEquals(saved.productCount, opened.saveSnapshot(snapshot));
+
+        CostOfLiving reopened = CostOfLiving.openSnapshot(snapshot);
+        assertNotNull(reopened);
+        assertSameAnswers(saved, opened, cartIds);
+        assertSameAnswers(saved, reopened, cartIds);
+
+        ConcurrentCostOfLiving concurrent = ConcurrentCostOfLiving.openSnapshot(snapshot);
+        assertEquals(saved.productCount, concurrent.saveSnapshot(snapshot));
+        assertEquals(saved.inflation(2018, 1, 2021, 12), concurrent.inflation(2018, 1, 2021, 12));
+        assertEquals(saved.inflation(2018, 1, 2021, 12), CostOfLiving.openSnapshot(snapshot).inflation(2018, 1, 2021, 12));
+    }
+
+    @Test
+    void invalidSnapshotIsNotOpened() throws Exception {
+        List<Integer> cartIds = new ArrayList<>();
+        CostOfLiving saved = loaded(generator(), cartIds);
+        Path snapshot = directory.resolve("index.snapshot");
+        saved.saveSnapshot(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+
+        Path truncated = directory.resolve("truncated.snapshot");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+        Path notASnapshot = directory.resolve("history.tsv");
+        Files.writeString(notASnapshot, "2020/01/01\tmilk\t1 l\t2.00\n");
+
+        assertNull(CostOfLiving.openSnapshot(truncated));
+        assertNull(CostOfLiving.openSnapshot(notASnapshot));
+        assertNull(CostOfLiving.openSnapshot(directory.resolve("missing.snapshot")));
+        assertNull(CostOfLiving.openSnapshot(null));
+    }
+
+    @Test
+    void concurrentObjectOpensSnapshot() {
+        List<Integer> cartIds = new ArrayList<>();
+        CostOfLiving saved = loaded(generator(), cartIds);
+        Path snapshot = directory.resolve("index.snapshot");
+        saved.saveSnapshot(snapshot);
+
+        ConcurrentCostOfLiving opened = ConcurrentCostOfLiving.openSnapshot(snapshot);
+
+        assertNotNull(opened);
+        assertEquals(saved.productCount, opened.getProductCount());
+        assertEquals(saved.inflation(2018, 1, 2021, 12), opened.inflation(2018, 1, 2021, 12));
+        assertEquals(saved.shoppingCartCost(cartIds.get(0), 2020, 6), opened.shoppingCartCost(cartIds.get(0), 2020, 6));
+    }
+}
@@ -0,0 +1,34 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Budget of MonthlyPriceTable for series whose records are far apart
+ */
+class MonthlyPriceTableTest {
+
+    private static BufferedReader reader(String text) {
+        return new BufferedReader(new StringReader(text));
+    }
+
+    @Test
+    void seriesSpanningTooManyMonthsGetsNoRow() {
+        CostOfLiving costOfLiving = new CostOfLiving();
+        costOfLiving.enableMonthlyPriceTable(1L << 20);
+
+        //a year of more than four digits is a valid date, the row would need over a billion months
+        assertEquals(4, costOfLiving.loadProductHistory(reader("2020/01/01\tmilk\t1 l\t2.00\n+99999999/01/01\tmilk\t1 l\t3.00\n"
+                + "2020/01/01\tbread\t500 g\t1.50\n2021/01/01\tbread\t500 g\t2.00\n")));
+
+        MonthlyPriceTable table = costOfLiving.getMonthlyPriceTable();
+        assertEquals(1, table.getRows());
+        assertEquals(1, table.getSeriesSkipped());
+        assertTrue(table.getBytes() <= table.getMaxBytes());
+
+        int cartId = costOfLiving.loadShoppingCart(reader("milk\t1 l\nbread\t500 g\n"));
+        assertEquals(2.00f + 2.00f, costOfLiving.shoppingCartCost(cartId, 2021, 6));
+    }
+}
@@ -0,0 +1,66 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Loading a history file in chunks on a ForkJoinPool against loading it sequentially
+ */
+class ParallelHistoryLoaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void duplicatesAcrossChunksAreLoadedOnce() throws Exception {
+        WorkloadGenerator generator = new WorkloadGenerator(3);
+        generator.setProducts(50);
+        generator.setMonths(YearMonth.of(2018, 1), 24);
+
+        //same records again at the end of the file end up in other chunks than their first occurrence
+        String history = generator.history(20000);
+        Path file = directory.resolve("history.tsv");
+        Files.writeString(file, history + history);
+
+        CostOfLiving sequential = new CostOfLiving();
+        CostOfLiving parallel = new CostOfLiving();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(sequential.loadProductHistory(file), parallel.loadProductHistory(file, pool));
+            assertEquals(sequential.productCount, parallel.loadProductHistory(file, pool));
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(sequential.inflation(2018, 1, 2019, 12), parallel.inflation(2018, 1, 2019, 12));
+        assertEquals(sequential.priceInversion(2019, 6, 5), parallel.priceInversion(2019, 6, 5));
+    }
+
+    @Test
+    void lineTooLongToMapIsRejectedAsSuch() throws Exception {
+        //sparse file of a single line longer than the largest chunk, nothing is written but its length
+        Path file = directory.resolve("long-line.tsv");
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            randomAccessFile.setLength((1L << 30) + (1L << 20));
+        }
+
+        CostOfLiving costOfLiving = new CostOfLiving();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertEquals(-1, costOfLiving.loadProductHistory(file, pool));
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<String, Long> rejected = costOfLiving.getMetrics().getBatchesRejectedByReason();
+        assertEquals(1L, rejected.get(RejectReason.LINE_TOO_LONG.name()));
+        assertEquals(0L, rejected.get(RejectReason.IO_ERROR.name()));
+    }
+}
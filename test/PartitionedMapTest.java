@@ -0,0 +1,47 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Copies of PartitionedMap sharing parts with the map they were copied from
+ */
+class PartitionedMapTest {
+
+    @Test
+    void changesOfACopyLeaveTheCopiedMapUnchanged() {
+        PartitionedMap<String, Integer> map = new PartitionedMap<>();
+        Map<String, Integer> expected = new HashMap<>();
+        for(int name = 0; name < 2000; name++) {
+            map.put("product" + name, name);
+            expected.put("product" + name, name);
+        }
+
+        PartitionedMap<String, Integer> copy = new PartitionedMap<>(map);
+        copy.put("product1", -1);
+        copy.put("new product", 1);
+        copy.compute("product2", (name, value) -> value + 1);
+        copy.compute("product3", (name, value) -> null);
+        copy.remove("product4");
+        copy.remove("missing");
+
+        assertEquals(expected, map);
+        assertEquals(2000, map.size());
+        assertEquals(1999, copy.size());
+        assertEquals(copy.size(), copy.entrySet().stream().count());
+        assertEquals(-1, copy.get("product1"));
+        assertEquals(1, copy.get("new product"));
+        assertEquals(3, copy.get("product2"));
+        assertFalse(copy.containsKey("product3"));
+        assertNull(copy.get("product4"));
+        assertEquals(5, copy.get("product5"));
+
+        //copy of a copy only changes its own parts as well
+        PartitionedMap<String, Integer> secondCopy = new PartitionedMap<>(copy);
+        secondCopy.put("product5", -5);
+        assertEquals(5, copy.get("product5"));
+        assertEquals(5, map.get("product5"));
+    }
+}
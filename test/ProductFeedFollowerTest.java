@@ -0,0 +1,110 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Following a growing product history file
+ */
+class ProductFeedFollowerTest {
+
+    @TempDir
+    Path directory;
+
+    //follower loading every complete line on the next poll, rejected lines are collected as "offset reason"
+    private static ProductFeedFollower follower(Path feed, ConcurrentCostOfLiving costOfLiving, List<String> rejects) {
+        ProductFeedFollower follower = new ProductFeedFollower(feed, costOfLiving, 0);
+        follower.setMaxBatchDelay(0, TimeUnit.MILLISECONDS);
+        follower.setRejectHandler((offset, line, reason) -> rejects.add(offset + " " + reason));
+        return follower;
+    }
+
+    @Test
+    void invalidLineIsSkippedAndRestOfBatchIsLoaded() throws Exception {
+        Path feed = directory.resolve("feed.tsv");
+        String valid = "2020/01/01\tmilk\t1 l\t2.00\n";
+        String invalid = "2020/01/01\tmilk\t1 l\tfree\n";
+        Files.writeString(feed, valid + invalid + "2020/02/01\tmilk\t1 l\t2.50\n");
+
+        ConcurrentCostOfLiving costOfLiving = new ConcurrentCostOfLiving();
+        List<String> rejects = new ArrayList<>();
+        ProductFeedFollower follower = follower(feed, costOfLiving, rejects);
+
+        assertEquals(1, follower.poll());
+        assertEquals(List.of(valid.length() + " " + RejectReason.INVALID_COST), rejects);
+        assertEquals(2, costOfLiving.getProductCount());
+        assertEquals(2, follower.getLinesLoaded());
+        assertEquals(1, follower.getLinesRejected());
+        assertEquals(Files.size(feed), follower.getOffset());
+    }
+
+    @Test
+    void replacedFileIsFollowedFromItsStartEvenWhenLarger() throws Exception {
+        Path feed = directory.resolve("feed.tsv");
+        Files.writeString(feed, "2020/01/01\tmilk\t1 l\t2.00\n");
+
+        ConcurrentCostOfLiving costOfLiving = new ConcurrentCostOfLiving();
+        ProductFeedFollower follower = follower(feed, costOfLiving, new ArrayList<>());
+        follower.poll();
+
+        //new file moved over the old one, longer than the offset reached in the old one
+        Path replacement = directory.resolve("replacement.tsv");
+        Files.writeString(replacement, "2021/01/01\tbread\t500 g\t1.50\n2021/02/01\tbread\t500 g\t1.75\n2021/03/01\tbread\t500 g\t2.00\n");
+        Files.move(replacement, feed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        follower.poll();
+
+        assertEquals(4, costOfLiving.getProductCount());
+        assertEquals(Files.size(feed), follower.getOffset());
+    }
+
+    @Test
+    void lineLongerThanBatchIsRejectedOnceComplete() throws Exception {
+        Path feed = directory.resolve("feed.tsv");
+        String longLine = "2020/01/01\tmilk" + "k".repeat(200) + "\t1 l\t2.00";
+        Files.writeString(feed, longLine);
+
+        ConcurrentCostOfLiving costOfLiving = new ConcurrentCostOfLiving();
+        List<String> rejects = new ArrayList<>();
+        ProductFeedFollower follower = follower(feed, costOfLiving, rejects);
+        follower.setMaxBatchBytes(64);
+
+        //still being written, nothing to do yet
+        assertEquals(0, follower.poll());
+        assertEquals(0, follower.getOffset());
+
+        Files.writeString(feed, "\n2020/01/01\tmilk\t1 l\t2.00\n", StandardOpenOption.APPEND);
+        follower.poll();
+
+        assertEquals(List.of("0 " + RejectReason.LINE_TOO_LONG), rejects);
+        assertEquals(1, costOfLiving.getProductCount());
+        assertEquals(Files.size(feed), follower.getOffset());
+    }
+
+    @Test
+    void batchesStopAtMaxBatchBytes() throws Exception {
+        Path feed = directory.resolve("feed.tsv");
+        StringBuilder history = new StringBuilder();
+        for(int day = 1; day <= 28; day++) {
+            history.append(String.format("2020/01/%02d\tmilk\t1 l\t%d.00%n", day, day));
+        }
+        Files.writeString(feed, history.toString());
+
+        ConcurrentCostOfLiving costOfLiving = new ConcurrentCostOfLiving();
+        ProductFeedFollower follower = follower(feed, costOfLiving, new ArrayList<>());
+        follower.setMaxBatchBytes(100);
+
+        //every line has about 27 bytes, so a batch holds 3 of them
+        assertTrue(follower.poll() >= 9);
+        assertEquals(28, costOfLiving.getProductCount());
+        assertEquals(0, follower.getLinesRejected());
+    }
+}
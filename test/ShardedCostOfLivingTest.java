@@ -0,0 +1,192 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.net.URI;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ShardedCostOfLiving against a single CostOfLiving, with shards served from this JVM
+ */
+class ShardedCostOfLivingTest {
+
+    private final List<CostOfLivingServer> servers = new ArrayList<>();
+
+    //shard failing the next loads and carts sent to it, as many as set
+    private static class FailingShard extends ConcurrentCostOfLiving {
+        final AtomicInteger loadsToFail = new AtomicInteger();
+        final AtomicInteger cartsToFail = new AtomicInteger();
+        final AtomicInteger cartsCreated = new AtomicInteger();
+
+        @Override
+        public int loadProductHistory(BufferedReader productStream) {
+            if(loadsToFail.getAndDecrement() > 0) throw new IllegalStateException("Shard failure");
+            return super.loadProductHistory(productStream);
+        }
+
+        @Override
+        public int[] loadShoppingCarts(BufferedReader cartStream) {
+            if(cartsToFail.getAndDecrement() > 0) throw new IllegalStateException("Shard failure");
+            int[] cartIds = super.loadShoppingCarts(cartStream);
+            if(cartIds != null) cartsCreated.addAndGet(cartIds.length);
+            return cartIds;
+        }
+    }
+
+    @AfterEach
+    void stopShards() {
+        servers.forEach(CostOfLivingServer::close);
+    }
+
+    private ShardedCostOfLiving sharded(List<FailingShard> shards) throws Exception {
+        List<URI> uris = new ArrayList<>();
+        for(FailingShard shard: shards) {
+            CostOfLivingServer server = new CostOfLivingServer(shard, 0, 4, 2);
+            server.start();
+            servers.add(server);
+            uris.add(URI.create("http://localhost:" + server.getPort()));
+        }
+        return new ShardedCostOfLiving(uris);
+    }
+
+    private static List<FailingShard> shards(int count) {
+        List<FailingShard> shards = new ArrayList<>();
+        for(int shard = 0; shard < count; shard++) {
+            shards.add(new FailingShard());
+        }
+        return shards;
+    }
+
+    private static WorkloadGenerator generator() {
+        WorkloadGenerator generator = new WorkloadGenerator(5);
+        generator.setProducts(200);
+        generator.setMonths(YearMonth.of(2018, 1), 48);
+        generator.setDiscontinuations(0.05, 0.5);
+        return generator;
+    }
+
+    private static BufferedReader reader(String text) {
+        return new BufferedReader(new StringReader(text));
+    }
+
+    private static void assertSameAnswers(CostOfLiving single, ShardedCostOfLiving sharded) {
+        assertEquals(single.productCount, sharded.getProductCount());
+        for(YearMonth month = YearMonth.of(2018, 1); month.isBefore(YearMonth.of(2021, 6)); month = month.plusMonths(7)) {
+            YearMonth end = month.plusMonths(12);
+            assertEquals(single.inflation(month.getYear(), month.getMonthValue(), end.getYear(), end.getMonthValue()),
+                    sharded.inflation(month.getYear(), month.getMonthValue(), end.getYear(), end.getMonthValue()), "inflation from " + month);
+
+            //inversions come shard after shard
+            List<String> inversions = single.priceInversion(month.getYear(), month.getMonthValue(), 5);
+            List<String> shardedInversions = sharded.priceInversion(month.getYear(), month.getMonthValue(), 5);
+            Collections.sort(inversions);
+            Collections.sort(shardedInversions);
+            assertEquals(inversions, shardedInversions, "price inversion on " + month);
+        }
+    }
+
+    @Test
+    void shardsAnswerLikeASingleObject() throws Exception {
+        WorkloadGenerator generator = generator();
+        CostOfLiving single = new CostOfLiving();
+        ShardedCostOfLiving sharded = sharded(shards(3));
+
+        for(int batch = 0; batch < 4; batch++) {
+            String history = generator.history(5000);
+            assertEquals(single.loadProductHistory(reader(history)), sharded.loadProductHistory(reader(history)));
+        }
+        assertEquals(-1, sharded.loadProductHistory(reader("2020/01/01\tmilk\t1 l\tfree\n")));
+
+        for(int cart = 0; cart < 30; cart++) {
+            String items = generator.cart(8);
+            int cartId = single.loadShoppingCart(reader(items));
+            int shardedCartId = sharded.loadShoppingCart(reader(items));
+            YearMonth month = generator.month();
+
+            float cost = single.shoppingCartCost(cartId, month.getYear(), month.getMonthValue());
+            assertEquals(cost, sharded.shoppingCartCost(shardedCartId, month.getYear(), month.getMonthValue()), Math.ulp(cost) * 16);
+        }
+        assertSameAnswers(single, sharded);
+    }
+
+    @Test
+    void failedShardIsSentItsLoadAgain() throws Exception {
+        WorkloadGenerator generator = generator();
+        CostOfLiving single = new CostOfLiving();
+        List<FailingShard> shards = shards(3);
+        ShardedCostOfLiving sharded = sharded(shards);
+
+        shards.get(1).loadsToFail.set(2);
+        String history = generator.history(5000);
+        assertEquals(single.loadProductHistory(reader(history)), sharded.loadProductHistory(reader(history)));
+
+        assertSameAnswers(single, sharded);
+    }
+
+    @Test
+    void partlyAppliedLoadIsCompletedByLoadingItAgain() throws Exception {
+        WorkloadGenerator generator = generator();
+        CostOfLiving single = new CostOfLiving();
+        List<FailingShard> shards = shards(3);
+        ShardedCostOfLiving sharded = sharded(shards);
+
+        String first = generator.history(5000);
+        single.loadProductHistory(reader(first));
+        sharded.loadProductHistory(reader(first));
+
+        //shard stays down for every attempt, the other shards have the batch
+        shards.get(2).loadsToFail.set(Integer.MAX_VALUE);
+        String second = generator.history(5000);
+        single.loadProductHistory(reader(second));
+        assertEquals(ShardedCostOfLiving.PARTIALLY_LOADED, sharded.loadProductHistory(reader(second)));
+
+        shards.get(2).loadsToFail.set(0);
+        assertEquals(single.productCount, sharded.loadProductHistory(reader(second)));
+        assertSameAnswers(single, sharded);
+    }
+
+    @Test
+    void subCartsOfAFailedCartAreReused() throws Exception {
+        WorkloadGenerator generator = generator();
+        CostOfLiving single = new CostOfLiving();
+        List<FailingShard> shards = shards(2);
+        ShardedCostOfLiving sharded = sharded(shards);
+        String history = generator.history(5000);
+        single.loadProductHistory(reader(history));
+        sharded.loadProductHistory(reader(history));
+
+        //cart with items on both shards
+        String items;
+        do {
+            items = generator.cart(8);
+        } while(!onBothShards(sharded, items));
+
+        shards.get(1).cartsToFail.set(Integer.MAX_VALUE);
+        assertEquals(-1, sharded.loadShoppingCart(reader(items)));
+        assertEquals(1, shards.get(0).cartsCreated.get());
+
+        //loading the cart again uses the sub-cart already created on shard 0
+        shards.get(1).cartsToFail.set(0);
+        int shardedCartId = sharded.loadShoppingCart(reader(items));
+        int cartId = single.loadShoppingCart(reader(items));
+        assertEquals(0, shardedCartId);
+        assertEquals(1, shards.get(0).cartsCreated.get());
+        assertEquals(1, shards.get(1).cartsCreated.get());
+
+        float cost = single.shoppingCartCost(cartId, 2020, 6);
+        assertEquals(cost, sharded.shoppingCartCost(shardedCartId, 2020, 6), Math.ulp(cost) * 16);
+    }
+
+    private static boolean onBothShards(ShardedCostOfLiving sharded, String items) {
+        boolean[] used = new boolean[sharded.getShardCount()];
+        items.lines().forEach(line -> used[sharded.shardOf(line.split("\t")[0])] = true);
+        return used[0] && used[1];
+    }
+}
@@ -0,0 +1,40 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.time.YearMonth;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Smaller sizes introduced in the month a size got discontinued, looked up through sizesByMonth
+ */
+class ShrinkflationTest {
+
+    private static BufferedReader reader(String text) {
+        return new BufferedReader(new StringReader(text));
+    }
+
+    @Test
+    void everyRecordOfASizeInTheMonthIsConsidered() {
+        CostOfLiving costOfLiving = new CostOfLiving();
+        costOfLiving.loadProductHistory(reader(String.join("\n",
+                "2020/01/01\tcookies\t500 g\t6.00",
+                "2020/11/05\tcookies\t500 g\t0",
+                "2020/11/02\tcookies\t400 g\t4.00",
+                "2020/11/10\tcookies\t400 g\t4.80",
+                "2020/11/20\tcookies\t400 g\t5.20",
+                "")));
+
+        //index keeps sizes only, records come from their series
+        assertArrayEquals(new float[]{500f, 400f}, costOfLiving.sizesByMonth.get("cookies").get(YearMonth.of(2020, 11)));
+
+        //400 g of Nov 2 is before the discontinuation, of the later ones the dearest replaces inflation of 400 g
+        Map<String, Float> inflation = costOfLiving.inflation(2020, 1, 2020, 12);
+        assertEquals((5.20f/400 - 6.00f/500)/(6.00f/500), inflation.get("cookies 400.0 g"));
+
+        costOfLiving.loadProductHistory(reader("2020/12/01\tcookies\t400 g\t5.20\n"));
+        assertArrayEquals(new float[]{400f}, costOfLiving.sizesByMonth.get("cookies").get(YearMonth.of(2020, 12)));
+    }
+}
@@ -0,0 +1,44 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Number of records asked from topInflation, which comes unchecked from the server
+ */
+class TopInflationTest {
+
+    private static CostOfLiving loaded() {
+        CostOfLiving costOfLiving = new CostOfLiving();
+        costOfLiving.loadProductHistory(new BufferedReader(new StringReader("2020/01/01\tmilk\t1 l\t2.00\n2021/01/01\tmilk\t1 l\t3.00\n"
+                + "2020/01/01\tbread\t500 g\t2.00\n2021/01/01\tbread\t500 g\t2.50\n")));
+        return costOfLiving;
+    }
+
+    private static List<String> names(List<InflationRecord> records) {
+        return records.stream().map(InflationRecord::getName).collect(Collectors.toList());
+    }
+
+    @Test
+    void hugeTopReturnsEveryRecord() {
+        CostOfLiving costOfLiving = loaded();
+
+        assertEquals(List.of("milk", "bread"), names(costOfLiving.topInflation(2020, 1, 2021, 1, Integer.MAX_VALUE)));
+        assertEquals(List.of("milk", "bread"), names(costOfLiving.topInflation(2020, 1, 2021, 1, 200000000)));
+        assertEquals(List.of("milk"), names(costOfLiving.topInflation(2020, 1, 2021, 1, 1)));
+    }
+
+    @Test
+    void zeroTopChecksMonthsOnly() {
+        CostOfLiving costOfLiving = loaded();
+
+        assertEquals(List.of(), costOfLiving.topInflation(2020, 1, 2021, 1, 0));
+        assertNull(costOfLiving.topInflation(2021, 1, 2020, 1, 0));
+        assertNull(costOfLiving.topInflation(2020, 13, 2021, 1, 0));
+        assertNull(costOfLiving.topInflation(2020, 1, 2021, 1, -1));
+    }
+}